@@ -0,0 +1,84 @@
+package Image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of decoded images, bounded by the memory they take (4 bytes for each pixel). When full, the least
+ * recently used images are dropped. An image is valid as long as its file is not modified, so charts drawn again
+ * by a new benchmark are decoded again. It can be used from several threads.
+ */
+public class ImageCache {
+
+	private long capacity;
+	private long used = 0;
+	private LinkedHashMap<File, Entry> images = new LinkedHashMap<File, Entry>(16, 0.75f, true);
+
+	private static class Entry {
+		BufferedImage image;
+		long lastModified;
+	}
+
+	/**
+	 * @param capacity maximum bytes of decoded images kept
+	 */
+	public ImageCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the decoded image, or null if it is not in the cache
+	 */
+	public synchronized BufferedImage get(File file) {
+		Entry e = images.get(file);
+		if (e == null)
+			return null;
+		if (e.lastModified != file.lastModified()) {
+			images.remove(file);
+			used -= getSize(e.image);
+			return null;
+		}
+		return e.image;
+	}
+
+	public synchronized boolean contains(File file) {
+		return get(file) != null;
+	}
+
+	/**
+	 * Adds an image, decoded from file as it is now.
+	 */
+	public synchronized void put(File file, BufferedImage image) {
+		Entry e = new Entry();
+		e.image = image;
+		e.lastModified = file.lastModified();
+		Entry old = images.put(file, e);
+		if (old != null)
+			used -= getSize(old.image);
+		used += getSize(image);
+
+		// The image just added is the most recent, so it is dropped last
+		Iterator<Map.Entry<File, Entry>> it = images.entrySet().iterator();
+		while (used > capacity && images.size() > 1) {
+			used -= getSize(it.next().getValue().image);
+			it.remove();
+		}
+	}
+
+	public synchronized void clear() {
+		images.clear();
+		used = 0;
+	}
+
+	public synchronized long getUsed() {
+		return used;
+	}
+
+	private static long getSize(BufferedImage image) {
+		return (long) image.getWidth() * image.getHeight() * 4;
+	}
+
+}
@@ -1,56 +1,233 @@
 package Image;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.imageio.ImageIO;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.ImageIcon;
+import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
-import javax.swing.JOptionPane;
+import javax.swing.JList;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 
+/**
+ * Viewer of benchmark graphs: a single window with the selected graph and a strip of thumbnails of all of them.
+ * Images are decoded in background, the ones next to the selected graph are decoded in advance, and decoded
+ * images are kept in a cache bounded in memory and shared by all viewers, so opening the viewer again is instant.
+ * Closing the viewer only closes its window.
+ */
 public class Paint_Graphics  extends JFrame{
-	
-	
+
+	private static final int THUMBNAIL_HEIGHT = 90;
+	private static final int PREFETCH = 2;	// graphs decoded in advance before and after the selected one
+	private static final ImageCache cache = new ImageCache(128L * 1024 * 1024);
+
+	private File[] files;
+	private int current = -1;
+	private JLabel view = new JLabel("", SwingConstants.CENTER);
+	private JLabel caption = new JLabel();
+	private JList<File> strip;
+	private Map<File, ImageIcon> thumbnails = new ConcurrentHashMap<File, ImageIcon>();
+	private Set<File> decoding = ConcurrentHashMap.newKeySet();
+	private ExecutorService decoder = Executors.newFixedThreadPool(2, r -> {
+		Thread t = new Thread(r, "graph-decoder");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Opens a viewer of the given graphs, showing the first one. It returns immediately.
+	 * @param pathGraphic image files
+	 */
 	public static void paint(File[] pathGraphic) {
-		int index = 0;
-		while(index < pathGraphic.length) {
-			Paint_Graphics Graph = new Paint_Graphics(pathGraphic[index].getAbsolutePath());
-			int reply1 =JOptionPane.showConfirmDialog(null,"Do you want to see next graph? ("+(index+1)+" of "+pathGraphic.length+")", "Attention", JOptionPane.YES_NO_OPTION);
-			if(reply1==JOptionPane.YES_OPTION) {
-				Graph.setVisible(false);
-				index++;
-				continue;
-			}else {
-				Graph.setVisible(false);
-				break;
+		if (pathGraphic == null || pathGraphic.length == 0)
+			return ;
+		Paint_Graphics viewer = new Paint_Graphics(pathGraphic);
+		viewer.setVisible(true);
+	}
+
+	public Paint_Graphics(File[] pathGraphic) {
+		super("Benchmark graphs");
+		this.files = pathGraphic;
+		Dimension screenResolution = Toolkit.getDefaultToolkit().getScreenSize();
+		this.setSize(screenResolution.width * 4 / 5, screenResolution.height * 4 / 5);
+		this.setLocationRelativeTo(null);
+
+		JButton previous = new JButton("<");
+		JButton next = new JButton(">");
+		JPanel top = new JPanel(new FlowLayout(FlowLayout.CENTER));
+		top.add(previous);
+		top.add(caption);
+		top.add(next);
+		previous.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				select(current - 1);
+			}
+		});
+		next.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				select(current + 1);
 			}
+		});
+
+		strip = new JList<File>(files);
+		strip.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+		strip.setVisibleRowCount(1);
+		strip.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		strip.setCellRenderer(new ThumbnailRenderer());
+		strip.addListSelectionListener(new ListSelectionListener() {
+			public void valueChanged(ListSelectionEvent e) {
+				if (!e.getValueIsAdjusting() && strip.getSelectedIndex() >= 0)
+					show(strip.getSelectedIndex());
+			}
+		});
+
+		this.getContentPane().add(top, BorderLayout.NORTH);
+		this.getContentPane().add(new JScrollPane(view), BorderLayout.CENTER);
+		this.getContentPane().add(new JScrollPane(strip, JScrollPane.VERTICAL_SCROLLBAR_NEVER,
+				JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED), BorderLayout.SOUTH);
+
+		this.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		this.addWindowListener(new WindowAdapter() {
+			public void windowClosed(WindowEvent e) {
+				decoder.shutdownNow();
+			}
+		});
+
+		select(0);
+		// Thumbnails of the others, after the first graph and its neighbours
+		for (File f : files)
+			decode(f);
+	}
+
+	private void select(int index) {
+		if (index < 0 || index >= files.length)
+			return ;
+		strip.setSelectedIndex(index);
+		strip.ensureIndexIsVisible(index);
+	}
+
+	/*
+	 * Shows a graph if decoded, otherwise it is shown when ready. Neighbours are decoded in advance.
+	 */
+	private void show(int index) {
+		current = index;
+		File f = files[index];
+		caption.setText(f.getName() + " (" + (index + 1) + " of " + files.length + ")");
+		BufferedImage image = cache.get(f);
+		if (image != null) {
+			view.setIcon(new ImageIcon(image));
+			view.setText("");
+		} else {
+			view.setIcon(null);
+			view.setText("Loading " + f.getName() + "...");
+			decode(f);
+		}
+		for (int i = 1; i <= PREFETCH; i++) {
+			if (index + i < files.length)
+				decode(files[index + i]);
+			if (index - i >= 0)
+				decode(files[index - i]);
 		}
 	}
-	
-	public Paint_Graphics(String pathGraphic) {
-		//super("Test Panel");
-		Dimension screenResolution = Toolkit.getDefaultToolkit().getScreenSize();
-		this.setSize(screenResolution.width, screenResolution.height);
-
-		try { 
-			File file = new File(pathGraphic); 
-			BufferedImage image = ImageIO.read(file);
-			JLabel label = new JLabel(new ImageIcon(image));
-			JScrollPane pane = new JScrollPane(label);
-			this.getContentPane().add(pane, BorderLayout.CENTER);
-		}catch (Exception e) {
-			this.getContentPane().add(new JTextArea(e.getMessage()));
+
+	/*
+	 * Decodes a graph in background, if it isn't cached nor already being decoded, and makes its thumbnail
+	 */
+	private void decode(File f) {
+		if ((cache.contains(f) && thumbnails.containsKey(f)) || !decoding.add(f))
+			return ;
+		try {
+			decoder.execute(() -> {
+				String error = null;
+				try {
+					BufferedImage image = cache.get(f);
+					if (image == null) {
+						image = ImageIO.read(f);
+						if (image == null)
+							throw new IllegalArgumentException("unknown image format");
+						cache.put(f, image);
+					}
+					if (!thumbnails.containsKey(f))
+						thumbnails.put(f, new ImageIcon(getThumbnail(image)));
+				} catch (Exception e) {
+					error = f.getName() + ": " + e.getMessage();
+				} finally {
+					decoding.remove(f);
+				}
+				final String message = error;
+				SwingUtilities.invokeLater(() -> decoded(f, message));
+			});
+		} catch (RejectedExecutionException e) {
+			// viewer closed
+			decoding.remove(f);
+		}
+	}
+
+	private void decoded(File f, String error) {
+		strip.repaint();
+		if (current < 0 || !files[current].equals(f))
+			return ;
+		if (error != null) {
+			view.setIcon(null);
+			view.setText(error);
+		} else if (view.getIcon() == null) {
+			show(current);
+		}
+	}
+
+	private static BufferedImage getThumbnail(BufferedImage image) {
+		int width = Math.max(1, image.getWidth() * THUMBNAIL_HEIGHT / Math.max(1, image.getHeight()));
+		BufferedImage thumbnail = new BufferedImage(width, THUMBNAIL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = thumbnail.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(image, 0, 0, width, THUMBNAIL_HEIGHT, null);
+		g.dispose();
+		return thumbnail;
+	}
+
+	/*
+	 * A thumbnail with the file name below it, or only the name until the thumbnail is ready
+	 */
+	private class ThumbnailRenderer extends DefaultListCellRenderer {
+
+		private static final long serialVersionUID = 1L;
+
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+			File f = (File) value;
+			JLabel label = (JLabel) super.getListCellRendererComponent(list, f.getName(), index, isSelected, cellHasFocus);
+			label.setIcon(thumbnails.get(f));
+			label.setHorizontalTextPosition(SwingConstants.CENTER);
+			label.setVerticalTextPosition(SwingConstants.BOTTOM);
+			label.setPreferredSize(new Dimension(Math.max(140, label.getIcon() != null ? label.getIcon().getIconWidth() + 10 : 0), THUMBNAIL_HEIGHT + 30));
+			return label;
 		}
 
-		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE );
-		this.setVisible(true);
 	}
 
 }
@@ -0,0 +1,233 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * @author luca
+ *
+ * A store of benchmark baselines, kept as plain files under a local folder (benchmark/baselines by default).
+ * A baseline holds, for each measure of BenchmarkRunner.getSummary(), the values of repeated trials, so that a new
+ * run can be compared against it with confidence intervals: a measure regresses only if it got worse by more than
+ * a tolerance and the difference is statistically significant (Welch's t-test, 95% confidence). Both the baseline
+ * and the new run need at least MIN_TRIALS trials, otherwise there is no variance to test against.
+ */
+public class BaselineStore {
+
+	public static final int MIN_TRIALS = 2;
+
+	// Two-sided 95% critical values of Student's t distribution, for 1 to 30 degrees of freedom
+	private static final double[] T_95 = { 12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+			2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+			2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042 };
+
+	private String directory;
+	private double tolerance = 0.05;			// relative change ignored for performance measures
+	private double qualityTolerance = 0.001;	// relative change ignored for retrieval quality
+
+	/**
+	 * Result of a comparison: a table with a row for each measure, and the final verdict.
+	 */
+	public static class Comparison {
+		public String report;
+		public boolean passed;
+	}
+
+	/**
+	 * @param directory is the folder where baselines are kept
+	 */
+	public BaselineStore(String directory) {
+		this.directory = directory;
+	}
+
+	public BaselineStore tolerance(double tolerance) {
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	private File getFile(String name, String model) {
+		return new File(directory, name + "-" + model + ".baseline");
+	}
+
+	/**
+	 * Saves the trials of a model as the named baseline, overwriting a previous one.
+	 * @param name is the baseline name
+	 * @param model is the model name
+	 * @param trials are the measures of each trial
+	 */
+	public void save(String name, String model, ArrayList<LinkedHashMap<String, Double>> trials) throws IOException {
+		new File(directory).mkdirs();
+		Properties p = new Properties();
+		for (Map.Entry<String, ArrayList<Double>> e : getSamples(trials).entrySet()) {
+			StringBuilder sb = new StringBuilder();
+			for (Double d : e.getValue()) {
+				sb.append(sb.length() > 0 ? "," : "").append(d);
+			}
+			p.setProperty(e.getKey(), sb.toString());
+		}
+		FileWriter fw = new FileWriter(getFile(name, model));
+		p.store(fw, "Baseline " + name + " of " + model + ", " + trials.size() + " trials, java " + System.getProperty("java.version"));
+		fw.close();
+	}
+
+	/**
+	 * Loads the named baseline of a model.
+	 * @param name is the baseline name
+	 * @param model is the model name
+	 * @return values of each measure, or null if the baseline does not exist
+	 */
+	public TreeMap<String, ArrayList<Double>> load(String name, String model) throws IOException {
+		File f = getFile(name, model);
+		if (!f.exists()) {
+			return null;
+		}
+		Properties p = new Properties();
+		FileReader fr = new FileReader(f);
+		p.load(fr);
+		fr.close();
+
+		TreeMap<String, ArrayList<Double>> samples = new TreeMap<String, ArrayList<Double>>();
+		for (String key : p.stringPropertyNames()) {
+			ArrayList<Double> values = new ArrayList<Double>();
+			for (String v : p.getProperty(key).split(",")) {
+				values.add(Double.parseDouble(v));
+			}
+			samples.put(key, values);
+		}
+		return samples;
+	}
+
+	/**
+	 * Compares the trials of a new run with the named baseline.
+	 * @param name is the baseline name
+	 * @param model is the model name
+	 * @param trials are the measures of each trial of the new run
+	 * @return the comparison, or null if the baseline does not exist; it fails if either side has fewer than
+	 * MIN_TRIALS trials
+	 */
+	public Comparison compare(String name, String model, ArrayList<LinkedHashMap<String, Double>> trials) throws IOException {
+		TreeMap<String, ArrayList<Double>> baseline = load(name, model);
+		if (baseline == null) {
+			return null;
+		}
+		TreeMap<String, ArrayList<Double>> current = getSamples(trials);
+
+		Comparison c = new Comparison();
+		int baseTrials = Integer.MAX_VALUE;
+		for (ArrayList<Double> values : baseline.values()) {
+			baseTrials = Math.min(baseTrials, values.size());
+		}
+		if (trials.size() < MIN_TRIALS || baseTrials < MIN_TRIALS) {
+			c.passed = false;
+			c.report = "Cannot compare " + model + " against baseline " + name + ": " + baseTrials + " trials in the baseline and "
+					+ trials.size() + " in this run, at least " + MIN_TRIALS + " each are needed\n";
+			return c;
+		}
+		c.passed = true;
+		StringBuilder sb = new StringBuilder();
+		sb.append("Comparison of " + model + " against baseline " + name + " (" + trials.size() + " trials)\n");
+		sb.append(String.format("%-24s %24s %24s %9s  %s\n", "Measure", "Baseline (95% CI)", "Current (95% CI)", "Change", "Verdict"));
+
+		for (Map.Entry<String, ArrayList<Double>> e : current.entrySet()) {
+			ArrayList<Double> base = baseline.get(e.getKey());
+			ArrayList<Double> now = e.getValue();
+			if (base == null) {
+				sb.append(String.format("%-24s %24s %24s %9s  %s\n", e.getKey(), "-", interval(now), "-", "new measure"));
+				continue;
+			}
+
+			double change = mean(base) == 0 ? 0 : (mean(now) - mean(base)) / Math.abs(mean(base));
+			boolean lowerIsBetter = e.getKey().startsWith("latency.") || e.getKey().startsWith("alloc.");
+			double worse = lowerIsBetter ? change : -change;
+			double tol = e.getKey().startsWith("quality.") ? qualityTolerance : tolerance;
+
+			String verdict = "ok";
+			if (isSignificant(base, now) && Math.abs(change) > tol) {
+				if (worse > 0) {
+					verdict = "REGRESSION";
+					c.passed = false;
+				} else {
+					verdict = "improved";
+				}
+			}
+			sb.append(String.format("%-24s %24s %24s %+8.2f%%  %s\n", e.getKey(), interval(base), interval(now), change * 100, verdict));
+		}
+		sb.append(c.passed ? "PASS\n" : "FAIL\n");
+		c.report = sb.toString();
+		return c;
+	}
+
+	private static TreeMap<String, ArrayList<Double>> getSamples(ArrayList<LinkedHashMap<String, Double>> trials) {
+		TreeMap<String, ArrayList<Double>> samples = new TreeMap<String, ArrayList<Double>>();
+		for (LinkedHashMap<String, Double> trial : trials) {
+			for (Map.Entry<String, Double> e : trial.entrySet()) {
+				if (!samples.containsKey(e.getKey())) {
+					samples.put(e.getKey(), new ArrayList<Double>());
+				}
+				samples.get(e.getKey()).add(e.getValue());
+			}
+		}
+		return samples;
+	}
+
+	/*
+	 * Welch's t-test: true if the means of the two samples differ with 95% confidence. Without variance
+	 * (deterministic measures, like retrieval quality) any difference is significant.
+	 */
+	private static boolean isSignificant(ArrayList<Double> a, ArrayList<Double> b) {
+		double va = variance(a) / a.size();
+		double vb = variance(b) / b.size();
+		double diff = Math.abs(mean(a) - mean(b));
+		if (va + vb == 0) {
+			return diff > 0;
+		}
+		double se = Math.sqrt(va + vb);
+		double df = (va + vb) * (va + vb) / (
+				(a.size() > 1 ? va * va / (a.size() - 1) : 0) + (b.size() > 1 ? vb * vb / (b.size() - 1) : 0));
+		return diff / se > tCritical(df);
+	}
+
+	private static double tCritical(double df) {
+		int d = (int) Math.floor(df);
+		if (d < 1) {
+			return T_95[0];
+		}
+		return d <= T_95.length ? T_95[d - 1] : 1.96;
+	}
+
+	/*
+	 * Mean and half width of the 95% confidence interval
+	 */
+	private static String interval(ArrayList<Double> values) {
+		double halfWidth = values.size() > 1 ? tCritical(values.size() - 1) * Math.sqrt(variance(values) / values.size()) : 0;
+		return String.format("%.4g +- %.2g", mean(values), halfWidth);
+	}
+
+	private static double mean(ArrayList<Double> values) {
+		double sum = 0;
+		for (Double d : values)
+			sum += d;
+		return values.size() > 0 ? sum / values.size() : 0.0;
+	}
+
+	/*
+	 * Sample variance (0 with less than two values)
+	 */
+	private static double variance(ArrayList<Double> values) {
+		if (values.size() < 2) {
+			return 0;
+		}
+		double m = mean(values), sum = 0;
+		for (Double d : values)
+			sum += (d - m) * (d - m);
+		return sum / (values.size() - 1);
+	}
+
+}
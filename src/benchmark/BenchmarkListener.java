@@ -0,0 +1,34 @@
+package benchmark;
+
+/**
+ * @author luca
+ *
+ * Receives the progress of a benchmark while it runs. Methods are called by the thread running the benchmark,
+ * so they should only record what they receive and return quickly.
+ */
+public interface BenchmarkListener {
+
+	/**
+	 * A document has been added to the index.
+	 * @param documents documents indexed so far
+	 * @param total documents to index
+	 */
+	void documentIndexed(int documents, int total);
+
+	/**
+	 * A query has been run.
+	 * @param query number of the query, from 1
+	 * @param total queries to run
+	 * @param precision precision of the query
+	 * @param recall recall of the query
+	 * @param latency nanoseconds spent by the query
+	 */
+	void queryCompleted(int query, int total, double precision, double recall, long latency);
+
+	/**
+	 * The benchmark is over.
+	 * @param cancelled true if it has been stopped before the end
+	 */
+	void benchmarkFinished(boolean cancelled);
+
+}
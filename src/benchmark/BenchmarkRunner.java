@@ -0,0 +1,397 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+import index.Index;
+import irModels.Model;
+
+/**
+ * @author luca
+ *
+ * Headless entry point of the benchmark: no GUI is needed, so it can run in batch jobs. Results of each model are
+ * written as JSON (quality measures, per-query latencies, indexing time, JVM and GC statistics) and as CSV (one row
+ * for each query), so results of different builds can be compared with a diff.
+ */
+public class BenchmarkRunner {
+
+	private Model model;
+	private String docs;
+	private String queries;
+	private String qrels;
+	private int warmup = 1;		// query passes not measured
+	private int repeat = 3;		// query passes measured
+
+	//Filled by run()
+	private IRBenchmark benchmark;
+	private ArrayList<ArrayList<Long>> latencies = new ArrayList<ArrayList<Long>>();	// for each query, one latency for each pass
+	private ArrayList<Long> allocations = new ArrayList<Long>();	// bytes allocated by each measured query
+	private long measuredTime = 0;	// nanoseconds spent by measured queries
+	private long indexingTime;
+	private ArrayList<GcSample> gcBefore;
+	private ArrayList<GcSample> gcAfter;
+	private long startTime;
+
+	/*
+	 * Collections and time spent by a garbage collector, up to a point
+	 */
+	private static class GcSample {
+		String name;
+		long count;
+		long time;
+	}
+
+	/**
+	 * @param model model on which execute benchmark
+	 * @param docs in this file, every line is a path of a document on which execute query
+	 * @param queries file in lisa.que format
+	 * @param qrels file in lisa.rel format
+	 */
+	public BenchmarkRunner(Model model, String docs, String queries, String qrels) {
+		this.model = model;
+		this.docs = docs;
+		this.queries = queries;
+		this.qrels = qrels;
+	}
+
+	public BenchmarkRunner warmup(int passes) {
+		this.warmup = passes;
+		return this;
+	}
+
+	public BenchmarkRunner repeat(int passes) {
+		this.repeat = Math.max(1, passes);
+		return this;
+	}
+
+	/**
+	 * Loads the collection in an empty index, then runs the queries: the first pass computes quality measures,
+	 * then warmup passes are run and finally the measured passes.
+	 */
+	public void run() {
+		startTime = System.currentTimeMillis();
+		gcBefore = sampleGc();
+
+		Index.getIndex().resetIndex();
+		Index.getIndex().setVerbose(false);
+		benchmark = new IRBenchmark(model, docs, queries, qrels);
+		benchmark.setVerbose(false);
+		benchmark.executeBenchmark();
+		indexingTime = benchmark.indexingTime;
+
+		ArrayList<String> queryList = benchmark.readQueries();
+		for (int i = 0; i < queryList.size(); i++) {
+			latencies.add(new ArrayList<Long>());
+		}
+		for (int pass = 0; pass < warmup + repeat; pass++) {
+			benchmark.evaluate(queryList, benchmark.expectedDocuments);
+			if (pass >= warmup) {
+				for (int i = 0; i < queryList.size(); i++) {
+					latencies.get(i).add(benchmark.queryLatencies.get(i));
+					measuredTime += benchmark.queryLatencies.get(i);
+					if (benchmark.queryAllocations.get(i) >= 0) {
+						allocations.add(benchmark.queryAllocations.get(i));
+					}
+				}
+			}
+		}
+
+		gcAfter = sampleGc();
+	}
+
+	private static ArrayList<GcSample> sampleGc() {
+		ArrayList<GcSample> samples = new ArrayList<GcSample>();
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			GcSample s = new GcSample();
+			s.name = gc.getName();
+			s.count = gc.getCollectionCount();
+			s.time = gc.getCollectionTime();
+			samples.add(s);
+		}
+		return samples;
+	}
+
+	/**
+	 * Median of the measured latencies of a query.
+	 * @param query is the query number (from 0)
+	 * @return latency in nanoseconds
+	 */
+	private long getMedianLatency(int query) {
+		ArrayList<Long> l = new ArrayList<Long>(latencies.get(query));
+		Collections.sort(l);
+		return l.size() == 0 ? 0 : l.get(l.size() / 2);
+	}
+
+	/**
+	 * Main measures of the run, the ones kept in baselines and compared across builds.
+	 * @return measures by name
+	 */
+	public LinkedHashMap<String, Double> getSummary() {
+		ArrayList<Long> all = new ArrayList<Long>();
+		for (ArrayList<Long> l : latencies) {
+			all.addAll(l);
+		}
+		Collections.sort(all);
+
+		LinkedHashMap<String, Double> summary = new LinkedHashMap<String, Double>();
+		summary.put("indexing.docsPerSecond", Index.getIndex().getSize() / Math.max(indexingTime / 1e9, 1e-9));
+		summary.put("query.throughputQps", all.size() / Math.max(measuredTime / 1e9, 1e-9));
+		summary.put("latency.p50Ms", percentile(all, 0.50) / 1e6);
+		summary.put("latency.p95Ms", percentile(all, 0.95) / 1e6);
+		summary.put("latency.p99Ms", percentile(all, 0.99) / 1e6);
+		if (allocations.size() > 0) {
+			summary.put("alloc.bytesPerQuery", meanLong(allocations));
+		}
+		summary.put("quality.precision", mean(benchmark.precision));
+		summary.put("quality.recall", mean(benchmark.recall));
+		summary.put("quality.fMeasure", mean(benchmark.getFMeasure(benchmark.precision, benchmark.recall)));
+		summary.put("quality.rPrecision10", mean(benchmark.getRPrecision(10)));
+		return summary;
+	}
+
+	/**
+	 * Results as JSON.
+	 * @return JSON document
+	 */
+	public String toJson() {
+		ArrayList<Double> fmeasure = benchmark.getFMeasure(benchmark.precision, benchmark.recall);
+		ArrayList<Double> rprecision5 = benchmark.getRPrecision(5);
+		ArrayList<Double> rprecision10 = benchmark.getRPrecision(10);
+		ArrayList<Double> rprecision15 = benchmark.getRPrecision(15);
+		ArrayList<Long> medians = new ArrayList<Long>();
+		for (int i = 0; i < latencies.size(); i++) {
+			medians.add(getMedianLatency(i));
+		}
+		ArrayList<Long> sorted = new ArrayList<Long>(medians);
+		Collections.sort(sorted);
+
+		JsonWriter json = new JsonWriter();
+		json.beginObject();
+		json.field("model", model.getName());
+		json.field("documents", docs);
+		json.field("queries", queries);
+		json.field("qrels", qrels);
+		json.field("timestamp", startTime);
+		json.field("warmupPasses", warmup);
+		json.field("measuredPasses", repeat);
+
+		json.name("indexing").beginObject();
+		json.field("documents", Index.getIndex().getSize());
+		json.field("timeMs", indexingTime / 1e6);
+		json.field("docsPerSecond", Index.getIndex().getSize() / Math.max(indexingTime / 1e9, 1e-9));
+		json.field("indexSizeBytes", Index.getIndex().getIndexSize());
+		json.endObject();
+
+		json.name("quality").beginObject();
+		json.field("precision", mean(benchmark.precision));
+		json.field("recall", mean(benchmark.recall));
+		json.field("fMeasure", mean(fmeasure));
+		json.field("rPrecision5", mean(rprecision5));
+		json.field("rPrecision10", mean(rprecision10));
+		json.field("rPrecision15", mean(rprecision15));
+		json.endObject();
+
+		json.name("latencyMs").beginObject();
+		json.field("mean", meanLong(medians) / 1e6);
+		json.field("p50", percentile(sorted, 0.50) / 1e6);
+		json.field("p95", percentile(sorted, 0.95) / 1e6);
+		json.field("p99", percentile(sorted, 0.99) / 1e6);
+		json.field("max", percentile(sorted, 1.0) / 1e6);
+		json.endObject();
+		if (allocations.size() > 0) {
+			json.field("allocatedBytesPerQuery", meanLong(allocations));
+		}
+
+		json.name("perQuery").beginArray();
+		for (int i = 0; i < latencies.size(); i++) {
+			json.beginObject();
+			json.field("query", i + 1);
+			json.field("retrieved", benchmark.retrivedDocuments.get(i).size());
+			json.field("relevant", benchmark.expectedDocuments.get(i).size());
+			json.field("precision", benchmark.precision.get(i));
+			json.field("recall", benchmark.recall.get(i));
+			json.field("fMeasure", fmeasure.get(i));
+			json.field("rPrecision10", rprecision10.get(i));
+			json.field("latencyMedianMs", medians.get(i) / 1e6);
+			json.name("latenciesMs").beginArray();
+			for (Long l : latencies.get(i)) {
+				json.value(l / 1e6);
+			}
+			json.endArray();
+			json.endObject();
+		}
+		json.endArray();
+
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		json.name("jvm").beginObject();
+		json.field("javaVersion", System.getProperty("java.version"));
+		json.field("vm", ManagementFactory.getRuntimeMXBean().getVmName());
+		json.field("processors", Runtime.getRuntime().availableProcessors());
+		json.field("heapUsedBytes", heap.getUsed());
+		json.field("heapCommittedBytes", heap.getCommitted());
+		json.field("heapMaxBytes", heap.getMax());
+		json.field("uptimeMs", ManagementFactory.getRuntimeMXBean().getUptime());
+		json.name("gc").beginArray();
+		for (int i = 0; i < gcAfter.size(); i++) {
+			json.beginObject();
+			json.field("name", gcAfter.get(i).name);
+			json.field("collections", gcAfter.get(i).count - gcBefore.get(i).count);
+			json.field("timeMs", gcAfter.get(i).time - gcBefore.get(i).time);
+			json.endObject();
+		}
+		json.endArray();
+		json.endObject();
+
+		json.endObject();
+		return json.toString();
+	}
+
+	/**
+	 * Per-query results as CSV, one row for each query.
+	 * @return CSV document
+	 */
+	public String toCsv() {
+		ArrayList<Double> fmeasure = benchmark.getFMeasure(benchmark.precision, benchmark.recall);
+		ArrayList<Double> rprecision10 = benchmark.getRPrecision(10);
+		StringBuilder sb = new StringBuilder();
+		sb.append("model,query,retrieved,relevant,precision,recall,f_measure,r_precision_10,latency_median_ms,latency_min_ms,latency_max_ms\n");
+		for (int i = 0; i < latencies.size(); i++) {
+			ArrayList<Long> l = new ArrayList<Long>(latencies.get(i));
+			Collections.sort(l);
+			sb.append(String.format(Locale.ROOT, "%s,%d,%d,%d,%.6f,%.6f,%.6f,%.6f,%.3f,%.3f,%.3f\n",
+					model.getName(), i + 1,
+					benchmark.retrivedDocuments.get(i).size(), benchmark.expectedDocuments.get(i).size(),
+					benchmark.precision.get(i), benchmark.recall.get(i), fmeasure.get(i), rprecision10.get(i),
+					getMedianLatency(i) / 1e6, l.get(0) / 1e6, l.get(l.size() - 1) / 1e6));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes results.json and results.csv, prefixed by the model name, in the output folder.
+	 * @param outputDir is the output folder
+	 */
+	public void save(String outputDir) throws IOException {
+		new File(outputDir).mkdirs();
+		write(new File(outputDir, model.getName() + "-results.json"), toJson());
+		write(new File(outputDir, model.getName() + "-results.csv"), toCsv());
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileWriter fw = new FileWriter(file);
+		fw.append(content);
+		fw.close();
+	}
+
+	private static double mean(List<Double> list) {
+		double sum = 0;
+		for (Double d : list)
+			sum += d;
+		return list.size() > 0 ? sum / list.size() : 0.0;
+	}
+
+	private static double meanLong(List<Long> list) {
+		double sum = 0;
+		for (Long l : list)
+			sum += l;
+		return list.size() > 0 ? sum / list.size() : 0.0;
+	}
+
+	private static double percentile(List<Long> sorted, double p) {
+		if (sorted.size() == 0)
+			return 0.0;
+		int i = (int) Math.ceil(p * sorted.size()) - 1;
+		return sorted.get(Math.max(0, Math.min(i, sorted.size() - 1)));
+	}
+
+	/**
+	 * Command line entry point. Options:
+	 * --model model name as in Model.getName(), or "all" (default VectorSpaceModel)
+	 * --docs file with a document path for each line (default benchmarkDocs.ser)
+	 * --queries file in lisa.que format (default benchmark/lisa/LISA.QUE)
+	 * --qrels file in lisa.rel format (default benchmark/lisa/LISA.REL)
+	 * --warmup query passes not measured (default 1)
+	 * --repeat query passes measured (default 3)
+	 * --out output folder (default benchmark/lisa/cli)
+	 * --trials independent runs (reindexing included) of each model, for baselines (default 5, at least 2 to save
+	 * or compare a baseline)
+	 * --save-baseline name under which trials are saved as baseline
+	 * --compare-baseline name of the baseline to compare trials with; exit code is 1 on regression
+	 * --baselines folder of baselines (default benchmark/baselines)
+	 * --tolerance relative change of performance measures ignored by comparison (default 0.05)
+	 * --charts also draws benchmark charts, of the given type: svg or png (default none)
+	 * @param args options
+	 */
+	public static void main(String[] args) throws IOException {
+		HashMap<String, String> opts = LoadGenerator.parseOptions(args);
+		String modelName = LoadGenerator.get(opts, "model", "VectorSpaceModel");
+
+		LinkedList<Model> models = new LinkedList<Model>();
+		if (modelName.equalsIgnoreCase("all")) {
+			models = Model.getRegisteredModels();
+		} else if (Model.getModel(modelName) != null) {
+			models.add(Model.getModel(modelName));
+		} else {
+			System.err.println("Unknown model " + modelName);
+			System.exit(1);
+		}
+
+		String out = LoadGenerator.get(opts, "out", "benchmark/lisa/cli");
+		int trials = Math.max(1, Integer.parseInt(LoadGenerator.get(opts, "trials", "5")));
+		if (trials < BaselineStore.MIN_TRIALS && (opts.containsKey("compare-baseline") || opts.containsKey("save-baseline"))) {
+			System.err.println("Baselines need at least " + BaselineStore.MIN_TRIALS + " trials, a single trial has no variance to test differences against");
+			System.exit(1);
+		}
+		BaselineStore store = new BaselineStore(LoadGenerator.get(opts, "baselines", "benchmark/baselines")).
+				tolerance(Double.parseDouble(LoadGenerator.get(opts, "tolerance", "0.05")));
+		boolean passed = true;
+
+		for (Model model : models) {
+			ArrayList<LinkedHashMap<String, Double>> summaries = new ArrayList<LinkedHashMap<String, Double>>();
+			for (int trial = 0; trial < trials; trial++) {
+				BenchmarkRunner runner = new BenchmarkRunner(model,
+						LoadGenerator.get(opts, "docs", "benchmarkDocs.ser"),
+						LoadGenerator.get(opts, "queries", "benchmark/lisa/LISA.QUE"),
+						LoadGenerator.get(opts, "qrels", "benchmark/lisa/LISA.REL")).
+						warmup(Integer.parseInt(LoadGenerator.get(opts, "warmup", "1"))).
+						repeat(Integer.parseInt(LoadGenerator.get(opts, "repeat", "3")));
+				runner.run();
+				summaries.add(runner.getSummary());
+				// Files of the last trial are kept
+				runner.save(out);
+				if (opts.containsKey("charts") && trial == trials - 1) {
+					runner.benchmark.doGraph(opts.get("charts"));
+				}
+			}
+			System.out.println("Results of " + model.getName() + " written to " + out);
+
+			if (opts.containsKey("compare-baseline")) {
+				BaselineStore.Comparison c = store.compare(opts.get("compare-baseline"), model.getName(), summaries);
+				if (c == null) {
+					System.err.println("Baseline " + opts.get("compare-baseline") + " of " + model.getName() + " doesn't exist");
+					passed = false;
+				} else {
+					System.out.println(c.report);
+					passed &= c.passed;
+				}
+			}
+			if (opts.containsKey("save-baseline")) {
+				store.save(opts.get("save-baseline"), model.getName(), summaries);
+				System.out.println("Baseline " + opts.get("save-baseline") + " of " + model.getName() + " saved");
+			}
+		}
+		System.exit(passed ? 0 : 1);
+	}
+
+}
@@ -0,0 +1,361 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.SmallFloat;
+
+import index.Index;
+
+/**
+ * @author luca
+ *
+ * This class synthesizes corpora much bigger than LISA, to test how the Index scales. The term distribution and
+ * the distribution of document lengths are taken from an indexed collection: observed terms keep their observed
+ * frequencies, and the vocabulary is extended beyond them following a Zipf law fitted on the observed tail, with
+ * the vocabulary size growing with the corpus as Heaps' law says. Stopwords are not generated, because the
+ * analyzer removes them anyway.
+ * Queries are generated with their relevant documents: terms of each query are planted in a few documents, that
+ * are written in LISA.REL format, so a synthetic corpus can be used by IRBenchmark too.
+ */
+public class CorpusGenerator {
+
+	private static final int DOCS_PER_FOLDER = 10000;
+	private static final double HEAPS_BETA = 0.5;
+	private static final String[] SYLLABLES = { "ba", "ce", "di", "fo", "gu", "la", "me", "ni", "po", "ru",
+			"sa", "te", "vi", "zo", "ka", "re", "mi", "to", "na", "lu" };
+
+	private String[] terms;		// observed terms, by decreasing frequency
+	private long[] freqs;		// observed frequency of each term
+	private int[] docLengths;	// observed document lengths (in tokens)
+	private long observedTokens;
+	private double zipfExponent;
+	private Random random;
+
+	//Built by prepare(): cumulative probability of each rank for the current corpus size
+	private double[] cumulative;
+
+	/**
+	 * @param terms observed terms
+	 * @param freqs number of occurrences of each term in the collection
+	 * @param docLengths length (number of tokens) of each document of the collection
+	 * @param seed seed of the random generator, so the same corpus can be generated again
+	 */
+	public CorpusGenerator(String[] terms, long[] freqs, int[] docLengths, long seed) {
+		this.random = new Random(seed);
+		this.docLengths = docLengths;
+
+		// Terms are sorted by decreasing frequency, so their position is their Zipf rank
+		Integer[] order = new Integer[terms.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(freqs[b], freqs[a]));
+		this.terms = new String[terms.length];
+		this.freqs = new long[terms.length];
+		for (int i = 0; i < order.length; i++) {
+			this.terms[i] = terms[order[i]];
+			this.freqs[i] = freqs[order[i]];
+			observedTokens += this.freqs[i];
+		}
+		this.zipfExponent = fitZipfExponent();
+	}
+
+	/**
+	 * Reads term and length distributions of a field from an index. Lengths are read from norms, so they are
+	 * available even if the content is not stored.
+	 * @param index is the loaded index
+	 * @param field is the field to read
+	 * @param seed seed of the random generator
+	 * @return a generator for that collection
+	 */
+	public static CorpusGenerator fromIndex(Index index, String field, long seed) throws IOException {
+		IndexReader reader = index.acquireReader();
+		try {
+			return fromReader(reader, field, seed);
+		} finally {
+			index.releaseReader(reader);
+		}
+	}
+
+	private static CorpusGenerator fromReader(IndexReader reader, String field, long seed) throws IOException {
+		ArrayList<String> terms = new ArrayList<String>();
+		ArrayList<Long> freqs = new ArrayList<Long>();
+
+		Terms t = MultiFields.getTerms(reader, field);
+		if (t != null) {
+			TermsEnum te = t.iterator();
+			BytesRef term;
+			while ((term = te.next()) != null) {
+				terms.add(term.utf8ToString());
+				freqs.add(te.totalTermFreq());
+			}
+		}
+
+		int[] lengths = new int[reader.numDocs()];
+		int n = 0;
+		NumericDocValues norms = MultiDocValues.getNormValues(reader, field);
+		if (norms != null) {
+			while (norms.nextDoc() != DocIdSetIterator.NO_MORE_DOCS && n < lengths.length) {
+				lengths[n++] = SmallFloat.byte4ToInt((byte) norms.longValue());
+			}
+		}
+		lengths = Arrays.copyOf(lengths, n);
+
+		long[] f = new long[freqs.size()];
+		for (int i = 0; i < f.length; i++) {
+			f[i] = freqs.get(i);
+		}
+		return new CorpusGenerator(terms.toArray(new String[0]), f, lengths, seed);
+	}
+
+	/*
+	 * Least squares fit of log(freq) = c - s * log(rank) on the observed ranks, skipping the head (the
+	 * most frequent terms rarely follow the law) and hapaxes.
+	 */
+	private double fitZipfExponent() {
+		double sx = 0, sy = 0, sxx = 0, sxy = 0;
+		int n = 0;
+		for (int r = 10; r < freqs.length && freqs[r] > 1; r++) {
+			double x = Math.log(r + 1), y = Math.log(freqs[r]);
+			sx += x;
+			sy += y;
+			sxx += x * x;
+			sxy += x * y;
+			n++;
+		}
+		if (n < 2) {
+			return 1.0;
+		}
+		double s = -(n * sxy - sx * sy) / (n * sxx - sx * sx);
+		return s > 0 ? s : 1.0;
+	}
+
+	/**
+	 * Vocabulary size expected for a corpus of the given number of tokens (Heaps' law, fitted on the
+	 * observed collection). It is never smaller than the observed vocabulary.
+	 * @param tokens number of tokens of the corpus
+	 * @return number of distinct terms
+	 */
+	public int getVocabularySize(long tokens) {
+		if (observedTokens == 0) {
+			return terms.length;
+		}
+		double k = terms.length / Math.pow(observedTokens, HEAPS_BETA);
+		long v = Math.round(k * Math.pow(tokens, HEAPS_BETA));
+		return (int) Math.max(terms.length, Math.min(v, Integer.MAX_VALUE - 8));
+	}
+
+	/*
+	 * Builds the cumulative distribution of ranks for a corpus with the given vocabulary. Observed ranks keep
+	 * their frequency, new ranks continue the Zipf curve from the last observed frequency.
+	 */
+	private void prepare(int vocabulary) {
+		cumulative = new double[vocabulary];
+		double last = freqs.length > 0 ? freqs[freqs.length - 1] : 1;
+		double sum = 0;
+		for (int r = 0; r < vocabulary; r++) {
+			if (r < freqs.length) {
+				sum += freqs[r];
+			} else {
+				sum += last * Math.pow((double) freqs.length / (r + 1), zipfExponent);
+			}
+			cumulative[r] = sum;
+		}
+		for (int r = 0; r < vocabulary; r++) {
+			cumulative[r] /= sum;
+		}
+	}
+
+	private int sampleRank() {
+		int r = Arrays.binarySearch(cumulative, random.nextDouble());
+		r = r < 0 ? -r - 1 : r;
+		return Math.min(r, cumulative.length - 1);
+	}
+
+	private int sampleLength() {
+		if (docLengths.length == 0) {
+			return 100;
+		}
+		return Math.max(1, docLengths[random.nextInt(docLengths.length)]);
+	}
+
+	/**
+	 * Returns the term at the given rank: an observed term, or a synthetic word made of syllables.
+	 * @param rank is the Zipf rank (starting from 0)
+	 * @return the term
+	 */
+	public String getTerm(int rank) {
+		if (rank < terms.length) {
+			return terms[rank];
+		}
+		StringBuilder sb = new StringBuilder();
+		int n = rank - terms.length;
+		do {
+			sb.append(SYLLABLES[n % SYLLABLES.length]);
+			n /= SYLLABLES.length;
+		} while (n > 0);
+		// At least 3 syllables, so synthetic words do not collide with short real words
+		while (sb.length() < 6) {
+			sb.append(SYLLABLES[0]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates a corpus. Documents are written as outputDir/docs/N/I.txt (at most 10000 for each folder), their
+	 * paths are listed in outputDir/docs.list (a file the Index and IRBenchmark can load), queries are written in
+	 * outputDir/queries.que and their relevant documents in outputDir/queries.rel, in LISA format.
+	 * @param numDocs number of documents
+	 * @param numQueries number of queries
+	 * @param relevantPerQuery number of documents in which terms of each query are planted
+	 * @param outputDir folder of the corpus
+	 */
+	public void generate(int numDocs, int numQueries, int relevantPerQuery, String outputDir) throws IOException {
+		double avgLength = 0;
+		for (int l : docLengths) {
+			avgLength += l;
+		}
+		avgLength = docLengths.length > 0 ? avgLength / docLengths.length : 100;
+		int vocabulary = getVocabularySize((long) (avgLength * numDocs));
+		prepare(vocabulary);
+		System.out.println("Generating " + numDocs + " documents, vocabulary of " + vocabulary + " terms, zipf exponent "
+				+ String.format("%.3f", zipfExponent));
+
+		// Queries are made of mid-frequency terms: the head is too generic, the tail too rare
+		int from = Math.min(50, vocabulary - 1);
+		int to = Math.max(from + 1, Math.min(vocabulary, terms.length));
+		ArrayList<String> queries = new ArrayList<String>();
+		ArrayList<LinkedList<Integer>> relevants = new ArrayList<LinkedList<Integer>>();
+		HashMap<Integer, LinkedList<String>> planted = new HashMap<Integer, LinkedList<String>>();
+		for (int q = 0; q < numQueries; q++) {
+			int length = 3 + random.nextInt(4);
+			StringBuilder query = new StringBuilder();
+			for (int i = 0; i < length; i++) {
+				query.append(getTerm(from + random.nextInt(to - from))).append(" ");
+			}
+			queries.add(query.toString().trim());
+
+			LinkedList<Integer> rel = new LinkedList<Integer>();
+			for (int i = 0; i < relevantPerQuery && i < numDocs; i++) {
+				int doc = 1 + random.nextInt(numDocs);
+				if (!rel.contains(doc)) {
+					rel.add(doc);
+					if (!planted.containsKey(doc)) {
+						planted.put(doc, new LinkedList<String>());
+					}
+					planted.get(doc).add(queries.get(q));
+				}
+			}
+			Collections.sort(rel);
+			relevants.add(rel);
+		}
+
+		File docsDir = new File(outputDir, "docs");
+		BufferedWriter list = new BufferedWriter(new FileWriter(new File(outputDir, "docs.list")));
+		for (int d = 1; d <= numDocs; d++) {
+			File folder = new File(docsDir, "" + (d / DOCS_PER_FOLDER));
+			if (d % DOCS_PER_FOLDER == 0 || d == 1) {
+				folder.mkdirs();
+			}
+			File doc = new File(folder, d + ".txt");
+
+			BufferedWriter out = new BufferedWriter(new FileWriter(doc));
+			int length = sampleLength();
+			for (int i = 0; i < length; i++) {
+				out.write(getTerm(sampleRank()));
+				out.write((i + 1) % 12 == 0 ? '\n' : ' ');
+			}
+			if (planted.containsKey(d)) {
+				for (String query : planted.get(d)) {
+					out.write("\n" + query);
+				}
+			}
+			out.write('\n');
+			out.close();
+
+			list.write(doc.getPath());
+			list.newLine();
+			if (d % 100000 == 0) {
+				System.out.println(d + " documents generated");
+			}
+		}
+		list.close();
+
+		writeQueries(queries, new File(outputDir, "queries.que"));
+		writeRelevants(relevants, new File(outputDir, "queries.rel"));
+	}
+
+	/*
+	 * Same format of LISA.QUE: query number, query text, " #" at the end of the query
+	 */
+	private static void writeQueries(ArrayList<String> queries, File file) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		for (int q = 0; q < queries.size(); q++) {
+			out.write((q + 1) + "\n");
+			out.write(queries.get(q) + " #\n");
+		}
+		out.close();
+	}
+
+	/*
+	 * Same format of LISA.REL: "Query N", "M Relevant Refs:", relevant document numbers ended by -1
+	 */
+	private static void writeRelevants(ArrayList<LinkedList<Integer>> relevants, File file) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		for (int q = 0; q < relevants.size(); q++) {
+			out.write("Query " + (q + 1) + "\n");
+			out.write(relevants.get(q).size() + " Relevant Refs:\n");
+			StringBuilder line = new StringBuilder();
+			for (Integer doc : relevants.get(q)) {
+				line.append(doc).append(" ");
+			}
+			out.write(line.toString() + "-1\n\n");
+		}
+		out.close();
+	}
+
+	/**
+	 * Command line entry point. Options:
+	 * --source file with documents paths of the collection to imitate (default benchmarkDocs.ser)
+	 * --docs number of documents to generate (default 100000)
+	 * --queries number of queries (default 35)
+	 * --relevant relevant documents for each query (default 20)
+	 * --out output folder (default benchmark/synthetic/<docs>)
+	 * --seed seed of the random generator (default 42)
+	 * @param args options
+	 */
+	public static void main(String[] args) throws IOException {
+		HashMap<String, String> opts = LoadGenerator.parseOptions(args);
+		int docs = Integer.parseInt(LoadGenerator.get(opts, "docs", "100000"));
+
+		Index index = Index.getIndex();
+		index.setVerbose(false);
+		index.loadIndex(LoadGenerator.get(opts, "source", "benchmarkDocs.ser"));
+
+		CorpusGenerator generator = fromIndex(index, "content", Long.parseLong(LoadGenerator.get(opts, "seed", "42")));
+		String out = LoadGenerator.get(opts, "out", "benchmark/synthetic/" + docs);
+		new File(out).mkdirs();
+		generator.generate(docs, Integer.parseInt(LoadGenerator.get(opts, "queries", "35")),
+				Integer.parseInt(LoadGenerator.get(opts, "relevant", "20")), out);
+		System.out.println("Corpus written to " + out);
+		System.exit(0);
+	}
+
+}
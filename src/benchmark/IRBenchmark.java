@@ -1,13 +1,25 @@
 package benchmark;
 
 import java.awt.Color;
+import java.awt.Font;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.search.similarities.Similarity;
 
 //import org.apache.lucene.benchmark.byTask.Benchmark;
 
@@ -16,6 +28,8 @@ import index.Index;
 import irModels.FuzzyModel;
 import irModels.Model;
 import irModels.VectorSpaceModel;
+import metrics.AllocationCounter;
+import plot.Chart;
 import plot.Plot;
 import plot.Plot.Line;
 //import sun.applet.Main;
@@ -29,6 +43,10 @@ public class IRBenchmark {
 	String docExpected;	//File LISA.REL
 	Index generalIndex; //Index
 	LinkedList<String> ll; //List where to search (name, content)
+	Similarity similarity; //Similarity used to rank documents for this model
+	boolean verbose = true; //Print results of each query (disabled when more models run at the same time)
+	BenchmarkListener listener; //Notified of progress, if set
+	volatile boolean cancelled = false; //Set by cancel() to stop the benchmark
 	
 	//Filled when executeBenchmark is called
 	ArrayList<LinkedList<String>> expectedDocuments = new ArrayList<LinkedList<String>>();
@@ -36,6 +54,9 @@ public class IRBenchmark {
 	ArrayList<LinkedList<String>> intersect = new ArrayList<LinkedList<String>>();
 	ArrayList<Double> precision = new ArrayList<Double>();
 	ArrayList<Double> recall = new ArrayList<Double>();
+	ArrayList<Long> queryLatencies = new ArrayList<Long>(); //Nanoseconds spent by each query
+	ArrayList<Long> queryAllocations = new ArrayList<Long>(); //Bytes allocated by each query (-1 if not supported)
+	long indexingTime = 0; //Nanoseconds spent loading documents into the index
 
 	/**
 	 * 
@@ -51,7 +72,31 @@ public class IRBenchmark {
 		this.docExpected = docExpected;
 
 		this.generalIndex = Index.getIndex();
-		this.generalIndex.setSimilarity(model.getSimilarity(), false);
+		this.similarity = model.getSimilarity();
+		this.generalIndex.setSimilarity(similarity, false);
+
+		ll = new LinkedList<String>();
+		ll.add("name");
+		ll.add("content");
+	}
+	
+	/**
+	 * Used by comparative mode: the index is shared by all models, so it is not touched here, and each
+	 * benchmark only remembers the similarity to rank with.
+	 * @param model model on which execute benchmark
+	 * @param similarity similarity used to rank documents
+	 * @param fileDocumentsPaths in this file, every line is a path of a document on which execute query
+	 * @param queryFile this is lisa.que file
+	 * @param docExpected in this file, for every query, there is a list of relevant documents for it
+	 */
+	private IRBenchmark(Model model, Similarity similarity, String fileDocumentsPaths, String queryFile, String docExpected) {
+		this.model = model;
+		this.similarity = similarity;
+		this.fileDocumentsPaths = fileDocumentsPaths;
+		this.queryFile = queryFile;
+		this.docExpected = docExpected;
+		this.generalIndex = Index.getIndex();
+		this.verbose = false;
 
 		ll = new LinkedList<String>();
 		ll.add("name");
@@ -74,16 +119,19 @@ public class IRBenchmark {
 
 		loadIndex();
 
-
-		expectedDocuments = getExpectedDocuments();
-		retrivedDocuments = retrieveDocuments(queries);
-		intersect = getIntersection(expectedDocuments, retrivedDocuments);
+		if (!cancelled) {
+			evaluate(queries, getExpectedDocuments());
+		}
+		if (listener != null) {
+			listener.benchmarkFinished(cancelled);
+		}
+		if (cancelled) {
+			System.out.println("Benchmark cancelled");
+			return ;
+		}
 		
 		saveResults("resFuz.save", intersect);
 
-		precision = getPrecision(intersect, retrivedDocuments);
-		recall = getRecall(intersect, expectedDocuments);
-
 		int i=0;
 		for (Double rec: recall)
 			System.out.println("Recall query "+(++i)+": " + rec);
@@ -93,12 +141,178 @@ public class IRBenchmark {
 			System.out.println("Precision query "+(++i)+": " + rec);
 	}
 
+	/**
+	 * Toggles printing of expected, retrieved and intersected documents for each query.
+	 * @param verbose true to print them
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+	
+	/**
+	 * Sets who is notified of indexing and query progress while executeBenchmark runs.
+	 * @param listener the listener, or null
+	 */
+	public void setListener(BenchmarkListener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * Stops a running benchmark (it can be called by any thread). executeBenchmark returns after the current
+	 * document or query, and results are not computed.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	public String getModelName() {
+		return model.getName();
+	}
+	
+	/**
+	 * Runs queries on the index (that has to be already loaded) and computes intersection, precision
+	 * and recall against the expected documents.
+	 * @param queries list of queries
+	 * @param expected list of expected documents for each query
+	 */
+	void evaluate(ArrayList<String> queries, ArrayList<LinkedList<String>> expected) {
+		expectedDocuments = expected;
+		retrivedDocuments = retrieveDocuments(queries);
+		if (cancelled) {
+			return ;
+		}
+		intersect = getIntersection(expectedDocuments, retrivedDocuments);
+
+		precision = getPrecision(intersect, retrivedDocuments);
+		recall = getRecall(intersect, expectedDocuments);
+	}
+	
+	/**
+	 * Comparative mode. The collection is loaded only once, then every registered model runs the LISA queries
+	 * concurrently on the same index, each one ranking with its own similarity (norms are the same for all
+	 * the similarities implemented, so the index can be shared).
+	 * Quality comes from the concurrent run, while latencies are measured again afterwards running every model
+	 * alone, so that they don't include the contention among the models.
+	 * A side-by-side report of quality and latency for each model is printed and saved to reportFile.
+	 * @param fileDocumentsPaths in this file, every line is a path of a document on which execute query
+	 * @param queryFile this is lisa.que file
+	 * @param docExpected in this file, for every query, there is a list of relevant documents for it
+	 * @param reportFile file where the report is saved
+	 * @return the report
+	 */
+	public static String executeComparison(String fileDocumentsPaths, String queryFile, String docExpected, String reportFile) {
+		ArrayList<IRBenchmark> benchmarks = new ArrayList<IRBenchmark>();
+		for (Model m : Model.getRegisteredModels()) {
+			benchmarks.add(new IRBenchmark(m, m.getSimilarity(), fileDocumentsPaths, queryFile, docExpected));
+		}
+		
+		IRBenchmark first = benchmarks.get(0);
+		ArrayList<String> queries = first.readQueries();
+		
+		System.out.println("Loading index with " + fileDocumentsPaths);
+		first.generalIndex.resetIndex();
+		first.loadIndex();
+		ArrayList<LinkedList<String>> expected = first.getExpectedDocuments();
+		
+		int threads = Math.min(benchmarks.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		LinkedList<Future<?>> running = new LinkedList<Future<?>>();
+		
+		long start = System.nanoTime();
+		for (IRBenchmark benchmark : benchmarks) {
+			benchmark.indexingTime = first.indexingTime;
+			running.add(pool.submit(new Runnable() {
+				public void run() {
+					benchmark.evaluate(queries, expected);
+				}
+			}));
+		}
+		
+		try {
+			for (Future<?> f : running) {
+				f.get();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			pool.shutdown();
+		}
+		long elapsed = System.nanoTime() - start;
+		
+		// latencies of the concurrent run depend on the other models, so they are measured one model at a time
+		for (IRBenchmark benchmark : benchmarks) {
+			benchmark.measureLatencies(queries);
+		}
+		
+		String report = getComparisonReport(benchmarks, elapsed);
+		System.out.println(report);
+		
+		try {
+			FileWriter fw = new FileWriter(new File(reportFile));
+			fw.append(report);
+			fw.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return report;
+	}
+	
+	/**
+	 * Builds the side-by-side table of the comparative mode, one row for each model.
+	 * @param benchmarks benchmarks already evaluated
+	 * @param elapsed nanoseconds spent running all the models
+	 * @return the report
+	 */
+	private static String getComparisonReport(ArrayList<IRBenchmark> benchmarks, long elapsed) {
+		StringBuilder sb = new StringBuilder();
+		IRBenchmark first = benchmarks.get(0);
+		
+		sb.append("LISA comparative benchmark: " + first.expectedDocuments.size() + " queries, "
+				+ first.generalIndex.getSize() + " documents\n");
+		sb.append(String.format("Indexing: %.1f ms, querying (all models, concurrent): %.1f ms\n",
+				first.indexingTime / 1e6, elapsed / 1e6));
+		sb.append("Latencies measured running each model alone\n\n");
+		sb.append(String.format("%-18s %9s %9s %9s %9s %9s %9s %10s %10s %10s %10s\n", "Model",
+				"Precision", "Recall", "F", "R-Prec5", "R-Prec10", "R-Prec15", "Mean(ms)", "p50(ms)", "p95(ms)", "Max(ms)"));
+		
+		for (IRBenchmark b : benchmarks) {
+			ArrayList<Long> latencies = new ArrayList<Long>(b.queryLatencies);
+			Collections.sort(latencies);
+			double total = 0;
+			for (Long l : latencies) {
+				total += l;
+			}
+			
+			sb.append(String.format("%-18s %9.4f %9.4f %9.4f %9.4f %9.4f %9.4f %10.3f %10.3f %10.3f %10.3f\n",
+					b.model.getName(),
+					getMean(b.precision), getMean(b.recall), getMean(b.getFMeasure(b.precision, b.recall)),
+					getMean(b.getRPrecision(5)), getMean(b.getRPrecision(10)), getMean(b.getRPrecision(15)),
+					latencies.isEmpty() ? 0.0 : total / latencies.size() / 1e6,
+					getPercentile(latencies, 0.50) / 1e6, getPercentile(latencies, 0.95) / 1e6,
+					getPercentile(latencies, 1.0) / 1e6));
+		}
+		return sb.toString();
+	}
+	
 	/**
 	 * This method read query from lisa.que
 	 * Queries are split with '#', so each query ends up with that terminator. 
 	 * @return list of queries
 	 */
 	public ArrayList<String> readQueries() {
+		return readQueries(queryFile);
+	}
+	
+	/**
+	 * Same as readQueries(), usable without a benchmark instance (for example by the load generator).
+	 * @param queryFile file in lisa.que format
+	 * @return list of queries
+	 */
+	public static ArrayList<String> readQueries(String queryFile) {
 
 		//This will load queries in file queryFile
 		ArrayList<String> queries = new ArrayList<String>();
@@ -137,18 +351,39 @@ public class IRBenchmark {
 	 */
 	private void loadIndex(){
 		String docPath = "";
+		long start = System.nanoTime();
 
 		try {
 			File docF = new File(fileDocumentsPaths);
+			int total = listener != null ? countLines(docF) : 0;
+			int documents = 0;
 			BufferedReader br = new BufferedReader(new FileReader(docF));
 
-			while ( (docPath = br.readLine()) != null) {
-				generalIndex.addDocument(docPath);
+			generalIndex.beginBulkLoad();
+			try {
+				while ( !cancelled && (docPath = br.readLine()) != null) {
+					generalIndex.addDocument(docPath);
+					if (listener != null) {
+						listener.documentIndexed(++documents, total);
+					}
+				}
+			} finally {
+				generalIndex.endBulkLoad(Index.BULK_LOAD_SEGMENTS);
 			}
 			br.close();
 		}catch(Exception e) {
 			e.printStackTrace();
 		}
+		indexingTime = System.nanoTime() - start;
+	}
+
+	private static int countLines(File f) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(f));
+		int lines = 0;
+		while (br.readLine() != null)
+			lines++;
+		br.close();
+		return lines;
 	}
 
 	/**
@@ -186,7 +421,9 @@ public class IRBenchmark {
 							line = br.readLine();
 						}
 					}
-					System.out.println("Documents expected for query " + query_num + ": " + rel.toString());
+					if (verbose) {
+						System.out.println("Documents expected for query " + query_num + ": " + rel.toString());
+					}
 					query_num++;
 					expectedDocuments.add(rel);
 				}
@@ -209,22 +446,70 @@ public class IRBenchmark {
 		LinkedList<String> results = null;
 		LinkedList<Hit> indexResults = null;
 		int query_num = 1;
+		queryLatencies.clear();
+		queryAllocations.clear();
 
 		for(String query : queries) {
+			if (cancelled) {
+				break;
+			}
 			results = new LinkedList<String>();
 
-			indexResults = generalIndex.submitQuery(query, ll, model, false);
+			long allocated = AllocationCounter.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime();
+			indexResults = generalIndex.submitQuery(query, ll, model, similarity, false);
+			queryLatencies.add(System.nanoTime() - start);
+			queryAllocations.add(allocated < 0 ? -1 : AllocationCounter.getCurrentThreadAllocatedBytes() - allocated);
+			
 			for(Hit indRes : indexResults) {
 				results.add(indRes.getDocName().substring(0, indRes.getDocName().lastIndexOf(".")));
 			}
-			System.out.println("Results for query " + query_num + ": " + results.toString());
-			System.out.print("******************************************\n");
+			if (verbose) {
+				System.out.println("Results for query " + query_num + ": " + results.toString());
+				System.out.print("******************************************\n");
+			}
+			if (listener != null) {
+				notifyQuery(query_num, queries.size(), results);
+			}
 			query_num++;
 			documentsRetrieved.add(results);
 		}
 		return documentsRetrieved;
 	}
 
+	/**
+	 * Runs the queries again only to time them, replacing the latencies of evaluate.
+	 * Used by the comparative mode, where evaluate runs concurrently with the other models.
+	 * @param queries list of queries
+	 */
+	private void measureLatencies(ArrayList<String> queries) {
+		queryLatencies.clear();
+		for (String query : queries) {
+			if (cancelled) {
+				break;
+			}
+			long start = System.nanoTime();
+			generalIndex.submitQuery(query, ll, model, similarity, false);
+			queryLatencies.add(System.nanoTime() - start);
+		}
+	}
+
+	/*
+	 * Precision and recall of a single query, computed as getPrecision and getRecall do, for the listener
+	 */
+	private void notifyQuery(int query_num, int total, LinkedList<String> results) {
+		LinkedList<String> expected = query_num <= expectedDocuments.size() ? expectedDocuments.get(query_num - 1) : new LinkedList<String>();
+		int found = 0;
+		for (String doc : expected) {
+			if (results.contains(doc)) {
+				found++;
+			}
+		}
+		double p = results.size() > 0 ? (double) found / results.size() : 0.0;
+		double r = expected.size() > 0 ? (double) found / expected.size() : 0.0;
+		listener.queryCompleted(query_num, total, p, r, queryLatencies.get(queryLatencies.size() - 1));
+	}
+
 	/**
 	 * Do intersection between expected documents and retrieved documents.
 	 * @param expectedDocuments
@@ -247,7 +532,9 @@ public class IRBenchmark {
 					}
 				}
 			}
-			System.out.println("Intersection for query " + (query+1) + ": " + intersection.toString());
+			if (verbose) {
+				System.out.println("Intersection for query " + (query+1) + ": " + intersection.toString());
+			}
 			intersect.add(intersection);
 		}
 		return intersect;
@@ -408,6 +695,9 @@ public class IRBenchmark {
 	 */
 	private ArrayList<String> getIntersect(LinkedList<String> expectedDocuments, LinkedList<String> retrievedDocuments, int much){
 		ArrayList<String> intersect = new ArrayList<String>();
+		
+		//Less documents than required could have been retrieved
+		much = Math.min(much, retrievedDocuments.size());
 	
 		for (String s: expectedDocuments)
 			for (int i = 0; i < much; i++)
@@ -470,6 +760,14 @@ public class IRBenchmark {
 	 * Procedure to do graph of benchmark
 	 */
 	public void doGraph() {
+		doGraph("png");
+	}
+	
+	/**
+	 * Procedure to do graph of benchmark
+	 * @param type file type of charts: "svg" for vector graphics, otherwise an image type (png, jpg, ...)
+	 */
+	public void doGraph(String type) {
 		
 		ArrayList<Double> recallLevel = getRecallLevel(); //recallLevel (0.33, 0.66, 1.0)
 		ArrayList<ArrayList<Double>> precision = getPrecision();
@@ -488,6 +786,9 @@ public class IRBenchmark {
 			num_queries.add(i + 0.0);
 		}
 		
+		//Charts are collected here, then rendered and saved all together
+		LinkedHashMap<String, Chart> charts = new LinkedHashMap<String, Chart>();
+		
 		try {
 			
 			System.out.println("Plotting precision graph");
@@ -507,7 +808,7 @@ public class IRBenchmark {
 								line(Line.NONE).
 								marker(Plot.Marker.COLUMN).
 								color(Color.BLUE).markerColor(Color.BLUE));
-			plot.save("benchmark/lisa/results/precision", "png");
+			charts.put("benchmark/lisa/results/precision", plot);
 			
 			System.out.println("Plotting recall graph");
 			//Recall
@@ -526,7 +827,7 @@ public class IRBenchmark {
 								line(Line.NONE).
 								marker(Plot.Marker.COLUMN).
 								color(Color.BLUE).markerColor(Color.BLUE));
-			plot.save("benchmark/lisa/results/recall", "png");
+			charts.put("benchmark/lisa/results/recall", plot);
 			
 			System.out.println("Plotting R-Precision (5)");
 			//R-Precision 5
@@ -545,7 +846,7 @@ public class IRBenchmark {
 								line(Line.NONE).
 								marker(Plot.Marker.COLUMN).
 								color(Color.BLUE).markerColor(Color.BLUE));
-			plot.save("benchmark/lisa/results/rprecision5", "png");
+			charts.put("benchmark/lisa/results/rprecision5", plot);
 			
 			System.out.println("Plotting R-Precision (10)");
 			//R-Precision 10
@@ -564,7 +865,7 @@ public class IRBenchmark {
 								line(Line.NONE).
 								marker(Plot.Marker.COLUMN).
 								color(Color.BLUE).markerColor(Color.BLUE));
-			plot.save("benchmark/lisa/results/rprecision10", "png");
+			charts.put("benchmark/lisa/results/rprecision10", plot);
 			
 			System.out.println("Plotting R-Precision (15)");
 			//R-Precision 15
@@ -583,7 +884,7 @@ public class IRBenchmark {
 								line(Line.NONE).
 								marker(Plot.Marker.COLUMN).
 								color(Color.BLUE).markerColor(Color.BLUE));
-			plot.save("benchmark/lisa/results/rprecision15", "png");
+			charts.put("benchmark/lisa/results/rprecision15", plot);
 			
 			System.out.println("Plotting Avg Precision");
 			//Avg Precision
@@ -601,31 +902,69 @@ public class IRBenchmark {
 								line(Line.NONE).
 								marker(Plot.Marker.COLUMN).
 								color(Color.BLUE).markerColor(Color.BLUE));
-			plot.save("benchmark/lisa/results/avgprecision", "png");
+			charts.put("benchmark/lisa/results/avgprecision", plot);
 			
 			System.out.println("Plotting Recall/Precision for each query");
-			//Recall Level/Precision
+			//Recall Level/Precision: a small panel for each query, all with the same axes
+			Plot.Grid grid = Plot.grid(Plot.gridOpts().
+					title("Precision - Recall for each query").
+					columns(7).
+					panelSize(280, 200));
 			for (int i = 0; i < this.recall.size(); i++) {
-				
-				plot = Plot.plot(Plot.plotOpts().
-						title("Precision - Recall Query "+(i+1)).
-						width(1000).
-						height(600).
-						legend(Plot.LegendFormat.NONE)).	
-					xAxis("Recall", Plot.axisOpts().
+				grid.panel(Plot.plot(Plot.plotOpts().
+						title("Query "+(i+1)).
+						titleFont(new Font("Arial", Font.BOLD, 12)).
+						labelFont(new Font("Arial", 0, 10)).
+						grids(3, 4).
+						padding(5).
+						labelPadding(5)).
+					xAxis("R", Plot.axisOpts().
 						range(0.33, 1)).
-					yAxis("Precision", Plot.axisOpts().
+					yAxis("P", Plot.axisOpts().
 						range(0, getMax(precision.get(i)))).
 					series(".", Plot.data().
 						xy(recallLevel.get(2), precision.get(i).get(2)).
 						xy(recallLevel.get(1), precision.get(i).get(1)).
 						xy(recallLevel.get(0), precision.get(i).get(0)),
 						Plot.seriesOpts().
-							lineWidth(3).
 							marker(Plot.Marker.CIRCLE).
-							color(Color.BLUE));
-				plot.save("benchmark/lisa/results/recall-precision"+(i+1), "png");
+							markerSize(6).
+							color(Color.BLUE)));
+			}
+			charts.put("benchmark/lisa/results/recall-precision", grid);
+			
+			//The same curves overlaid, with their average
+			double maxPrecision = 0.0;
+			for (ArrayList<Double> p : precision)
+				maxPrecision = Math.max(maxPrecision, getMax(p));
+			plot = Plot.plot(Plot.plotOpts().
+					title("Precision - Recall, all queries (black: average)").
+					width(1000).
+					height(600).
+					legend(Plot.LegendFormat.NONE)).
+				xAxis("Recall", Plot.axisOpts().
+					range(0.33, 1)).
+				yAxis("Precision", Plot.axisOpts().
+					range(0, maxPrecision > 0 ? maxPrecision : 1));
+			for (int i = 0; i < this.recall.size(); i++) {
+				plot.series("Query "+(i+1), Plot.data().
+						xy(recallLevel.get(2), precision.get(i).get(2)).
+						xy(recallLevel.get(1), precision.get(i).get(1)).
+						xy(recallLevel.get(0), precision.get(i).get(0)),
+						Plot.seriesOpts().
+							lineWidth(1).
+							color(Color.getHSBColor((float) i / this.recall.size(), 0.6f, 0.85f)));
 			}
+			plot.series("Average", Plot.data().
+					xy(recallLevel, avgPrecision),
+					Plot.seriesOpts().
+						lineWidth(4).
+						marker(Plot.Marker.CIRCLE).
+						color(Color.BLACK));
+			charts.put("benchmark/lisa/results/recall-precision-overlay", plot);
+			
+			new File("benchmark/lisa/results").mkdirs();
+			saveCharts(charts, type);
 			
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -633,6 +972,54 @@ public class IRBenchmark {
 		System.out.println("Plotting finished");
 	}
 	
+	/**
+	 * Renders and saves charts in parallel. Each chart is drawn by a pool of workers (one for each core), and as
+	 * soon as its image is ready, encoding and writing the file is handed to a second pool, so drawing of the
+	 * next charts goes on meanwhile. SVG charts are streamed to their files while drawn, so they need no second
+	 * step. It returns when all files are written.
+	 * @param charts charts to save, by file name (without extension)
+	 * @param type svg, or image type (png, jpg, ...)
+	 */
+	private static void saveCharts(LinkedHashMap<String, Chart> charts, String type) throws IOException {
+		int cores = Runtime.getRuntime().availableProcessors();
+		ExecutorService renderPool = Executors.newFixedThreadPool(cores);
+		ExecutorService writePool = Executors.newFixedThreadPool(Math.max(1, cores / 2));
+		LinkedList<CompletableFuture<Void>> saved = new LinkedList<CompletableFuture<Void>>();
+		
+		for (Map.Entry<String, Chart> chart : charts.entrySet()) {
+			if (type.equalsIgnoreCase("svg")) {
+				saved.add(CompletableFuture.runAsync(() -> {
+					try {
+						chart.getValue().save(chart.getKey(), type);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}, renderPool));
+				continue;
+			}
+			saved.add(CompletableFuture.supplyAsync(chart.getValue()::render, renderPool).
+					thenAcceptAsync(image -> {
+						try {
+							Plot.write(image, chart.getKey(), type);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}, writePool));
+		}
+		
+		try {
+			CompletableFuture.allOf(saved.toArray(new CompletableFuture<?>[0])).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw e;
+		} finally {
+			renderPool.shutdown();
+			writePool.shutdown();
+		}
+	}
+	
 	/**
 	 * Get max value in a double array list
 	 * @param list
@@ -648,6 +1035,31 @@ public class IRBenchmark {
 		return max;
 	}
 	
+	/**
+	 * Get mean value in a double array list
+	 * @param list
+	 * @return
+	 */
+	private static double getMean(ArrayList<Double> list) {
+		double sum = 0.0;
+		for (Double d : list)
+			sum += d;
+		return list.size() > 0 ? sum / list.size() : 0.0;
+	}
+	
+	/**
+	 * Get percentile of a sorted list of latencies
+	 * @param sorted latencies sorted in ascending order
+	 * @param p percentile, between 0 and 1
+	 * @return
+	 */
+	private static double getPercentile(ArrayList<Long> sorted, double p) {
+		if (sorted.size() == 0)
+			return 0.0;
+		int i = (int) Math.ceil(p * sorted.size()) - 1;
+		return sorted.get(Math.max(0, Math.min(i, sorted.size() - 1)));
+	}
+	
 	/**
 	 * Get min value in a double array list
 	 * @param list
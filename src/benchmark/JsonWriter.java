@@ -0,0 +1,166 @@
+package benchmark;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+/**
+ * @author luca
+ *
+ * A minimal JSON writer, to save benchmark results without external libraries. Values are appended in order,
+ * commas and indentation are handled by the writer, so objects and arrays only need to be opened and closed.
+ */
+public class JsonWriter {
+
+	private StringBuilder sb = new StringBuilder();
+	private Deque<Boolean> empty = new ArrayDeque<Boolean>();	// for each open object/array, if nothing has been written yet
+	private boolean afterName = false;
+
+	public JsonWriter beginObject() {
+		return open('{');
+	}
+
+	public JsonWriter endObject() {
+		return close('}');
+	}
+
+	public JsonWriter beginArray() {
+		return open('[');
+	}
+
+	public JsonWriter endArray() {
+		return close(']');
+	}
+
+	/**
+	 * Writes the name of the next field of an object.
+	 * @param name is the field name
+	 * @return this writer
+	 */
+	public JsonWriter name(String name) {
+		separate();
+		sb.append(quote(name)).append(": ");
+		afterName = true;
+		return this;
+	}
+
+	public JsonWriter value(String value) {
+		separate();
+		sb.append(value == null ? "null" : quote(value));
+		return this;
+	}
+
+	public JsonWriter value(long value) {
+		separate();
+		sb.append(value);
+		return this;
+	}
+
+	public JsonWriter value(double value) {
+		separate();
+		// JSON has no NaN nor Infinity
+		sb.append(Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.format(Locale.ROOT, "%.6g", value));
+		return this;
+	}
+
+	public JsonWriter value(boolean value) {
+		separate();
+		sb.append(value);
+		return this;
+	}
+
+	public JsonWriter field(String name, String value) {
+		return name(name).value(value);
+	}
+
+	public JsonWriter field(String name, long value) {
+		return name(name).value(value);
+	}
+
+	public JsonWriter field(String name, double value) {
+		return name(name).value(value);
+	}
+
+	public JsonWriter field(String name, boolean value) {
+		return name(name).value(value);
+	}
+
+	@Override
+	public String toString() {
+		return sb.toString();
+	}
+
+	private JsonWriter open(char c) {
+		separate();
+		sb.append(c);
+		empty.push(true);
+		return this;
+	}
+
+	private JsonWriter close(char c) {
+		boolean wasEmpty = empty.pop();
+		if (!wasEmpty) {
+			newLine();
+		}
+		sb.append(c);
+		if (empty.isEmpty()) {
+			sb.append('\n');
+		}
+		return this;
+	}
+
+	/*
+	 * Before a value: nothing after a field name, otherwise a comma (if needed) and a new line
+	 */
+	private void separate() {
+		if (afterName) {
+			afterName = false;
+			return ;
+		}
+		if (empty.isEmpty()) {
+			return ;
+		}
+		if (!empty.peek()) {
+			sb.append(',');
+		}
+		empty.pop();
+		empty.push(false);
+		newLine();
+	}
+
+	private void newLine() {
+		sb.append('\n');
+		for (int i = 0; i < empty.size(); i++) {
+			sb.append("  ");
+		}
+	}
+
+	/**
+	 * Quotes and escapes a string.
+	 * @param s is the string
+	 * @return the JSON string
+	 */
+	public static String quote(String s) {
+		StringBuilder q = new StringBuilder(s.length() + 2);
+		q.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"': q.append("\\\""); break;
+			case '\\': q.append("\\\\"); break;
+			case '\n': q.append("\\n"); break;
+			case '\r': q.append("\\r"); break;
+			case '\t': q.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					q.append(String.format("\\u%04x", (int) c));
+				} else {
+					q.append(c);
+				}
+			}
+		}
+		q.append('"');
+		return q.toString();
+	}
+
+}
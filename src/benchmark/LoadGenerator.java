@@ -0,0 +1,495 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import index.Index;
+import index.QueryLog;
+import index.SearchResults;
+import irModels.Model;
+import metrics.LatencyHistogram;
+
+/**
+ * @author luca
+ *
+ * This class replays a query log against the Index, to see how submitQuery behaves under sustained traffic.
+ * Two kinds of load are supported:
+ * - open loop: queries are sent at a target rate (QPS), whatever the index is able to sustain. Latency is measured
+ *   from the time a query should have been sent, so queueing caused by slow queries is not hidden;
+ * - closed loop: N clients send a query, wait for its results, then send the next one. If a target rate is also
+ *   given, each client paces itself and latencies are measured from its schedule, so coordinated omission is
+ *   not hidden either.
+ * Both response time (from the intended start) and service time (from the actual start) are recorded, and the
+ * difference between them is used to detect coordinated omission.
+ * Queries are submitted to the Index in process, or to a SearchServer over HTTP if its url is given.
+ */
+public class LoadGenerator {
+
+	public enum Mode { OPEN, CLOSED }
+
+	// Hits collected and read for each query in process, as a page of results of the server
+	public static final int TOP_K = 10;
+
+	private Index index;
+	private Model model;
+	private ArrayList<String> queries;
+	private LinkedList<String> fields = new LinkedList<String>();
+
+	private Mode mode = Mode.CLOSED;
+	private double targetQps = 0;		// 0 means "as fast as possible" (closed loop only)
+	private int clients = 4;			// closed loop clients
+	private int threads = Runtime.getRuntime().availableProcessors() * 2;	// open loop workers
+	private long durationNanos = TimeUnit.SECONDS.toNanos(30);
+	private long warmupNanos = TimeUnit.SECONDS.toNanos(5);
+	private long timeoutNanos = TimeUnit.SECONDS.toNanos(1);
+	private String url = null;			// base url of a SearchServer, null to query the index in process
+
+	//Filled while running
+	private LatencyHistogram responseTime = new LatencyHistogram();
+	private LatencyHistogram serviceTime = new LatencyHistogram();
+	private LongAdder sent = new LongAdder();
+	private LongAdder completed = new LongAdder();
+	private LongAdder errors = new LongAdder();
+	private LongAdder timeouts = new LongAdder();
+	private LongAdder lateStarts = new LongAdder();
+	private LongAccumulator maxStartLag = new LongAccumulator(Math::max, 0);
+	private AtomicLong lastCompletion = new AtomicLong();
+	private boolean recording = false;
+
+	/**
+	 * @param index is the index to query (already loaded)
+	 * @param model is the model used to parse and rank queries
+	 * @param queries are the queries to replay, in a round robin fashion
+	 */
+	public LoadGenerator(Index index, Model model, ArrayList<String> queries) {
+		this.index = index;
+		this.model = model;
+		this.queries = queries;
+		fields.add("name");
+		fields.add("content");
+	}
+
+	public LoadGenerator mode(Mode mode) {
+		this.mode = mode;
+		return this;
+	}
+
+	public LoadGenerator qps(double targetQps) {
+		this.targetQps = targetQps;
+		return this;
+	}
+
+	public LoadGenerator clients(int clients) {
+		this.clients = clients;
+		return this;
+	}
+
+	public LoadGenerator threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	public LoadGenerator duration(long seconds) {
+		this.durationNanos = TimeUnit.SECONDS.toNanos(seconds);
+		return this;
+	}
+
+	public LoadGenerator warmup(long seconds) {
+		this.warmupNanos = TimeUnit.SECONDS.toNanos(seconds);
+		return this;
+	}
+
+	public LoadGenerator timeout(long millis) {
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+		return this;
+	}
+
+	/**
+	 * @param url base url of a SearchServer (as "http://localhost:8080"), to load it instead of the index
+	 */
+	public LoadGenerator url(String url) {
+		this.url = url;
+		return this;
+	}
+
+	/**
+	 * Runs the warmup (not recorded) and then the measured phase.
+	 * @return the report of the measured phase
+	 */
+	public String run() {
+		if (queries.size() == 0) {
+			return "No queries to replay";
+		}
+		if (mode == Mode.OPEN && targetQps <= 0) {
+			return "Open loop needs a target rate (qps)";
+		}
+
+		if (warmupNanos > 0) {
+			System.out.println("Warming up for " + TimeUnit.NANOSECONDS.toSeconds(warmupNanos) + "s");
+			runPhase(warmupNanos, false);
+		}
+
+		System.out.println("Running " + mode + " loop for " + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + "s");
+		long start = System.nanoTime();
+		lastCompletion.set(start);
+		runPhase(durationNanos, true);
+
+		return getReport(lastCompletion.get() - start);
+	}
+
+	private void runPhase(long duration, boolean record) {
+		recording = record;
+		if (mode == Mode.OPEN) {
+			runOpenLoop(duration);
+		} else {
+			runClosedLoop(duration);
+		}
+	}
+
+	/*
+	 * A single thread schedules queries at fixed intended times and hands them to a pool of workers, never
+	 * waiting for responses. If workers can not keep up, queries wait in the pool queue, and that wait is part
+	 * of their response time.
+	 */
+	private void runOpenLoop(long duration) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		long period = (long) (1e9 / targetQps);
+		long start = System.nanoTime();
+		long end = start + duration;
+
+		for (long i = 0; ; i++) {
+			long intended = start + i * period;
+			if (intended >= end) {
+				break;
+			}
+			long now;
+			while ((now = System.nanoTime()) < intended) {
+				LockSupport.parkNanos(intended - now);
+			}
+			pool.execute(new Scheduled(queries.get((int) (i % queries.size())), intended, period));
+		}
+
+		pool.shutdown();
+		try {
+			// Queued queries are still allowed to complete, they will be counted as timeouts if too late
+			pool.awaitTermination(duration + timeoutNanos * 10, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		// Queries still queued are the most delayed ones: they are counted as timed out, waiting until now
+		long now = System.nanoTime();
+		for (Runnable r : pool.shutdownNow()) {
+			if (r instanceof Scheduled) {
+				dropped(((Scheduled) r).intended, now);
+			}
+		}
+	}
+
+	/*
+	 * A query of the open loop, with the time it should have been sent
+	 */
+	private class Scheduled implements Runnable {
+		String query;
+		long intended, period;
+
+		Scheduled(String query, long intended, long period) {
+			this.query = query;
+			this.intended = intended;
+			this.period = period;
+		}
+
+		public void run() {
+			execute(query, intended, period);
+		}
+	}
+
+	/*
+	 * Records a query never sent because the test ended first
+	 */
+	private void dropped(long intended, long now) {
+		if (!recording) {
+			return ;
+		}
+		sent.increment();
+		timeouts.increment();
+		lateStarts.increment();
+		maxStartLag.accumulate(now - intended);
+		responseTime.recordValue(now - intended);
+	}
+
+	/*
+	 * Each client sends a query and waits for it before sending the next one. With a target rate, a client
+	 * waits for its next slot, and a query longer than the slot delays the following ones: their latency is
+	 * taken from the slot, so the delay is counted once for each query it hits.
+	 */
+	private void runClosedLoop(long duration) {
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		long start = System.nanoTime();
+		long end = start + duration;
+		long interval = targetQps > 0 ? (long) (1e9 * clients / targetQps) : 0;
+
+		for (int c = 0; c < clients; c++) {
+			int client = c;
+			pool.execute(new Runnable() {
+				public void run() {
+					long next = start + (interval * client) / clients;
+					for (long i = client; ; i += clients) {
+						long now = System.nanoTime();
+						if (now >= end) {
+							break;
+						}
+						if (interval > 0) {
+							while (now < next) {
+								LockSupport.parkNanos(next - now);
+								now = System.nanoTime();
+							}
+						}
+						execute(queries.get((int) (i % queries.size())), interval > 0 ? next : now, interval);
+						next += interval;
+					}
+				}
+			});
+		}
+
+		pool.shutdown();
+		try {
+			pool.awaitTermination(duration + timeoutNanos * 10, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		pool.shutdownNow();
+	}
+
+	/*
+	 * Submits a query and records its outcome. intended is the time the query should have been sent,
+	 * interval is the expected time between two queries of the same sender (0 if unknown).
+	 */
+	private void execute(String query, long intended, long interval) {
+		long started = System.nanoTime();
+		boolean failed = false;
+
+		try {
+			if (url != null) {
+				failed = !submitHttp(query);
+			} else {
+				SearchResults results = index.submitQuery(query, fields, model, model.getSimilarity(), TOP_K);
+				failed = (results == null);
+				for (int i = 0; !failed && i < results.getLoaded(); i++) {
+					results.getHit(i);
+				}
+				if (results != null) {
+					results.close();
+				}
+			}
+		} catch (Exception e) {
+			failed = true;
+		}
+
+		long done = System.nanoTime();
+		if (!recording) {
+			return ;
+		}
+
+		sent.increment();
+		long lag = started - intended;
+		if (interval > 0 && lag > interval) {
+			lateStarts.increment();
+		}
+		maxStartLag.accumulate(lag);
+		lastCompletion.accumulateAndGet(done, Math::max);
+
+		serviceTime.recordValue(done - started);
+		// Measured from the intended send time, the queries a paced client sent late already carry the stall:
+		// correcting it again with the expected interval would count it twice
+		responseTime.recordValue(done - intended);
+
+		if (failed) {
+			errors.increment();
+		} else if (done - intended > timeoutNanos) {
+			timeouts.increment();
+		} else {
+			completed.increment();
+		}
+	}
+
+	/*
+	 * Sends a query to the server and reads the whole response, so that the connection is kept alive and
+	 * reused by the next query of the same thread.
+	 */
+	private boolean submitHttp(String query) throws IOException {
+		URL u = new URL(url + "/search?q=" + URLEncoder.encode(query, "UTF-8") + "&model=" + URLEncoder.encode(model.getName(), "UTF-8"));
+		HttpURLConnection connection = (HttpURLConnection) u.openConnection();
+		int timeout = (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos * 10));
+		connection.setConnectTimeout(timeout);
+		connection.setReadTimeout(timeout);
+		int status = connection.getResponseCode();
+		InputStream is = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		if (is != null) {
+			byte[] buffer = new byte[8192];
+			while (is.read(buffer) > 0) {
+				// discarded
+			}
+			is.close();
+		}
+		return status == 200;
+	}
+
+	/**
+	 * Builds the report of the measured phase.
+	 * @param elapsed nanoseconds from the start of the phase to the last completion
+	 * @return the report
+	 */
+	private String getReport(long elapsed) {
+		StringBuilder sb = new StringBuilder();
+		double seconds = Math.max(elapsed, 1) / 1e9;
+		long total = sent.sum();
+
+		sb.append("Load test: " + mode + " loop, model " + model.getName() + ", " + queries.size() + " distinct queries, "
+				+ (url != null ? "server " + url : index.getSize() + " documents") + "\n");
+		if (mode == Mode.OPEN) {
+			sb.append(String.format("Target rate: %.1f qps, workers: %d\n", targetQps, threads));
+		} else {
+			sb.append(String.format("Clients: %d, target rate: %s\n", clients, targetQps > 0 ? String.format("%.1f qps", targetQps) : "unbounded"));
+		}
+		sb.append(String.format("Sent: %d in %.2fs, throughput: %.2f qps (successful: %.2f qps)\n",
+				total, seconds, total / seconds, completed.sum() / seconds));
+		sb.append(String.format("Errors: %d (%.2f%%), timeouts (> %d ms): %d (%.2f%%)\n",
+				errors.sum(), percentage(errors.sum(), total),
+				TimeUnit.NANOSECONDS.toMillis(timeoutNanos), timeouts.sum(), percentage(timeouts.sum(), total)));
+		sb.append("Response time: " + responseTime.getSummary() + "\n");
+		sb.append("Service time:  " + serviceTime.getSummary() + "\n");
+		sb.append(String.format("Late starts: %d (%.2f%%), max start lag: %.3fms\n",
+				lateStarts.sum(), percentage(lateStarts.sum(), total), maxStartLag.get() / 1e6));
+
+		long p99Response = responseTime.getValueAtPercentile(99);
+		long p99Service = serviceTime.getValueAtPercentile(99);
+		if (lateStarts.sum() > 0 && p99Response > 2 * p99Service) {
+			sb.append("WARNING: coordinated omission detected, service time alone underestimates p99 by "
+					+ String.format("%.1fx", (double) p99Response / Math.max(p99Service, 1)) + "\n");
+		}
+		return sb.toString();
+	}
+
+	private static double percentage(long part, long total) {
+		return total == 0 ? 0.0 : 100.0 * part / total;
+	}
+
+	/**
+	 * Reads queries to replay. A file in LISA.QUE format (ending with .que) is parsed as the benchmark does,
+	 * any other file is read as a query log with one query per line, either plain text or a line written by
+	 * QueryLog (the gui log), of which only the query text is taken.
+	 * @param queryFile is the file containing queries
+	 * @return list of queries
+	 */
+	public static ArrayList<String> readQueryLog(String queryFile) {
+		if (queryFile.toLowerCase().endsWith(".que")) {
+			return IRBenchmark.readQueries(queryFile);
+		}
+
+		ArrayList<String> queries = new ArrayList<String>();
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(queryFile));
+			String line;
+			while ((line = br.readLine()) != null) {
+				QueryLog.Entry e = QueryLog.parse(line);
+				if (e != null) {
+					queries.add(e.query);
+				} else if (line.trim().length() > 0) {
+					queries.add(line.trim());
+				}
+			}
+			br.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return queries;
+	}
+
+	/**
+	 * Command line entry point. Options (all optional):
+	 * --docs file with a document path for each line (default benchmarkDocs.ser)
+	 * --queries LISA.QUE file or query log (default benchmark/lisa/LISA.QUE)
+	 * --model model name, as in Model.getName() (default VectorSpaceModel)
+	 * --mode open|closed (default closed)
+	 * --qps target rate, required by open loop
+	 * --clients closed loop clients (default 4)
+	 * --threads open loop workers (default 2 * cores)
+	 * --duration seconds of measure (default 30)
+	 * --warmup seconds of warmup (default 5)
+	 * --timeout milliseconds after which a query is counted as timed out (default 1000)
+	 * --url base url of a SearchServer to load, instead of loading docs in process (default none)
+	 * @param args options
+	 */
+	public static void main(String[] args) {
+		HashMap<String, String> opts = parseOptions(args);
+
+		Model model = Model.getModel(get(opts, "model", "VectorSpaceModel"));
+		if (model == null) {
+			System.err.println("Unknown model " + opts.get("model"));
+			System.exit(1);
+		}
+
+		Index index = Index.getIndex(model.getSimilarity());
+		index.setSimilarity(model.getSimilarity(), false);
+		index.setVerbose(false);
+		if (opts.containsKey("url")) {
+			// One kept alive connection for each sender
+			System.setProperty("http.maxConnections", get(opts, "threads", get(opts, "clients", "64")));
+		} else {
+			index.loadIndex(get(opts, "docs", "benchmarkDocs.ser"));
+		}
+
+		LoadGenerator generator = new LoadGenerator(index, model, readQueryLog(get(opts, "queries", "benchmark/lisa/LISA.QUE"))).
+				mode(get(opts, "mode", "closed").equalsIgnoreCase("open") ? Mode.OPEN : Mode.CLOSED).
+				qps(Double.parseDouble(get(opts, "qps", "0"))).
+				clients(Integer.parseInt(get(opts, "clients", "4"))).
+				threads(Integer.parseInt(get(opts, "threads", "" + Runtime.getRuntime().availableProcessors() * 2))).
+				duration(Long.parseLong(get(opts, "duration", "30"))).
+				warmup(Long.parseLong(get(opts, "warmup", "5"))).
+				timeout(Long.parseLong(get(opts, "timeout", "1000"))).
+				url(opts.get("url"));
+
+		System.out.println(generator.run());
+		System.exit(0);
+	}
+
+	/**
+	 * Parses "--name value" couples; an option without value (or followed by another option) is set to "true".
+	 * @param args command line arguments
+	 * @return options found
+	 */
+	static HashMap<String, String> parseOptions(String[] args) {
+		HashMap<String, String> opts = new HashMap<String, String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].startsWith("--")) {
+				String name = args[i].substring(2);
+				if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+					opts.put(name, args[++i]);
+				} else {
+					opts.put(name, "true");
+				}
+			}
+		}
+		return opts;
+	}
+
+	static String get(HashMap<String, String> opts, String name, String defaultValue) {
+		return opts.containsKey(name) ? opts.get(name) : defaultValue;
+	}
+
+}
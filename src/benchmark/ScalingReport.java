@@ -0,0 +1,310 @@
+package benchmark;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import index.CodecProfile;
+import index.Index;
+import index.SearchResults;
+import index.StorageMode;
+import irModels.Model;
+import metrics.LatencyHistogram;
+import plot.Plot;
+
+/**
+ * @author luca
+ *
+ * This class measures how the Index scales with the size of the collection. For each requested size, a synthetic
+ * corpus is generated (or reused, if already on disk) by CorpusGenerator, indexed from scratch and queried.
+ * Indexing throughput, index size, heap used, query latency and throughput are saved as csv and plotted against
+ * corpus size. Each size can be measured with several codec profiles, to compare them: profiles are then the
+ * series of each plot.
+ */
+public class ScalingReport {
+
+	private CorpusGenerator generator;
+	private Model model;
+	private String outputDir;
+	private int numQueries = 35;
+	private CodecProfile[] profiles = null;	// the one of the index if not set
+	private static final Color[] COLORS = { Color.BLUE, Color.RED, Color.GREEN.darker(), Color.ORANGE, Color.MAGENTA };
+	private static final int TOP_K = 10;	// hits collected and read for each query, as a page of results
+
+	//Filled by run(), one entry for each size
+	private ArrayList<Double> sizes = new ArrayList<Double>();
+	private LinkedHashMap<CodecProfile, Measures> measures = new LinkedHashMap<CodecProfile, Measures>();
+
+	/*
+	 * Measures of a profile, one entry for each size
+	 */
+	private static class Measures {
+		ArrayList<Double> docsPerSecond = new ArrayList<Double>();
+		ArrayList<Double> mbPerSecond = new ArrayList<Double>();
+		ArrayList<Double> indexSizeMb = new ArrayList<Double>();
+		ArrayList<Double> heapMb = new ArrayList<Double>();
+		ArrayList<Double> latencyP50 = new ArrayList<Double>();
+		ArrayList<Double> latencyP95 = new ArrayList<Double>();
+		ArrayList<Double> queriesPerSecond = new ArrayList<Double>();
+	}
+
+	/**
+	 * @param generator generator of the corpora
+	 * @param model model used to run queries
+	 * @param outputDir folder where corpora and report are written
+	 */
+	public ScalingReport(CorpusGenerator generator, Model model, String outputDir) {
+		this.generator = generator;
+		this.model = model;
+		this.outputDir = outputDir;
+	}
+
+	/**
+	 * Sets the codec profiles to compare (by default only the one of the index).
+	 * @param profiles profiles each size is measured with
+	 * @return this
+	 */
+	public ScalingReport profiles(CodecProfile... profiles) {
+		this.profiles = profiles;
+		return this;
+	}
+
+	/**
+	 * Measures each size with each profile, then saves csv and plots. The index is left with the last profile.
+	 * @param corpusSizes number of documents of each corpus
+	 */
+	public void run(int[] corpusSizes) throws IOException {
+		if (profiles == null) {
+			profiles = new CodecProfile[] { Index.getIndex().getCodecProfile() };
+		}
+		for (CodecProfile profile : profiles) {
+			measures.put(profile, new Measures());
+		}
+		for (int size : corpusSizes) {
+			sizes.add((double) size);
+			for (CodecProfile profile : profiles) {
+				measure(size, profile);
+			}
+		}
+		saveCsv(new File(outputDir, "scaling.csv").getPath());
+		doGraph();
+	}
+
+	private void measure(int numDocs, CodecProfile profile) throws IOException {
+		File corpus = new File(outputDir, "" + numDocs);
+		File docsList = new File(corpus, "docs.list");
+		if (!docsList.exists()) {
+			corpus.mkdirs();
+			generator.generate(numDocs, numQueries, 20, corpus.getPath());
+		}
+
+		Index index = Index.getIndex();
+		index.setSimilarity(model.getSimilarity(), false);
+		index.setCodecProfile(profile, false);
+		index.setVerbose(false);
+		index.resetIndex();
+		System.gc();
+
+		// Indexing
+		long bytes = 0;
+		long start = System.nanoTime();
+		BufferedReader br = new BufferedReader(new FileReader(docsList));
+		String path;
+		index.beginBulkLoad();
+		while ((path = br.readLine()) != null) {
+			bytes += new File(path).length();
+			index.addDocument(path);
+		}
+		index.endBulkLoad(Index.BULK_LOAD_SEGMENTS);
+		br.close();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.gc();
+		Runtime rt = Runtime.getRuntime();
+		double heap = (rt.totalMemory() - rt.freeMemory()) / 1e6;
+
+		// Querying: one warmup pass, then the measured pass
+		ArrayList<String> queries = IRBenchmark.readQueries(new File(corpus, "queries.que").getPath());
+		LinkedList<String> fields = new LinkedList<String>();
+		fields.add("name");
+		fields.add("content");
+		LatencyHistogram latency = new LatencyHistogram();
+		long queryStart = 0;
+		for (int pass = 0; pass < 2; pass++) {
+			if (pass == 1) {
+				queryStart = System.nanoTime();
+			}
+			for (String query : queries) {
+				long t = System.nanoTime();
+				// A page of top hits, so that latency grows with the index and not with the hits read
+				SearchResults results = index.submitQuery(query, fields, model, model.getSimilarity(), TOP_K);
+				for (int i = 0; results != null && i < results.getLoaded(); i++) {
+					results.getHit(i);
+				}
+				if (results != null) {
+					results.close();
+				}
+				if (pass == 1) {
+					latency.recordValue(System.nanoTime() - t);
+				}
+			}
+		}
+
+		double querySeconds = (System.nanoTime() - queryStart) / 1e9;
+
+		Measures m = measures.get(profile);
+		m.docsPerSecond.add(numDocs / seconds);
+		m.mbPerSecond.add(bytes / 1e6 / seconds);
+		m.indexSizeMb.add(index.getIndexSize() / 1e6);
+		m.heapMb.add(heap);
+		m.latencyP50.add(latency.getValueAtPercentile(50) / 1e6);
+		m.latencyP95.add(latency.getValueAtPercentile(95) / 1e6);
+		m.queriesPerSecond.add(queries.size() / querySeconds);
+
+		System.out.println(String.format("%d docs, %s: %.0f docs/s, %.2f MB/s, index %.1f MB, heap %.1f MB, %.0f queries/s, query %s",
+				numDocs, profile, numDocs / seconds, bytes / 1e6 / seconds, index.getIndexSize() / 1e6, heap,
+				queries.size() / querySeconds, latency.getSummary()));
+		System.out.println("  memory " + index.getMemoryFootprint());
+		index.resetIndex();
+	}
+
+	private void saveCsv(String fileName) throws IOException {
+		FileWriter fw = new FileWriter(new File(fileName));
+		fw.append("documents,profile,docs_per_second,mb_per_second,index_size_mb,heap_mb,latency_p50_ms,latency_p95_ms,queries_per_second\n");
+		for (int i = 0; i < sizes.size(); i++) {
+			for (Map.Entry<CodecProfile, Measures> e : measures.entrySet()) {
+				Measures m = e.getValue();
+				fw.append(String.format(Locale.ROOT, "%.0f,%s,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f,%.2f\n", sizes.get(i), e.getKey(),
+						m.docsPerSecond.get(i), m.mbPerSecond.get(i), m.indexSizeMb.get(i), m.heapMb.get(i),
+						m.latencyP50.get(i), m.latencyP95.get(i), m.queriesPerSecond.get(i)));
+			}
+		}
+		fw.close();
+	}
+
+	/**
+	 * Plots each measure against corpus size, a series for each profile.
+	 */
+	private void doGraph() throws IOException {
+		savePlot("Indexing throughput", "Docs/s", m -> m.docsPerSecond, "indexing-throughput");
+		savePlot("Index size", "MB", m -> m.indexSizeMb, "index-size");
+		savePlot("Heap used", "MB", m -> m.heapMb, "heap");
+		savePlot("Query throughput", "Queries/s", m -> m.queriesPerSecond, "query-throughput");
+
+		double max = 0;
+		for (Measures m : measures.values()) {
+			max = Math.max(max, getMax(m.latencyP95));
+		}
+		Plot plot = scalingPlot("Query latency", "ms", max);
+		int i = 0;
+		for (Map.Entry<CodecProfile, Measures> e : measures.entrySet()) {
+			String prefix = measures.size() > 1 ? e.getKey() + " " : "";
+			Color color = COLORS[i++ % COLORS.length];
+			plot.series(prefix + "p50", Plot.data().xy(sizes, e.getValue().latencyP50),
+						Plot.seriesOpts().marker(Plot.Marker.CIRCLE).color(color)).
+				series(prefix + "p95", Plot.data().xy(sizes, e.getValue().latencyP95),
+						Plot.seriesOpts().marker(Plot.Marker.DIAMOND).color(color));
+		}
+		plot.save(new File(outputDir, "query-latency").getPath(), "png");
+	}
+
+	private void savePlot(String title, String yName, Function<Measures, ArrayList<Double>> measure, String fileName) throws IOException {
+		double max = 0;
+		for (Measures m : measures.values()) {
+			max = Math.max(max, getMax(measure.apply(m)));
+		}
+		Plot plot = scalingPlot(title, yName, max);
+		int i = 0;
+		for (Map.Entry<CodecProfile, Measures> e : measures.entrySet()) {
+			plot.series(measures.size() > 1 ? e.getKey().getName() : yName, Plot.data().xy(sizes, measure.apply(e.getValue())),
+					Plot.seriesOpts().marker(Plot.Marker.CIRCLE).color(COLORS[i++ % COLORS.length]));
+		}
+		plot.save(new File(outputDir, fileName).getPath(), "png");
+	}
+
+
+	private Plot scalingPlot(String title, String yName, double yMax) {
+		return Plot.plot(Plot.plotOpts().
+				title(title).
+				width(1000).
+				height(600).
+				legend(Plot.LegendFormat.TOP)).
+			xAxis("Documents", Plot.axisOpts().
+				format(Plot.AxisFormat.NUMBER_KGM).
+				range(0, getMax(sizes))).
+			yAxis(yName, Plot.axisOpts().
+				range(0, yMax > 0 ? yMax * 1.1 : 1));
+	}
+
+	private static double getMax(ArrayList<Double> list) {
+		double max = 0.0;
+		for (Double d : list)
+			if (d > max)
+				max = d;
+		return max;
+	}
+
+	/**
+	 * Command line entry point. Options:
+	 * --sizes comma separated corpus sizes (default 100000,300000,1000000)
+	 * --source file with documents paths of the collection to imitate (default benchmarkDocs.ser)
+	 * --model model used for queries (default VectorSpaceModel)
+	 * --storage where the index keeps its bytes: HEAP, OFF_HEAP or TMPFS (default HEAP)
+	 * --profiles comma separated codec profiles to compare, or "all" (default: default)
+	 * --out output folder (default benchmark/synthetic)
+	 * @param args options
+	 */
+	public static void main(String[] args) throws IOException {
+		HashMap<String, String> opts = LoadGenerator.parseOptions(args);
+		String[] s = LoadGenerator.get(opts, "sizes", "100000,300000,1000000").split(",");
+		int[] sizes = new int[s.length];
+		for (int i = 0; i < s.length; i++) {
+			sizes[i] = Integer.parseInt(s[i].trim());
+		}
+
+		Model model = Model.getModel(LoadGenerator.get(opts, "model", "VectorSpaceModel"));
+		if (model == null) {
+			System.err.println("Unknown model " + opts.get("model"));
+			System.exit(1);
+		}
+
+		Index index = Index.getIndex(model.getSimilarity());
+		index.setVerbose(false);
+		index.setStorageMode(StorageMode.valueOf(LoadGenerator.get(opts, "storage", "HEAP").toUpperCase()), false);
+		index.loadIndex(LoadGenerator.get(opts, "source", "benchmarkDocs.ser"));
+		CorpusGenerator generator = CorpusGenerator.fromIndex(index, "content", 42);
+
+		String out = LoadGenerator.get(opts, "out", "benchmark/synthetic");
+		new File(out).mkdirs();
+		new ScalingReport(generator, model, out).profiles(getProfiles(LoadGenerator.get(opts, "profiles", "default"))).run(sizes);
+		System.out.println("Scaling report written to " + out);
+		System.exit(0);
+	}
+
+	private static CodecProfile[] getProfiles(String names) {
+		if (names.equals("all")) {
+			return CodecProfile.values();
+		}
+		String[] n = names.split(",");
+		CodecProfile[] profiles = new CodecProfile[n.length];
+		for (int i = 0; i < n.length; i++) {
+			profiles[i] = CodecProfile.getProfile(n[i].trim());
+			if (profiles[i] == null) {
+				System.err.println("Unknown codec profile " + n[i]);
+				System.exit(1);
+			}
+		}
+		return profiles;
+	}
+
+}
@@ -0,0 +1,130 @@
+package gui;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+
+/**
+ * A task of the gui that runs out of the EDT, submitted to a TaskRunner. compute() runs in background and
+ * should check isCancelled() between its steps, reporting them with progress(); the result is handed to
+ * succeeded() on the EDT, unless the task has been cancelled meanwhile.
+ * @param <T> type of the result
+ */
+public abstract class BackgroundTask<T> extends SwingWorker<T, Void> {
+
+	private String name;
+	private boolean writesIndex;
+	private volatile String message = "";
+	private AtomicReference<T> computed = new AtomicReference<T>();	// until handed to discarded()
+
+	/**
+	 * @param name name shown while the task runs
+	 * @param writesIndex true if the task changes the index: these tasks are run one at a time, in order
+	 */
+	public BackgroundTask(String name, boolean writesIndex) {
+		this.name = name;
+		this.writesIndex = writesIndex;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	boolean writesIndex() {
+		return writesIndex;
+	}
+
+	/**
+	 * Work done in background.
+	 * @return the result, passed to succeeded()
+	 */
+	protected abstract T compute() throws Exception;
+
+	/**
+	 * Called on the EDT with the result, if the task has not been cancelled.
+	 * @param result result of compute()
+	 */
+	protected void succeeded(T result) {}
+
+	/**
+	 * Called on the EDT when the task ends because of an error. By default the error is shown in a dialog.
+	 * @param error the error
+	 */
+	protected void failed(Throwable error) {
+		error.printStackTrace();
+		JOptionPane.showMessageDialog(null, name + " failed: " + error, "Error", JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Called when the task is cancelled, before it stops, by the thread cancelling it. Tasks running code that
+	 * does not check isCancelled() (as a benchmark) override it to stop that code.
+	 */
+	protected void cancelling() {}
+
+	/**
+	 * Called with the result of a task cancelled while computing it, which is not handed to succeeded(), by the
+	 * thread computing it or by the EDT. Tasks whose results hold resources override it to release them.
+	 * @param result result of compute()
+	 */
+	protected void discarded(T result) {}
+
+	/**
+	 * Reports progress; it can be called from any thread, updates reach the gui coalesced.
+	 * @param done steps done
+	 * @param total steps to do (0 if unknown)
+	 * @param message description of the current step
+	 */
+	protected void progress(int done, int total, String message) {
+		String old = this.message;
+		this.message = message;
+		if (total > 0) {
+			setProgress(Math.min(100, (int) (100L * done / total)));
+		}
+		firePropertyChange("message", old, message);
+	}
+
+	@Override
+	protected final T doInBackground() throws Exception {
+		T result = compute();
+		computed.set(result);
+		if (isCancelled()) {
+			discard();
+		}
+		return result;
+	}
+
+	/*
+	 * The result is handed to discarded() only once, by whoever sees the cancel first
+	 */
+	private void discard() {
+		T result = computed.getAndSet(null);
+		if (result != null) {
+			discarded(result);
+		}
+	}
+
+	@Override
+	protected final void done() {
+		if (isCancelled()) {
+			discard();
+			return ;
+		}
+		try {
+			succeeded(get());
+		} catch (CancellationException e) {
+			// cancelled between the check and get()
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			failed(e.getCause());
+		}
+	}
+
+}
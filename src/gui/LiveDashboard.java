@@ -0,0 +1,241 @@
+package gui;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+
+import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import benchmark.BenchmarkListener;
+import benchmark.IRBenchmark;
+import metrics.LatencyHistogram;
+import plot.Plot;
+
+/**
+ * Live view of a running benchmark: indexing progress, then precision and recall of each query and running
+ * latency percentiles, drawn with Plot as queries complete. The benchmark thread only records values, while
+ * charts are redrawn on the EDT by a timer, at most once per frame and only if something changed, so a fast
+ * benchmark is not slowed down by drawing. The benchmark can be aborted from here, also closing the window.
+ */
+public class LiveDashboard extends JFrame implements BenchmarkListener {
+
+	private static final long serialVersionUID = 1L;
+	private static final int FRAME_MILLIS = 250;	// at most 4 redraws a second
+
+	private IRBenchmark benchmark;
+	private JProgressBar progress = new JProgressBar();
+	private JLabel status = new JLabel("Starting...");
+	private JLabel charts = new JLabel("", SwingConstants.CENTER);
+	private JButton abort = new JButton("Abort");
+	private Timer timer;
+
+	//Written by the benchmark thread
+	private volatile int documents = 0;
+	private volatile int totalDocuments = 0;
+	private volatile long indexingStart = 0;
+	private volatile int totalQueries = 0;
+	private volatile boolean changed = false;
+	private volatile boolean finished = false;
+	private volatile boolean cancelled = false;
+	private LatencyHistogram latency = new LatencyHistogram();
+	private ArrayList<Double> queryNumbers = new ArrayList<Double>();	// guarded by this
+	private ArrayList<Double> precision = new ArrayList<Double>();
+	private ArrayList<Double> recall = new ArrayList<Double>();
+	private ArrayList<Double> p50 = new ArrayList<Double>();
+	private ArrayList<Double> p95 = new ArrayList<Double>();
+	private ArrayList<Double> p99 = new ArrayList<Double>();
+
+	/**
+	 * Creates the dashboard and registers it as listener of the benchmark. It has to be created on the EDT.
+	 * @param benchmark benchmark to follow
+	 */
+	public LiveDashboard(IRBenchmark benchmark) {
+		super("Benchmark - " + benchmark.getModelName());
+		this.benchmark = benchmark;
+		benchmark.setListener(this);
+
+		setSize(1100, 560);
+		setLocationRelativeTo(null);
+		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+
+		progress.setStringPainted(true);
+		progress.setString("Indexing");
+		JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		progress.setPreferredSize(new Dimension(300, 22));
+		top.add(progress);
+		top.add(status);
+		top.add(abort);
+		abort.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (finished) {
+					dispose();
+				} else {
+					stop();
+				}
+			}
+		});
+		addWindowListener(new WindowAdapter() {
+			public void windowClosed(WindowEvent e) {
+				timer.stop();
+				if (!finished)
+					benchmark.cancel();
+			}
+		});
+
+		getContentPane().add(top, BorderLayout.NORTH);
+		getContentPane().add(charts, BorderLayout.CENTER);
+
+		timer = new Timer(FRAME_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				refresh();
+			}
+		});
+		timer.start();
+	}
+
+	private void stop() {
+		benchmark.cancel();
+		abort.setEnabled(false);
+		abort.setText("Stopping...");
+	}
+
+	public void documentIndexed(int documents, int total) {
+		if (indexingStart == 0)
+			indexingStart = System.nanoTime();
+		this.totalDocuments = total;
+		this.documents = documents;
+	}
+
+	public void queryCompleted(int query, int total, double precision, double recall, long latency) {
+		this.latency.recordValue(latency);
+		synchronized (this) {
+			queryNumbers.add((double) query);
+			this.precision.add(precision);
+			this.recall.add(recall);
+			p50.add(this.latency.getValueAtPercentile(50) / 1e6);
+			p95.add(this.latency.getValueAtPercentile(95) / 1e6);
+			p99.add(this.latency.getValueAtPercentile(99) / 1e6);
+		}
+		totalQueries = total;
+		changed = true;
+	}
+
+	public void benchmarkFinished(boolean cancelled) {
+		this.cancelled = cancelled;
+		this.finished = true;
+		changed = true;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				refresh();
+				timer.stop();
+				abort.setEnabled(true);
+				abort.setText("Close");
+			}
+		});
+	}
+
+	/*
+	 * Called by the timer on the EDT: progress is always updated, charts only when new queries completed
+	 */
+	private void refresh() {
+		int queries;
+		synchronized (this) {
+			queries = queryNumbers.size();
+		}
+		if (queries == 0) {
+			int total = Math.max(1, totalDocuments);
+			progress.setMaximum(total);
+			progress.setValue(documents);
+			progress.setString("Indexing " + documents + " of " + totalDocuments);
+			double seconds = indexingStart > 0 ? (System.nanoTime() - indexingStart) / 1e9 : 0;
+			status.setText(seconds > 0 ? String.format("%.0f docs/s", documents / seconds) : "");
+		} else {
+			progress.setMaximum(Math.max(1, totalQueries));
+			progress.setValue(queries);
+			progress.setString("Query " + queries + " of " + totalQueries);
+			status.setText("latency " + latency.getSummary());
+		}
+		if (finished)
+			progress.setString(cancelled ? "Aborted" : "Finished");
+
+		if (!changed || charts.getWidth() < 100 || charts.getHeight() < 100)
+			return ;
+		changed = false;
+
+		long start = System.nanoTime();
+		charts.setIcon(new ImageIcon(drawCharts(charts.getWidth(), charts.getHeight()).render()));
+		// if drawing takes longer than a frame, frames are spaced so that the EDT is not saturated
+		int spent = (int) ((System.nanoTime() - start) / 1000000);
+		timer.setDelay(Math.max(FRAME_MILLIS, spent * 4));
+	}
+
+	private Plot.Grid drawCharts(int width, int height) {
+		ArrayList<Double> x, pr, rc, l50, l95, l99;
+		synchronized (this) {
+			x = new ArrayList<Double>(queryNumbers);
+			pr = new ArrayList<Double>(precision);
+			rc = new ArrayList<Double>(recall);
+			l50 = new ArrayList<Double>(p50);
+			l95 = new ArrayList<Double>(p95);
+			l99 = new ArrayList<Double>(p99);
+		}
+		double queries = Math.max(1, totalQueries);
+
+		Plot quality = Plot.plot(Plot.plotOpts().
+				title("Precision and recall").
+				legend(Plot.LegendFormat.TOP)).
+			xAxis("Query #", Plot.axisOpts().
+				format(Plot.AxisFormat.NUMBER_INT).
+				range(0, queries)).
+			yAxis("Value", Plot.axisOpts().
+				range(0, Math.max(0.01, Math.max(getMax(pr), getMax(rc)) * 1.1))).
+			series("Precision", Plot.data().xy(x, pr),
+				Plot.seriesOpts().marker(Plot.Marker.CIRCLE).markerSize(6).color(Color.BLUE)).
+			series("Recall", Plot.data().xy(x, rc),
+				Plot.seriesOpts().marker(Plot.Marker.DIAMOND).markerSize(6).color(Color.RED));
+
+		Plot latencies = Plot.plot(Plot.plotOpts().
+				title("Running latency percentiles").
+				legend(Plot.LegendFormat.TOP)).
+			xAxis("Query #", Plot.axisOpts().
+				format(Plot.AxisFormat.NUMBER_INT).
+				range(0, queries)).
+			yAxis("ms", Plot.axisOpts().
+				range(0, Math.max(0.01, getMax(l99) * 1.1))).
+			series("p50", Plot.data().xy(x, l50), Plot.seriesOpts().color(Color.BLUE)).
+			series("p95", Plot.data().xy(x, l95), Plot.seriesOpts().color(Color.ORANGE)).
+			series("p99", Plot.data().xy(x, l99), Plot.seriesOpts().color(Color.RED));
+
+		return Plot.grid(Plot.gridOpts().
+				columns(2).
+				panelSize((width - 20) / 2, height - 20).
+				sharedAxes(false, false).
+				titleFont(new Font("Arial", Font.BOLD, 14))).
+			panel(quality).
+			panel(latencies);
+	}
+
+	private static double getMax(ArrayList<Double> list) {
+		double max = 0.0;
+		for (Double d : list)
+			if (d > max)
+				max = d;
+		return max;
+	}
+
+}
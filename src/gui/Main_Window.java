@@ -11,8 +11,13 @@ import javax.swing.table.DefaultTableModel;
 
 import Image.Paint_Graphics;
 import benchmark.IRBenchmark;
-import index.Hit;
+import index.SearchResults;
+import index.DocumentPreview;
+import index.DirectoryCrawler;
 import index.Index;
+import index.QueryLog;
+import index.StorageMode;
+import index.Suggester;
 import irModels.BM25;
 import irModels.BooleanModel;
 import irModels.FuzzyModel;
@@ -29,12 +34,22 @@ import java.awt.event.ActionListener;
 import java.io.BufferedReader;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.file.Path;
 import java.awt.event.ActionEvent;
+import java.awt.event.MouseEvent;
 import java.awt.Color;
 import java.awt.Dimension;
 import javax.swing.JTable;
@@ -43,6 +58,10 @@ import javax.swing.JRadioButton;
 import java.awt.Toolkit;
 import java.awt.Font;
 import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 
 public class Main_Window {
@@ -57,6 +76,16 @@ public class Main_Window {
 	private JTable chronologyTable=null;
 	private LinkedList<String> chronology=new LinkedList<String>();
 	private static int editdistance=0;
+	private static final int RESULTS_PAGE = 100;	// hits collected at a time, more are collected scrolling
+	private static final int INDEXERS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);	// threads reading documents to add
+	private TaskRunner runner = null;
+	private BackgroundTask<?> searchTask = null;	// last search submitted, cancelled by a new one
+	private Suggester suggester = new Suggester();
+	private QueryLog queryLog = new QueryLog("queries.log");
+	private static final int QUERY_LOG_SIZE = 10000;	// queries kept in the log, the oldest are dropped at startup
+	private BackgroundTask<?> warmTask = null;		// replay of the query log, stopped by a search of the user
+	private static final int WARM_QUERIES = 50;		// most frequent queries of the log replayed to warm up the index
+	private static final long WARM_AGE = 7L * 24 * 3600 * 1000;	// queries older than a week are not replayed
 	
 	
 	
@@ -172,13 +201,25 @@ public class Main_Window {
 		frame.getContentPane().add(btnloadIndex);
 		
 		//table for results 
-		resultsTable = new JTable();
-		resultsTable.setBounds(70, 234, 418, 405);
-        DefaultTableModel resultsModel = (DefaultTableModel) resultsTable.getModel();
-        resultsModel.addColumn("File");
-        resultsModel.addColumn("Score");
+		ResultsTableModel resultsModel = new ResultsTableModel();
+		resultsTable = new JTable(resultsModel) {
+			// Content of a document is read only when its preview is shown, hovering on its row
+			public String getToolTipText(MouseEvent e) {
+				DocumentPreview preview = resultsModel.getPreview(rowAtPoint(e.getPoint()));
+				if (preview == null) {
+					return null;
+				}
+				if (preview.getText() == null) {
+					return "File no longer available";
+				}
+				return "<html><body style='width: 300px'>" + (preview.isStale() ? "<b>File changed since it was indexed</b><br>" : "") +
+						preview.getText().replace("&", "&amp;").replace("<", "&lt;").replace("\n", "<br>") + "</body></html>";
+			}
+		};
+		JScrollPane resultsScroll = new JScrollPane(resultsTable);
+		resultsScroll.setBounds(70, 234, 418, 405);
         
-       	frame.getContentPane().add(resultsTable);
+       	frame.getContentPane().add(resultsScroll);
 	
 		//table to view files adding
 		fileTable = new JTable();
@@ -205,6 +246,13 @@ public class Main_Window {
 		frame.getContentPane().add(editDistanceText);
 		editDistanceText.setColumns(10);
 		
+		//where the index keeps its bytes
+		JComboBox<StorageMode> storageBox = new JComboBox<StorageMode>(StorageMode.values());
+		storageBox.setBounds(990, 11, 122, 20);
+		storageBox.setSelectedItem(generalIndex.getStorageMode());
+		storageBox.setToolTipText("Index storage: HEAP, OFF_HEAP (direct buffers) or TMPFS (memory mapped files)");
+		frame.getContentPane().add(storageBox);
+		
 		//button for user helping
 		JButton Help = new JButton("HELP");
 		Help.setBounds(254, 10, 89, 23);
@@ -214,7 +262,7 @@ public class Main_Window {
 		JLabel lblResults = new JLabel("RESULTS");
 		lblResults.setForeground(Color.WHITE);
 		lblResults.setFont(new Font("Verdana", Font.BOLD, 17));
-		lblResults.setBounds((418)/2+20, 204, 108, 14);
+		lblResults.setBounds((418)/2+20, 204, 268, 18);
 		frame.getContentPane().add(lblResults);
 		
 		JLabel lblDocumnets = new JLabel("Documents");
@@ -232,22 +280,68 @@ public class Main_Window {
 		btnBenchmark.setBounds(542, 10, 130, 23);
 		frame.getContentPane().add(btnBenchmark);
 		
-	
-		//prova
-		JFrame waitPane=new JFrame("Please Wait --->  Benchmark is working...");
-		waitPane.setSize(400,100);
-		Dimension screenSize = Toolkit.getDefaultToolkit ( ).getScreenSize();
-
-		waitPane.setLocation ( ( screenSize.width / 2 ) - ( waitPane.getWidth ( ) / 2 ), (screenSize.height / 2 ) - ( waitPane.getHeight ( ) / 2 ) );
-		waitPane.getContentPane().setLayout(null);
-		waitPane.setAlwaysOnTop(true);
-		waitPane.setEnabled(false);
+		JButton btnCompare = new JButton("Compare Models");
+		btnCompare.setBounds(542, 36, 130, 23);
+		frame.getContentPane().add(btnCompare);
 		
+		//status of tasks running in background
+		JProgressBar taskProgress = new JProgressBar();
+		taskProgress.setBounds(70, 650, 150, 20);
+		frame.getContentPane().add(taskProgress);
+		
+		JLabel taskStatus = new JLabel();
+		taskStatus.setForeground(Color.WHITE);
+		taskStatus.setBounds(230, 650, 420, 20);
+		frame.getContentPane().add(taskStatus);
+		
+		JButton taskCancel = new JButton("Cancel");
+		taskCancel.setBounds(660, 650, 80, 20);
+		taskCancel.setMargin (new Insets (0, 0, 0, 0));
+		frame.getContentPane().add(taskCancel);
+		
+		runner = new TaskRunner(taskProgress, taskStatus, taskCancel);
+		
+		//suggestions while typing: terms are taken again from the index a second after it stops changing
+		SuggestionPopup suggestions = new SuggestionPopup(textField, suggester);
+		Timer suggestionsUpdate = new Timer(1000, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				runner.submitHousekeeping(new BackgroundTask<Boolean>("Updating suggestions", false) {
+					protected Boolean compute() {
+						return suggester.update(generalIndex);
+					}
+				});
+			}
+		});
+		suggestionsUpdate.setRepeats(false);
+		
+		//queries of the previous sessions: chronology and suggestions are filled from the log
+		runner.submit(new BackgroundTask<List<QueryLog.Entry>>("Reading query log", false) {
+			protected List<QueryLog.Entry> compute() {
+				List<QueryLog.Entry> entries = queryLog.compact(QUERY_LOG_SIZE);
+				LinkedList<String> queries = new LinkedList<String>();
+				for (QueryLog.Entry entry : entries) {
+					queries.add(entry.query);
+				}
+				suggester.addQueries(queries);
+				return entries;
+			}
+			
+			protected void succeeded(List<QueryLog.Entry> entries) {
+				chronology.addAll(QueryLog.getRecent(entries, 100));
+				if (generalIndex.getSize() > 0) {
+					warmUp();
+				}
+			}
+		});
+		runner.addIndexListener(() -> suggestionsUpdate.restart());
+		
+		//enter searches too
+		textField.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				search.doClick();
+			}
+		});
 		
-		JLabel lblBenchemarkIsWorking = new JLabel("Benchmark is working...");
-		lblBenchemarkIsWorking.setBounds(89, 23, 205, 27);
-		waitPane.getContentPane().add(lblBenchemarkIsWorking);
-
 					
 		//frame Chronology
 		JFrame ChronoPane=new JFrame("Chronology");
@@ -266,6 +360,7 @@ public class Main_Window {
 			public void actionPerformed(ActionEvent e) {
 				
 				String queryStr = textField.getText();
+				suggestions.hide();
 				
 				if(editDistance.isSelected()==true) {
 					
@@ -279,10 +374,15 @@ public class Main_Window {
 					
 					//LinkList to save Chronology
 					chronology.addFirst(queryStr);
+					runner.submitHousekeeping(new BackgroundTask<Void>("Updating query suggestions", false) {
+						protected Void compute() {
+							suggester.addQuery(queryStr);
+							return null;
+						}
+					});
 				
 				
 				System.out.println("Query string: " + queryStr);
-				resultsModel.setRowCount(0);
 				
 				 
 				 Model modelUsed=null; 
@@ -319,13 +419,33 @@ public class Main_Window {
 					fields.add("content");
 				}
 
-		        generalIndex.setSimilarity(modelUsed.getSimilarity(), true);
-				LinkedList<Hit> results = generalIndex.submitQuery(queryStr, fields, modelUsed, false);
-				if (results != null) {
-					for(Hit result : results) {
-						resultsModel.addRow(new Object[] {result.getDocName(), result.getScore()});
+				// The query runs out of the EDT; results of a query still running are not wanted anymore
+				final Model model = modelUsed;
+				final int edits = editdistance;
+				runner.cancel(warmTask);
+				runner.cancel(searchTask);
+				searchTask = new BackgroundTask<SearchResults>("Searching " + queryStr, false) {
+					protected SearchResults compute() {
+						// Ranked with the model's similarity for this query only, the index is never rebuilt by a search;
+						// a newer search cancels this one, which then stops collecting hits
+						long start = System.nanoTime();
+						SearchResults results = generalIndex.submitQuery(queryStr, fields, model, model.getSimilarity(), RESULTS_PAGE, this::isCancelled);
+						queryLog.record(queryStr, model, fields, edits, System.nanoTime() - start);
+						return results;
 					}
-				}
+					
+					protected void discarded(SearchResults results) {
+						results.close();
+					}
+					
+					protected void succeeded(SearchResults results) {
+						// Only the rows shown are read from the index, the results shown before are closed
+						resultsModel.setResults(results);
+						lblResults.setText(results == null ? "RESULTS" : "RESULTS (" + results.getTotalHits() + ")");
+						resultsTable.scrollRectToVisible(resultsTable.getCellRect(0, 0, true));
+					}
+				};
+				runner.submitSearch(searchTask);
 			}
 				}
 		});
@@ -357,18 +477,22 @@ public class Main_Window {
 							
 				File filesSelected[] = fileC.getSelectedFiles();
 				
+				if (filesSelected.length == 0) {
+					return ;
+				}
+				
+				// Files and directories are chosen here, they are crawled and indexed in background
+				int depth = Integer.MAX_VALUE;
 				for (File doc : filesSelected) {
-					
 					if(doc.isDirectory()) {
-						subfolders(doc,tableModel);
-				    }
-				        						
-					// Check that file is not yet in index
-					if(doc.getAbsolutePath().endsWith(".txt")) {
-						checkFile(doc, tableModel);
+						int reply = JOptionPane.showConfirmDialog(null,"Do you want add all subfolders too?", "Attention", JOptionPane.YES_NO_OPTION);
+						if (reply != JOptionPane.YES_OPTION) {
+							depth = 1;
+						}
+						break;
 					}
-					
 				}
+				runner.submit(new IndexingTask("Indexing", Arrays.asList(filesSelected), depth, null, tableModel));
 			}
 		});
 	
@@ -376,19 +500,18 @@ public class Main_Window {
 	//remove files selected 
 	remove.addActionListener(new ActionListener() {
 		public void actionPerformed(ActionEvent arg0) {
-				
-				
-				for(int i=0;i<tableModel.getRowCount();i++) {
-					
-				for(int j=0;j<generalIndex.getSize();j++) {
-					
-				if( (generalIndex.getDocument(j).get("path")+generalIndex.getDocument(j).get("name")).equals(fileTable.getValueAt(fileTable.getSelectedRow(), 0))) {
-					generalIndex.removeDocument(j);
-				}
-				
-	}
+				if (fileTable.getSelectedRow() < 0) {
+					return ;
 				}
+				Object selected = fileTable.getValueAt(fileTable.getSelectedRow(), 0);
 				tableModel.removeRow(fileTable.getSelectedRow());
+				
+				runner.submit(new BackgroundTask<Void>("Removing " + selected, true) {
+					protected Void compute() {
+						generalIndex.removeDocument(selected.toString());
+						return null;
+					}
+				});
 			}
 	});
 		
@@ -400,12 +523,30 @@ public class Main_Window {
 			
 			if(reply==JOptionPane.YES_OPTION) {
 			
-			generalIndex.resetIndex();
 			tableModel.setRowCount(0);
+			runner.submit(new BackgroundTask<Void>("Resetting index", true) {
+				protected Void compute() {
+					generalIndex.resetIndex();
+					return null;
+				}
+			});
 			}
 			}
 		});
 	
+	// Moving the index to another storage indexes its documents again there
+	storageBox.addActionListener(new ActionListener() {
+		public void actionPerformed(ActionEvent arg0) {
+			StorageMode mode = (StorageMode) storageBox.getSelectedItem();
+			runner.submit(new BackgroundTask<Void>("Moving index to " + mode, true) {
+				protected Void compute() {
+					generalIndex.setStorageMode(mode, true);
+					return null;
+				}
+			});
+		}
+	});
+	
 	
 	//Chronology
 	btnChronology.addActionListener(new ActionListener() {
@@ -453,31 +594,7 @@ public class Main_Window {
 				File file[]=fileC.getSelectedFiles();
 				if(file.length==1) {
 			       System.out.println(file[0].getAbsolutePath());
-			       
-			       BufferedReader reader = null;
-					
-					try {
-						reader = new BufferedReader(new FileReader(file[0]));
-					} catch (FileNotFoundException e) {
-						
-							e.printStackTrace();
-						
-					}
-					String content = "";
-					String line;
-					
-					int i=0;
-					try {
-						File f = null;
-						while((line = reader.readLine()) != null) {
-							System.out.println("Loading " + line);
-							f = new File(line);
-							checkFile(f, tableModel);
-						}
-					}catch(Exception e) {
-						e.printStackTrace();
-					}
-							       
+			       runner.submit(new IndexingTask("Loading " + file[0].getName(), null, 0, file[0], tableModel));
 			       	}		
 				else {
 					JOptionPane.showMessageDialog(frame,"Only one file can be load \n");
@@ -504,12 +621,13 @@ public class Main_Window {
 				
 			    File fileToSave =  fileSave.getSelectedFile();
 			    
-			    try {
-					fileToSave.createNewFile();
-					generalIndex.saveIndex(fileToSave.getAbsolutePath());					
-				} catch (IOException e1) {
-					e1.printStackTrace();
-				}
+			    runner.submit(new BackgroundTask<Void>("Saving " + fileToSave.getName(), true) {
+			    	protected Void compute() throws IOException {
+			    		fileToSave.createNewFile();
+			    		generalIndex.saveIndex(fileToSave.getAbsolutePath());
+			    		return null;
+			    	}
+			    });
 			    
 			    System.out.println("Save as file: " + fileToSave.getAbsolutePath());
 			}
@@ -524,11 +642,6 @@ public class Main_Window {
 			
 			if(reply==JOptionPane.YES_OPTION) {
 				
-				// Before loading docs of benchmark, index is erased
-				generalIndex.resetIndex();
-				
-				waitPane.setVisible(true);
-				
 				Model modelUsed=null;
 				IRBenchmark benchmark=null;
 				 
@@ -553,33 +666,88 @@ public class Main_Window {
 				}	
 					
 				benchmark=new IRBenchmark(modelUsed,"benchmarkDocs.ser", "benchmark/lisa/LISA.QUE", "benchmark/lisa/LISA.REL");
-				benchmark.executeBenchmark();
-					
-				waitPane.setVisible(false);
-				int reply1 =JOptionPane.showConfirmDialog(null,"Do you want to see the results of Benchmark?", "Attention", JOptionPane.YES_NO_OPTION);
+				
+				// The benchmark runs out of the EDT, followed by the dashboard
+				final IRBenchmark running = benchmark;
+				tableModel.setRowCount(0);
+				new LiveDashboard(running).setVisible(true);
+				runner.submit(new BackgroundTask<Void>("Benchmark", true) {
+					protected Void compute() {
+						// Before loading docs of benchmark, index is erased
+						generalIndex.resetIndex();
+						running.executeBenchmark();
+						//After benchmark, index is erased
+						generalIndex.resetIndex();
+						return null;
+					}
 					
+					protected void cancelling() {
+						running.cancel();
+					}
 					
-					if(reply1==JOptionPane.YES_OPTION) {
-						// Grafici
-						System.out.println("Starting plotting...");
-						waitPane.setVisible(true);
-						
-						benchmark.doGraph();
-						
-						waitPane.setVisible(false);
-						
+					protected void succeeded(Void result) {
+						if (!running.isCancelled())
+							showResults(running);
+					}
+				});
+			}
+			
+		}
+		
+		private void showResults(IRBenchmark benchmark) {
+			int reply1 =JOptionPane.showConfirmDialog(null,"Do you want to see the results of Benchmark?", "Attention", JOptionPane.YES_NO_OPTION);
+			
+			
+			if(reply1==JOptionPane.YES_OPTION) {
+				// Grafici
+				System.out.println("Starting plotting...");
+				
+				// Charts are drawn out of the EDT, then shown when all are saved
+				final IRBenchmark plotted = benchmark;
+				runner.submit(new BackgroundTask<File[]>("Plotting", false) {
+					protected File[] compute() {
+						plotted.doGraph();
 						File files[];
 						File Directory = new File("benchmark/lisa/results/");
 						
 						files=Directory.listFiles();
 						Arrays.sort(files);
+						return files;
+					}
+					
+					protected void succeeded(File[] files) {
 						Paint_Graphics.paint(files);
-
 					}
-				//After benchmark, index is erased
-				generalIndex.resetIndex();
+				});
+
 			}
+		}
+	});
+	
+	
+	// Comparative benchmark: all models on the same LISA index
+	btnCompare.addActionListener(new ActionListener() {
+		public void actionPerformed(ActionEvent arg0) {
+			int reply =JOptionPane.showConfirmDialog(null,"Do you want to compare all models on LISA Benchmark?", "Attention", JOptionPane.YES_NO_OPTION);
 			
+			if(reply==JOptionPane.YES_OPTION) {
+				tableModel.setRowCount(0);
+				runner.submit(new BackgroundTask<String>("Comparing models", true) {
+					protected String compute() {
+						String report = IRBenchmark.executeComparison("benchmarkDocs.ser", "benchmark/lisa/LISA.QUE", "benchmark/lisa/LISA.REL", "benchmark/lisa/comparison.txt");
+						//After benchmark, index is erased
+						generalIndex.resetIndex();
+						return report;
+					}
+					
+					protected void succeeded(String report) {
+						JTextArea reportArea = new JTextArea(report);
+						reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+						reportArea.setEditable(false);
+						JOptionPane.showMessageDialog(frame, new JScrollPane(reportArea), "Models comparison", JOptionPane.INFORMATION_MESSAGE);
+					}
+				});
+			}
 		}
 	});
 	
@@ -621,42 +789,133 @@ public class Main_Window {
 	}
 
 
-	// function to decide if add all or some or no subfolders
-	public void subfolders (File Directory,DefaultTableModel tableModel) {
-		
-		File files[];
-		
-		files=Directory.listFiles();
+	/*
+	 * Replays in background the queries submitted more often in the last days, so that the caches of a freshly
+	 * loaded index are warm before the user searches. Queries are replayed with the edit distance currently set.
+	 */
+	private void warmUp() {
+		runner.cancel(warmTask);
+		warmTask = new BackgroundTask<Integer>("Warming up", false) {
+			protected Integer compute() {
+				List<QueryLog.Entry> frequent = QueryLog.getFrequent(queryLog.read(), WARM_QUERIES, WARM_AGE);
+				return QueryLog.warm(generalIndex, frequent, RESULTS_PAGE, this::isCancelled);
+			}
+			
+			protected void succeeded(Integer replayed) {
+				System.out.println("Index warmed up with " + replayed + " queries of the log");
+			}
+		};
+		runner.submitSearch(warmTask);
+	}
+	
+	/*
+	 * Adds files to the index in background, skipping the ones already in it. Directories are walked by a
+	 * DirectoryCrawler, which feeds a few indexers: documents are read in parallel, while the index adds them
+	 * one at a time. Files indexed are shown in the table Documents in batches, and files indexed before a
+	 * cancel stay in the index.
+	 */
+	private class IndexingTask extends BackgroundTask<Void> {
+		
+		private List<File> roots;
+		private int maxDepth;
+		private File list;
+		private DefaultTableModel tableModel;
+		private Set<String> inIndex = ConcurrentHashMap.newKeySet();
+		private ConcurrentLinkedQueue<String> added = new ConcurrentLinkedQueue<String>();
+		private AtomicBoolean showing = new AtomicBoolean(false);
+		private AtomicInteger done = new AtomicInteger();
+		
+		/**
+		 * @param name name of the task
+		 * @param roots files and directories to add, or null to read them from list
+		 * @param maxDepth levels of subfolders of roots to add (1 to add only the files in them)
+		 * @param list a saved index (a file with the path of a document on each line)
+		 * @param tableModel table Documents
+		 */
+		IndexingTask(String name, List<File> roots, int maxDepth, File list, DefaultTableModel tableModel) {
+			super(name, true);
+			this.roots = roots;
+			this.maxDepth = maxDepth;
+			this.list = list;
+			this.tableModel = tableModel;
+		}
 		
-			for (File f : files) {
-				if(f.isDirectory())	{
-					int reply = JOptionPane.showConfirmDialog(null,"Do you want add all subfolders of :  "+ f.getPath() + "?", "Attention", JOptionPane.YES_NO_OPTION);
-				    if (reply == JOptionPane.YES_OPTION) {
-				    	subfolders(f, tableModel);
+		protected Void compute() throws IOException, InterruptedException {
+			// Paths in index are read once, not for each file
+			for(int i=0; i<generalIndex.getSize(); i++) {
+				inIndex.add(generalIndex.getDocPath(i));
+			}
+			
+			if (list != null) {
+				LinkedList<File> files = new LinkedList<File>();
+				BufferedReader reader = new BufferedReader(new FileReader(list));
+				String line;
+				while((line = reader.readLine()) != null) {
+					files.add(new File(line));
+				}
+				reader.close();
+				for (File f : files) {
+					if (isCancelled()) {
+						break;
 					}
-				}else if(f.getAbsolutePath().endsWith(".txt")) {
-					checkFile(f, tableModel);
+					progress(done.get(), files.size(), f.getName());
+					add(f.getAbsolutePath());
 				}
+				return null;
 			}
-				
-			if(Directory.getAbsolutePath().endsWith(".txt")) {
-				checkFile(Directory, tableModel);
+			
+			DirectoryCrawler crawler = new DirectoryCrawler().include("*.txt").maxDepth(maxDepth).start(roots);
+			ExecutorService indexers = Executors.newFixedThreadPool(INDEXERS);
+			for (int i = 0; i < INDEXERS; i++) {
+				indexers.execute(() -> {
+					try {
+						Path p;
+						while ((p = crawler.take()) != null) {
+							add(p.toString());
+						}
+					} catch (InterruptedException e) {
+						// cancelled
+					}
+				});
 			}
-	}
-	
-	public void checkFile(File f, DefaultTableModel tableModel) {
-		boolean inIndex = false;
-		for(int i=0; i<generalIndex.getSize(); i++) {
-			if( (generalIndex.getDocument(i).get("path")+generalIndex.getDocument(i).get("name")).equals(f.getAbsolutePath())){
-				inIndex=true;
-				break;
+			indexers.shutdown();
+			while (!indexers.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+				if (isCancelled()) {
+					crawler.cancel();
+				}
+				progress(done.get(), crawler.getFound(), done.get() + " of " + crawler.getFound() + (crawler.isFinished() ? "" : " found so far"));
 			}
+			if (crawler.getErrors() > 0) {
+				System.err.println(crawler.getErrors() + " files or folders could not be read");
+			}
+			return null;
 		}
-		// If inIndex is false, means that the file is not in index, so it is added to index
-		if(!inIndex) {
-			generalIndex.addDocument(f.getAbsolutePath());
-			tableModel.setRowCount(tableModel.getRowCount()+1);
-			tableModel.setValueAt(f.getAbsolutePath(), tableModel.getRowCount()-1, 0);
+		
+		private void add(String path) {
+			// If the path is not in the set, the file is not in index, so it is added to index
+			if (inIndex.add(path)) {
+				generalIndex.addDocument(path);
+				added.add(path);
+				// Rows are added by the EDT in batches, one batch at a time
+				if (showing.compareAndSet(false, true)) {
+					SwingUtilities.invokeLater(() -> {
+						showing.set(false);
+						String row;
+						while ((row = added.poll()) != null) {
+							tableModel.addRow(new Object[] {row});
+						}
+					});
+				}
+			}
+			done.incrementAndGet();
 		}
+		
+		protected void succeeded(Void result) {
+			// A saved index has been loaded again
+			if (list != null) {
+				warmUp();
+			}
+		}
+		
 	}
 }
@@ -0,0 +1,117 @@
+package gui;
+
+import javax.swing.table.AbstractTableModel;
+
+import index.DocumentPreview;
+import index.Hit;
+import index.SearchResults;
+
+/**
+ * Model of the results table, backed by the SearchResults of the last query. The table asks only for the rows
+ * it shows, so only their documents are read; rows are the hits collected so far, and when the table shows
+ * the last ones the next page is collected in background, so scrolling down pages in the rest of the results.
+ */
+public class ResultsTableModel extends AbstractTableModel {
+
+	private static final long serialVersionUID = 1L;
+	private static final String[] COLUMNS = { "File", "Score" };
+	private static final int PREFETCH_ROWS = 20;	// next page is collected when rows this close to the end are shown
+	private static final int PREVIEW_CHARS = 300;
+
+	private SearchResults results = null;
+	private int rows = 0;
+	private boolean loading = false;
+
+	/**
+	 * Shows new results, or nothing if null. The results shown before are closed.
+	 * @param results results of the last query
+	 */
+	public void setResults(SearchResults results) {
+		if (this.results != null && this.results != results) {
+			this.results.close();
+		}
+		this.results = results;
+		this.rows = results == null ? 0 : results.getLoaded();
+		this.loading = false;
+		fireTableDataChanged();
+	}
+
+	public SearchResults getResults() {
+		return results;
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	public int getColumnCount() {
+		return COLUMNS.length;
+	}
+
+	public String getColumnName(int column) {
+		return COLUMNS[column];
+	}
+
+	public Class<?> getColumnClass(int column) {
+		return column == 0 ? String.class : Float.class;
+	}
+
+	public Object getValueAt(int row, int column) {
+		if (row >= rows - PREFETCH_ROWS) {
+			loadNextPage();
+		}
+		if (column == 1) {
+			return results.getScore(row);
+		}
+		Hit hit = results.getHit(row);
+		return hit == null ? "(no longer in index)" : hit.getDocName();
+	}
+
+	/**
+	 * @param row row of a hit
+	 * @return the beginning of the content of the hit, read only now, or null if it cannot be read
+	 */
+	public DocumentPreview getPreview(int row) {
+		if (results == null || row < 0 || row >= rows) {
+			return null;
+		}
+		return results.getPreview(row, PREVIEW_CHARS);
+	}
+
+	/*
+	 * Collects the next page in background; rows are added on the EDT, if results have not changed meanwhile
+	 */
+	private void loadNextPage() {
+		if (loading || results == null || !results.hasMore()) {
+			return ;
+		}
+		loading = true;
+		final SearchResults paged = results;
+		new BackgroundTask<Integer>("Loading results", false) {
+			protected Integer compute() throws Exception {
+				return paged.loadNextPage();
+			}
+
+			protected void succeeded(Integer loaded) {
+				if (paged != results) {
+					return ;
+				}
+				loading = false;
+				if (loaded > rows) {
+					int first = rows;
+					rows = loaded;
+					fireTableRowsInserted(first, loaded - 1);
+				}
+			}
+
+			protected void failed(Throwable error) {
+				error.printStackTrace();
+				// Scrolling asks for the page again
+				if (paged == results) {
+					loading = false;
+				}
+			}
+		}.execute();
+	}
+
+}
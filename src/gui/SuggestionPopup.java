@@ -0,0 +1,150 @@
+package gui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+import javax.swing.JList;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import index.Suggester;
+
+/**
+ * A list of suggestions shown below a text field while typing. Keystrokes only restart a timer: suggestions
+ * are looked up when typing pauses, so a fast typist never waits for them. Up and down select a suggestion,
+ * enter or a click takes it, escape hides the list; without a selection, enter is left to the text field.
+ */
+public class SuggestionPopup {
+
+	private static final int DELAY_MILLIS = 120;	// pause in typing after which suggestions are shown
+	private static final int SUGGESTIONS = 8;
+
+	private JTextField field;
+	private Suggester suggester;
+	private JPopupMenu popup = new JPopupMenu();
+	private JList<String> list = new JList<String>();
+	private Timer timer;
+	private boolean accepting = false;	// the text is being set from a suggestion
+
+	/**
+	 * @param field text field to suggest for
+	 * @param suggester source of suggestions
+	 */
+	public SuggestionPopup(JTextField field, Suggester suggester) {
+		this.field = field;
+		this.suggester = suggester;
+
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		list.setFocusable(false);
+		popup.setFocusable(false);
+		popup.add(new JScrollPane(list));
+
+		timer = new Timer(DELAY_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showSuggestions();
+			}
+		});
+		timer.setRepeats(false);
+
+		field.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				typed();
+			}
+			public void removeUpdate(DocumentEvent e) {
+				typed();
+			}
+			public void changedUpdate(DocumentEvent e) {}
+		});
+
+		field.addKeyListener(new KeyAdapter() {
+			public void keyPressed(KeyEvent e) {
+				if (!popup.isVisible())
+					return ;
+				int size = list.getModel().getSize();
+				switch (e.getKeyCode()) {
+				case KeyEvent.VK_DOWN:
+					list.setSelectedIndex(Math.min(size - 1, list.getSelectedIndex() + 1));
+					list.ensureIndexIsVisible(list.getSelectedIndex());
+					e.consume();
+					break;
+				case KeyEvent.VK_UP:
+					list.setSelectedIndex(Math.max(0, list.getSelectedIndex() - 1));
+					list.ensureIndexIsVisible(list.getSelectedIndex());
+					e.consume();
+					break;
+				case KeyEvent.VK_ENTER:
+					if (list.getSelectedIndex() >= 0) {
+						accept(list.getSelectedValue());
+						e.consume();
+					} else {
+						hide();
+					}
+					break;
+				case KeyEvent.VK_ESCAPE:
+					hide();
+					e.consume();
+					break;
+				}
+			}
+		});
+
+		list.addMouseListener(new MouseAdapter() {
+			public void mouseClicked(MouseEvent e) {
+				int index = list.locationToIndex(e.getPoint());
+				if (index >= 0)
+					accept(list.getModel().getElementAt(index));
+			}
+		});
+	}
+
+	/**
+	 * Hides the suggestions, and forgets the ones waiting to be shown.
+	 */
+	public void hide() {
+		timer.stop();
+		popup.setVisible(false);
+	}
+
+	private void typed() {
+		if (!accepting)
+			timer.restart();
+	}
+
+	private void accept(String suggestion) {
+		accepting = true;
+		field.setText(suggestion);
+		accepting = false;
+		hide();
+		field.requestFocusInWindow();
+	}
+
+	private void showSuggestions() {
+		if (!field.isShowing() || !field.hasFocus()) {
+			return ;
+		}
+		List<String> suggestions = suggester.suggest(field.getText(), SUGGESTIONS);
+		if (suggestions.isEmpty()) {
+			popup.setVisible(false);
+			return ;
+		}
+		list.setListData(suggestions.toArray(new String[0]));
+		list.setVisibleRowCount(suggestions.size());
+		list.clearSelection();
+		popup.setPopupSize(field.getWidth(), list.getPreferredScrollableViewportSize().height + 6);
+		popup.show(field, 0, field.getHeight());
+		// The popup must not take the keys typed after it appears
+		SwingUtilities.invokeLater(() -> field.requestFocusInWindow());
+	}
+
+}
@@ -0,0 +1,156 @@
+package gui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingWorker;
+
+/**
+ * Runs the gui tasks out of the EDT and shows the progress of the last started one in a status bar (a progress
+ * bar, a label and a cancel button). Tasks that change the index run one at a time, in the order they are
+ * submitted; searches run on their own thread, at the same time as them, and the other tasks (plots, reading
+ * files) on another one, so a search never waits for them. Housekeeping tasks, like rebuilding suggestions, run
+ * on a fourth thread with a low priority.
+ */
+public class TaskRunner {
+
+	private ExecutorService indexWriter = Executors.newSingleThreadExecutor(r -> newThread(r, "index-writer"));
+	private ExecutorService searcher = Executors.newSingleThreadExecutor(r -> newThread(r, "index-searcher"));
+	private ExecutorService worker = Executors.newSingleThreadExecutor(r -> newThread(r, "gui-worker"));
+	private ExecutorService housekeeper = Executors.newSingleThreadExecutor(r -> {
+		Thread t = newThread(r, "housekeeper");
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	});
+	private LinkedList<BackgroundTask<?>> running = new LinkedList<BackgroundTask<?>>();	// used on the EDT only
+	private LinkedList<Runnable> indexListeners = new LinkedList<Runnable>();
+
+	private JProgressBar bar;
+	private JLabel label;
+	private JButton cancel;
+
+	/**
+	 * @param bar progress of the current task
+	 * @param label name and message of the current task
+	 * @param cancel button to cancel the current task
+	 */
+	public TaskRunner(JProgressBar bar, JLabel label, JButton cancel) {
+		this.bar = bar;
+		this.label = label;
+		this.cancel = cancel;
+		bar.setVisible(false);
+		cancel.setEnabled(false);
+		cancel.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (!running.isEmpty())
+					cancel(running.getLast());
+			}
+		});
+	}
+
+	private static Thread newThread(Runnable r, String name) {
+		Thread t = new Thread(r, name);
+		t.setDaemon(true);
+		return t;
+	}
+
+	/**
+	 * Starts a task. It has to be called on the EDT.
+	 * @param task the task
+	 */
+	public void submit(BackgroundTask<?> task) {
+		submit(task, task.writesIndex() ? indexWriter : worker);
+	}
+
+	/**
+	 * Starts a search, on the thread of the searches only. A search should stop as soon as it is cancelled
+	 * (passing isCancelled to the index), as the next one waits for it. It has to be called on the EDT.
+	 * @param task the search, it must not change the index
+	 */
+	public void submitSearch(BackgroundTask<?> task) {
+		submit(task, searcher);
+	}
+
+	private void submit(BackgroundTask<?> task, ExecutorService executor) {
+		running.add(task);
+		task.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent e) {
+				if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+					running.remove(task);
+					if (task.writesIndex()) {
+						for (Runnable listener : indexListeners)
+							listener.run();
+					}
+				}
+				showStatus();
+			}
+		});
+		showStatus();
+		executor.execute(task);
+	}
+
+	/**
+	 * Starts a housekeeping task: it runs on its own low priority thread, one at a time, and it is not shown in
+	 * the status bar, as the user is not waiting for it. It has to be called on the EDT.
+	 * @param task the task, it must not change the index
+	 */
+	public void submitHousekeeping(BackgroundTask<?> task) {
+		housekeeper.execute(task);
+	}
+
+	/**
+	 * Cancels a task, if still running: its result is discarded.
+	 * @param task the task
+	 */
+	public void cancel(BackgroundTask<?> task) {
+		if (task == null || task.isDone())
+			return ;
+		task.cancelling();
+		task.cancel(false);
+		running.remove(task);
+		showStatus();
+	}
+
+	/**
+	 * Adds a listener called on the EDT each time a task changing the index ends, also if cancelled or failed.
+	 * @param listener the listener
+	 */
+	public void addIndexListener(Runnable listener) {
+		indexListeners.add(listener);
+	}
+
+	/**
+	 * @return true if a task changing the index is submitted and not finished
+	 */
+	public boolean isWritingIndex() {
+		for (BackgroundTask<?> task : running)
+			if (task.writesIndex())
+				return true;
+		return false;
+	}
+
+	private void showStatus() {
+		if (running.isEmpty()) {
+			bar.setVisible(false);
+			label.setText("");
+			cancel.setEnabled(false);
+			return ;
+		}
+		BackgroundTask<?> task = running.getLast();
+		bar.setVisible(true);
+		bar.setIndeterminate(task.getProgress() == 0);
+		bar.setValue(task.getProgress());
+		String more = running.size() > 1 ? " (+" + (running.size() - 1) + " more)" : "";
+		label.setText(task.getName() + (task.getMessage().isEmpty() ? "" : ": " + task.getMessage()) + more);
+		cancel.setEnabled(true);
+	}
+
+}
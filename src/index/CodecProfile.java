@@ -0,0 +1,100 @@
+package index;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene50.Lucene50PostingsFormat;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.apache.lucene.codecs.lucene70.Lucene70Codec;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+
+/**
+ * @author luca
+ *
+ * Named settings of the index writer, tuned for a workload:
+ * - default: Lucene defaults, as the index always had
+ * - fast-ingest: fast stored fields compression, a big RAM buffer, no compound files and lazy merges
+ * - small-footprint: best stored fields compression, bigger term blocks, compound files and eager merges
+ * - low-latency: fast stored fields compression, smaller term blocks (faster term lookups, as fuzzy queries
+ *   do many) and few segments to visit for each query
+ * Profiles change only how the index is written: any index can be read whatever the profile.
+ */
+public enum CodecProfile {
+
+	DEFAULT("default", Lucene50StoredFieldsFormat.Mode.BEST_SPEED, IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB,
+			true, 25, 48, 10),
+	FAST_INGEST("fast-ingest", Lucene50StoredFieldsFormat.Mode.BEST_SPEED, 64, false, 25, 48, 30),
+	SMALL_FOOTPRINT("small-footprint", Lucene50StoredFieldsFormat.Mode.BEST_COMPRESSION, 16, true, 40, 96, 5),
+	LOW_LATENCY("low-latency", Lucene50StoredFieldsFormat.Mode.BEST_SPEED, 32, false, 15, 30, 3);
+
+	private String name;
+	private Lucene50StoredFieldsFormat.Mode storedFields;
+	private double ramBufferMB;
+	private boolean compoundFiles;
+	private int minTermBlock, maxTermBlock;	// terms in each block of the terms dictionary
+	private double segmentsPerTier;
+
+	private CodecProfile(String name, Lucene50StoredFieldsFormat.Mode storedFields, double ramBufferMB, boolean compoundFiles,
+			int minTermBlock, int maxTermBlock, double segmentsPerTier) {
+		this.name = name;
+		this.storedFields = storedFields;
+		this.ramBufferMB = ramBufferMB;
+		this.compoundFiles = compoundFiles;
+		this.minTermBlock = minTermBlock;
+		this.maxTermBlock = maxTermBlock;
+		this.segmentsPerTier = segmentsPerTier;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name name of a profile, like "fast-ingest"
+	 * @return the profile, or null if there is none with that name
+	 */
+	public static CodecProfile getProfile(String name) {
+		for (CodecProfile p : values()) {
+			if (p.name.equalsIgnoreCase(name) || p.name().equalsIgnoreCase(name)) {
+				return p;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Applies the profile to the configuration of a writer. The default profile leaves it as it is.
+	 * @param config configuration of a new writer
+	 * @return config
+	 */
+	public IndexWriterConfig apply(IndexWriterConfig config) {
+		if (this == DEFAULT) {
+			return config;
+		}
+		config.setCodec(getCodec());
+		config.setRAMBufferSizeMB(ramBufferMB);
+		config.setUseCompoundFile(compoundFiles);
+		TieredMergePolicy merges = new TieredMergePolicy();
+		merges.setSegmentsPerTier(segmentsPerTier);
+		merges.setMaxMergeAtOnce((int) Math.max(2, Math.min(10, segmentsPerTier)));
+		merges.setNoCFSRatio(compoundFiles ? 1.0 : 0.0);
+		config.setMergePolicy(merges);
+		return config;
+	}
+
+	private Codec getCodec() {
+		final PostingsFormat postings = new Lucene50PostingsFormat(minTermBlock, maxTermBlock);
+		return new Lucene70Codec(storedFields) {
+			@Override
+			public PostingsFormat getPostingsFormatForField(String field) {
+				return postings;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -0,0 +1,345 @@
+package index;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * @author luca
+ *
+ * Finds duplicates among the documents being indexed: exact ones by a SHA-256 hash of their content, and near
+ * ones (the same text with a few changes) by MinHash. The content is split into shingles of 3 words, and its
+ * signature keeps, for each of 128 hash functions, the smallest hash of its shingles, so that the fraction of
+ * equal values in two signatures estimates the Jaccard similarity of their shingles. To not compare a document
+ * with all the others, signatures are split into bands (LSH): only documents sharing a band are compared, and
+ * bands are sized so that pairs similar at the threshold share one with high probability.
+ * What to do with a duplicate is up to the policy: SKIP does not index it, LINK indexes only its path and name,
+ * linked to the document it duplicates (its canonical), so it can still be found by name. When a canonical is
+ * removed, its linked duplicates are handed back to the index, which indexes them again: the first one takes
+ * its place.
+ */
+public class Deduplicator {
+
+	public enum Policy { SKIP, LINK }
+
+	public enum Kind { UNIQUE, EXACT, NEAR }
+
+	/**
+	 * Result of the check of a document.
+	 */
+	public static class Result {
+		public Kind kind;
+		public String canonical;	// document duplicated, null if UNIQUE
+		public double similarity;	// estimated, 1 for exact duplicates
+
+		public boolean isDuplicate() {
+			return kind != Kind.UNIQUE;
+		}
+	}
+
+	private static final int HASHES = 128;
+	private static final int SHINGLE = 3;
+
+	private Policy policy;
+	private double threshold;
+	private int bands, rows;
+	private long[] seeds = new long[HASHES];
+
+	private HashMap<String, String> byHash = new HashMap<String, String>();			// content hash -> canonical
+	private HashMap<String, String> hashes = new HashMap<String, String>();			// canonical -> content hash
+	private HashMap<String, long[]> signatures = new HashMap<String, long[]>();		// canonical -> signature
+	private ArrayList<HashMap<Long, List<String>>> buckets = new ArrayList<HashMap<Long, List<String>>>();
+	private HashMap<String, Set<String>> linked = new HashMap<String, Set<String>>();	// canonical -> duplicates
+	private HashMap<String, Result> duplicates = new HashMap<String, Result>();		// duplicate -> its check
+	private HashMap<String, Integer> sizes = new HashMap<String, Integer>();			// duplicate -> bytes saved
+
+	private long checked = 0, exact = 0, near = 0, bytesSaved = 0;
+
+	/**
+	 * @param policy what to do with duplicates
+	 * @param threshold estimated similarity (0 to 1) from which documents are near duplicates; 1 finds only
+	 * exact duplicates
+	 */
+	public Deduplicator(Policy policy, double threshold) {
+		this.policy = policy;
+		this.threshold = Math.max(0.05, Math.min(1.0, threshold));
+		// Rows of a band: pairs sharing a band are found with probability 1-(1-s^rows)^bands, that is about 1/2
+		// at s = (1/bands)^(1/rows); the biggest bands below the threshold keep false candidates few
+		rows = 1;
+		for (int r = 1; r <= HASHES; r++) {
+			if (HASHES % r == 0 && Math.pow(1.0 / (HASHES / r), 1.0 / r) <= this.threshold * 0.85) {
+				rows = r;
+			}
+		}
+		bands = HASHES / rows;
+		for (int b = 0; b < bands; b++) {
+			buckets.add(new HashMap<Long, List<String>>());
+		}
+		long seed = 0x9E3779B97F4A7C15L;
+		for (int i = 0; i < HASHES; i++) {
+			seed = mix(seed + i);
+			seeds[i] = seed;
+		}
+	}
+
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Checks a document against the ones seen so far. If it is unique, it becomes the canonical of its later
+	 * duplicates; otherwise it is counted as duplicate of its canonical.
+	 * @param docPath path of the document, as given to Index.addDocument
+	 * @param content its content
+	 * @return the result of the check
+	 */
+	public synchronized Result check(String docPath, String content) {
+		checked++;
+		Result result = new Result();
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		String hash = sha256(bytes);
+		String canonical = byHash.get(hash);
+		long[] signature = threshold < 1.0 ? getSignature(content) : null;
+		if (canonical != null) {
+			result.kind = Kind.EXACT;
+			result.canonical = canonical;
+			result.similarity = 1.0;
+			exact++;
+		} else if (signature != null) {
+			// Candidates share a band, the most similar one above the threshold is the canonical
+			Set<String> candidates = new HashSet<String>();
+			for (int b = 0; b < bands; b++) {
+				List<String> bucket = buckets.get(b).get(getBandKey(signature, b));
+				if (bucket != null) {
+					candidates.addAll(bucket);
+				}
+			}
+			for (String c : candidates) {
+				double s = getSimilarity(signature, signatures.get(c));
+				if (s >= threshold && s > result.similarity) {
+					result.canonical = c;
+					result.similarity = s;
+				}
+			}
+			result.kind = result.canonical != null ? Kind.NEAR : Kind.UNIQUE;
+			if (result.canonical != null) {
+				near++;
+			}
+		} else {
+			result.kind = Kind.UNIQUE;
+		}
+
+		if (result.kind == Kind.UNIQUE) {
+			byHash.put(hash, docPath);
+			hashes.put(docPath, hash);
+			if (signature != null) {
+				signatures.put(docPath, signature);
+				for (int b = 0; b < bands; b++) {
+					buckets.get(b).computeIfAbsent(getBandKey(signature, b), k -> new ArrayList<String>(1)).add(docPath);
+				}
+			}
+		} else {
+			bytesSaved += bytes.length;
+			linked.computeIfAbsent(result.canonical, k -> new LinkedHashSet<String>()).add(docPath);
+			duplicates.put(docPath, result);
+			sizes.put(docPath, bytes.length);
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets a document removed from the index, which is no longer counted. If it is a canonical, its duplicates
+	 * are forgotten too: with the LINK policy they are in the index without content, so they are returned to be
+	 * indexed again (and checked again), the first one becoming the new canonical of the others. Duplicates
+	 * skipped by the SKIP policy are not in the index, so none is returned.
+	 * @param docPath path of the document
+	 * @return the duplicates to index again, in the order they were found, possibly none
+	 */
+	public synchronized List<String> remove(String docPath) {
+		ArrayList<String> orphans = new ArrayList<String>();
+		if (duplicates.containsKey(docPath)) {
+			forget(docPath);
+			return orphans;
+		}
+		String hash = hashes.remove(docPath);
+		if (hash == null) {
+			return orphans;
+		}
+		byHash.remove(hash);
+		checked--;
+		long[] signature = signatures.remove(docPath);
+		if (signature != null) {
+			for (int b = 0; b < bands; b++) {
+				List<String> bucket = buckets.get(b).get(getBandKey(signature, b));
+				if (bucket != null) {
+					bucket.remove(docPath);
+				}
+			}
+		}
+		Set<String> copies = linked.remove(docPath);
+		if (copies != null) {
+			for (String copy : copies) {
+				if (policy == Policy.LINK) {
+					orphans.add(copy);
+					forget(copy);
+				} else {
+					// Skipped for good, still counted
+					duplicates.remove(copy);
+					sizes.remove(copy);
+				}
+			}
+		}
+		return orphans;
+	}
+
+	/*
+	 * Forgets a duplicate, as if it had never been checked
+	 */
+	private void forget(String docPath) {
+		Result result = duplicates.remove(docPath);
+		checked--;
+		if (result.kind == Kind.EXACT) {
+			exact--;
+		} else {
+			near--;
+		}
+		bytesSaved -= sizes.remove(docPath);
+		Set<String> copies = linked.get(result.canonical);
+		if (copies != null) {
+			copies.remove(docPath);
+		}
+	}
+
+	public synchronized void clear() {
+		byHash.clear();
+		hashes.clear();
+		signatures.clear();
+		for (HashMap<Long, List<String>> b : buckets) {
+			b.clear();
+		}
+		linked.clear();
+		duplicates.clear();
+		sizes.clear();
+		checked = exact = near = bytesSaved = 0;
+	}
+
+	/**
+	 * @param canonical path of a document
+	 * @return paths of the duplicates of the document found so far
+	 */
+	public synchronized List<String> getDuplicates(String canonical) {
+		Set<String> duplicates = linked.get(canonical);
+		return duplicates == null ? new ArrayList<String>() : new ArrayList<String>(duplicates);
+	}
+
+	public synchronized long getExactDuplicates() {
+		return exact;
+	}
+
+	public synchronized long getNearDuplicates() {
+		return near;
+	}
+
+	/**
+	 * @return bytes of content of duplicates, not indexed
+	 */
+	public synchronized long getBytesSaved() {
+		return bytesSaved;
+	}
+
+	public synchronized String getReport() {
+		return String.format(Locale.ROOT, "%d documents checked, %d exact and %d near duplicates (threshold %.2f, %d bands of %d rows), "
+				+ "%s, %.2f MB of content saved", checked, exact, near, threshold, bands, rows,
+				policy == Policy.SKIP ? "skipped" : "linked", bytesSaved / 1e6);
+	}
+
+	/*
+	 * MinHash signature of the shingles of the content, or null if it has no words
+	 */
+	private long[] getSignature(String content) {
+		String[] words = content.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+		ArrayList<String> tokens = new ArrayList<String>(words.length);
+		for (String w : words) {
+			if (!w.isEmpty()) {
+				tokens.add(w);
+			}
+		}
+		if (tokens.isEmpty()) {
+			return null;
+		}
+		long[] signature = new long[HASHES];
+		Arrays.fill(signature, Long.MAX_VALUE);
+		int shingle = Math.min(SHINGLE, tokens.size());
+		for (int i = 0; i + shingle <= tokens.size(); i++) {
+			long h = 0;
+			for (int j = i; j < i + shingle; j++) {
+				h = h * 31 + tokens.get(j).hashCode();
+			}
+			h = mix(h);
+			for (int k = 0; k < HASHES; k++) {
+				long v = mix(h ^ seeds[k]);
+				if (v < signature[k]) {
+					signature[k] = v;
+				}
+			}
+		}
+		return signature;
+	}
+
+	private long getBandKey(long[] signature, int band) {
+		long key = band;
+		for (int i = band * rows; i < (band + 1) * rows; i++) {
+			key = mix(key * 31 + signature[i]);
+		}
+		return key;
+	}
+
+	private static double getSimilarity(long[] a, long[] b) {
+		int equal = 0;
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] == b[i]) {
+				equal++;
+			}
+		}
+		return (double) equal / a.length;
+	}
+
+	/*
+	 * Finalizer of MurmurHash3, spreads the bits of a 64 bit value
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static String sha256(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every JVM has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,306 @@
+package index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author luca
+ *
+ * A crawler of directory trees, to find the documents to add to an index. Trees are walked with walkFileTree by a
+ * few threads (the first levels of each tree are split among them) and the files found are put in a bounded
+ * queue, from which one or more indexers take them: when the indexers are slower than the disk, crawling waits
+ * for them, so memory does not grow with the number of files.
+ * Files are chosen with glob patterns: a pattern without "/" matches the file name ("*.txt"), otherwise the path
+ * relative to the crawled directory ("docs/old/*.txt"). Excluded directories are not walked at all.
+ * Symbolic links are not followed unless asked; when followed, each directory is walked once, so links making
+ * a loop are harmless.
+ */
+public class DirectoryCrawler {
+
+	private static final Path END = Paths.get("");	// put in the queue when crawling is over
+	private static final int SPLIT_DEPTH = 2;			// directories up to this depth are walked as separate tasks
+
+	private LinkedList<PathMatcher[]> includes = new LinkedList<PathMatcher[]>();
+	private LinkedList<PathMatcher[]> excludes = new LinkedList<PathMatcher[]>();
+	private int maxDepth = Integer.MAX_VALUE;
+	private boolean followLinks = false;
+	private int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+	private int queueCapacity = 1024;
+
+	private BlockingQueue<Path> queue;
+	private ExecutorService walkers;
+	private Set<Object> visited = ConcurrentHashMap.newKeySet();
+	private AtomicInteger pending = new AtomicInteger();
+	private AtomicInteger found = new AtomicInteger();
+	private AtomicInteger errors = new AtomicInteger();
+	private volatile boolean cancelled = false;
+	private volatile boolean finished = false;
+
+	/**
+	 * Adds a pattern of files to crawl. Without patterns, all regular files are crawled.
+	 * @param glob a glob pattern
+	 */
+	public DirectoryCrawler include(String glob) {
+		includes.add(getMatcher(glob));
+		return this;
+	}
+
+	/**
+	 * Adds a pattern of files, or directories, to skip.
+	 * @param glob a glob pattern
+	 */
+	public DirectoryCrawler exclude(String glob) {
+		excludes.add(getMatcher(glob));
+		return this;
+	}
+
+	/**
+	 * @param maxDepth levels of directories to walk: 1 crawls only the files directly in the given directories
+	 */
+	public DirectoryCrawler maxDepth(int maxDepth) {
+		this.maxDepth = Math.max(1, maxDepth);
+		return this;
+	}
+
+	public DirectoryCrawler followLinks(boolean followLinks) {
+		this.followLinks = followLinks;
+		return this;
+	}
+
+	/**
+	 * @param threads threads walking the trees
+	 */
+	public DirectoryCrawler threads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * @param queueCapacity files found and not yet taken, after which crawling waits
+	 */
+	public DirectoryCrawler queueCapacity(int queueCapacity) {
+		this.queueCapacity = Math.max(1, queueCapacity);
+		return this;
+	}
+
+	/*
+	 * The pattern matched against the file name, and the one matched against the relative path
+	 */
+	private static PathMatcher[] getMatcher(String glob) {
+		PathMatcher m = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		return glob.contains("/") ? new PathMatcher[] { null, m } : new PathMatcher[] { m, null };
+	}
+
+	private static boolean matches(LinkedList<PathMatcher[]> patterns, Path file, Path relative) {
+		for (PathMatcher[] m : patterns) {
+			if (m[0] != null && file.getFileName() != null && m[0].matches(file.getFileName()))
+				return true;
+			if (m[1] != null && m[1].matches(relative))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Starts crawling in background. Roots can also be files, which are taken if they match the patterns.
+	 * @param roots files and directories to crawl
+	 * @return this crawler, to take the files found from
+	 */
+	public DirectoryCrawler start(List<File> roots) {
+		queue = new ArrayBlockingQueue<Path>(queueCapacity);
+		walkers = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "directory-crawler");
+			t.setDaemon(true);
+			return t;
+		});
+		pending.incrementAndGet();	// released when all roots are submitted
+		for (File root : roots) {
+			Path path = root.toPath().toAbsolutePath();
+			submit(path, path);
+		}
+		walked();
+		return this;
+	}
+
+	/**
+	 * Returns the next file found, waiting for it if the crawler is still walking.
+	 * @return the file, or null if crawling is over (or cancelled) and all files have been taken
+	 */
+	public Path take() throws InterruptedException {
+		if (cancelled)
+			return null;
+		Path p = queue.take();
+		if (p == END) {
+			queue.offer(END);	// for the other indexers
+			return null;
+		}
+		return p;
+	}
+
+	/**
+	 * Stops crawling; files found and not taken are dropped.
+	 */
+	public void cancel() {
+		cancelled = true;
+		walkers.shutdownNow();
+		queue.clear();
+		queue.offer(END);
+	}
+
+	/**
+	 * @return number of files found so far
+	 */
+	public int getFound() {
+		return found.get();
+	}
+
+	/**
+	 * @return number of files and directories that could not be read
+	 */
+	public int getErrors() {
+		return errors.get();
+	}
+
+	/**
+	 * @return true if all trees have been walked (some files could still be in the queue)
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	private void submit(Path root, Path dir) {
+		pending.incrementAndGet();
+		try {
+			walkers.execute(() -> {
+				try {
+					walk(root, dir);
+				} finally {
+					walked();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// cancelled
+			walked();
+		}
+	}
+
+	private void walked() {
+		if (pending.decrementAndGet() == 0) {
+			finished = true;
+			walkers.shutdown();
+			try {
+				queue.put(END);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void walk(Path root, Path start) {
+		int depth = root.relativize(start).toString().isEmpty() ? 0 : root.relativize(start).getNameCount();
+		EnumSet<FileVisitOption> options = followLinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
+		try {
+			Files.walkFileTree(start, options, maxDepth - depth, new SimpleFileVisitor<Path>() {
+
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+					if (cancelled)
+						return FileVisitResult.TERMINATE;
+					// With links, the same directory can be reached from more paths
+					if (followLinks && attrs.fileKey() != null && !visited.add(attrs.fileKey()) && !dir.equals(start))
+						return FileVisitResult.SKIP_SUBTREE;
+					if (dir.equals(start))
+						return FileVisitResult.CONTINUE;
+					Path relative = root.relativize(dir);
+					if (matches(excludes, dir, relative))
+						return FileVisitResult.SKIP_SUBTREE;
+					if (relative.getNameCount() <= SPLIT_DEPTH) {
+						submit(root, dir);
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					if (cancelled)
+						return FileVisitResult.TERMINATE;
+					// Directories at the maximum depth are visited as files
+					if (!attrs.isRegularFile())
+						return FileVisitResult.CONTINUE;
+					Path relative = file.equals(root) ? file.getFileName() : root.relativize(file);
+					if (matches(excludes, file, relative) || (!includes.isEmpty() && !matches(includes, file, relative)))
+						return FileVisitResult.CONTINUE;
+					try {
+						queue.put(file);
+					} catch (InterruptedException e) {
+						return FileVisitResult.TERMINATE;
+					}
+					found.incrementAndGet();
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					if (!(e instanceof FileSystemLoopException)) {
+						errors.incrementAndGet();
+						System.err.println("Cannot read " + file + ": " + e);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			errors.incrementAndGet();
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Crawls the given directories and prints what would be indexed.
+	 * Usage: DirectoryCrawler [--include glob]... [--exclude glob]... [--depth n] [--follow-links] dir...
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		DirectoryCrawler crawler = new DirectoryCrawler();
+		List<File> roots = new LinkedList<File>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--include"))
+				crawler.include(args[++i]);
+			else if (args[i].equals("--exclude"))
+				crawler.exclude(args[++i]);
+			else if (args[i].equals("--depth"))
+				crawler.maxDepth(Integer.parseInt(args[++i]));
+			else if (args[i].equals("--follow-links"))
+				crawler.followLinks(true);
+			else
+				roots.add(new File(args[i]));
+		}
+		if (roots.isEmpty())
+			roots = Collections.singletonList(new File("."));
+		long start = System.nanoTime();
+		crawler.start(roots);
+		Path p;
+		while ((p = crawler.take()) != null)
+			System.out.println(p);
+		System.err.printf("%d files in %.0f ms, %d errors%n", crawler.getFound(), (System.nanoTime() - start) / 1e6, crawler.getErrors());
+	}
+
+}
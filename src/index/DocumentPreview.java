@@ -0,0 +1,117 @@
+package index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author luca
+ *
+ * The beginning of the content of a document, to show it in results. When the index stores the content it is
+ * read from there; otherwise the index only knows size and modification time of the file, and the preview is
+ * read from the file itself, mapping in memory only the bytes needed (a plain read is used if mapping fails).
+ * If the file changed since it was indexed the preview is marked STALE, as the document may no longer match
+ * the query, and if the file is gone it is MISSING, with no text.
+ */
+public class DocumentPreview {
+
+	public enum Source { STORED, FILE, STALE, MISSING }
+
+	private static final int MAX_BYTES_PER_CHAR = 4;	// UTF-8
+
+	private String text;
+	private Source source;
+
+	DocumentPreview(String text, Source source) {
+		this.text = text;
+		this.source = source;
+	}
+
+	/**
+	 * @return the preview, or null if the document is MISSING
+	 */
+	public String getText() {
+		return text;
+	}
+
+	public Source getSource() {
+		return source;
+	}
+
+	public boolean isStale() {
+		return source == Source.STALE;
+	}
+
+	/*
+	 * Preview of stored content, cut at maxChars
+	 */
+	static DocumentPreview fromStored(String content, int maxChars) {
+		return new DocumentPreview(cut(content, maxChars), Source.STORED);
+	}
+
+	/*
+	 * Preview read from the file, checking it against the size and modification time it had when indexed
+	 */
+	static DocumentPreview fromFile(String docPath, long size, long modified, int maxChars) {
+		File f = new File(docPath);
+		if (!f.isFile()) {
+			return new DocumentPreview(null, Source.MISSING);
+		}
+		Source source = (f.length() == size && f.lastModified() == modified) ? Source.FILE : Source.STALE;
+		try {
+			return new DocumentPreview(cut(read(f, (long) maxChars * MAX_BYTES_PER_CHAR), maxChars), source);
+		} catch (IOException e) {
+			return new DocumentPreview(null, Source.MISSING);
+		}
+	}
+
+	private static String read(File f, long maxBytes) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(f, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			int length = (int) Math.min(channel.size(), maxBytes);
+			ByteBuffer bytes;
+			try {
+				bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			} catch (IOException | UnsupportedOperationException e) {
+				bytes = ByteBuffer.allocate(length);
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0)
+					;
+				bytes.flip();
+			}
+			return decode(bytes);
+		} finally {
+			file.close();
+		}
+	}
+
+	/*
+	 * Decodes UTF-8; a character cut at the end of the region and invalid bytes are replaced, the former dropped
+	 */
+	private static String decode(ByteBuffer bytes) throws CharacterCodingException {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().
+				onMalformedInput(CodingErrorAction.REPLACE).
+				onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = decoder.decode(bytes);
+		String s = chars.toString();
+		int end = s.length();
+		while (end > 0 && s.length() - end < MAX_BYTES_PER_CHAR - 1 && s.charAt(end - 1) == '\uFFFD')
+			end--;
+		return s.substring(0, end);
+	}
+
+	private static String cut(String content, int maxChars) {
+		if (content == null) {
+			return "";
+		}
+		return content.length() > maxChars ? content.substring(0, maxChars) + "..." : content;
+	}
+
+}
@@ -2,28 +2,61 @@ package index;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
 
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.FilterMergePolicy;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeTrigger;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import irModels.Model;
+import metrics.IndexMetrics;
 import irModels.VectorSpaceModel;
 
 /**
@@ -32,6 +65,10 @@ import irModels.VectorSpaceModel;
  * This class implements an Index. This Index allows to being manipulated by user, 
  * who decide which Documents/Directories adding/removing.
  * 
+ * The index can be used by more threads (the gui indexes and searches in background): queries and reads
+ * share a lock, while adding, removing and resetting take it exclusively, one document at a time, so
+ * queries can run between the documents of a long ingestion.
+ * 
  */
 public class Index{
 
@@ -42,15 +79,30 @@ public class Index{
 	private static Index uniqueIndex = null;
 	
 	private static StandardAnalyzer stdAnalyzer = null; 
+	private static final Set<String> PATH_FIELDS = new HashSet<String>(Arrays.asList("path", "name"));
+	private static final Set<String> PREVIEW_FIELDS = new HashSet<String>(Arrays.asList("path", "name", "content", "size", "modified", "duplicateOf"));
 	private static Directory dirIndex = null;
 	private static IndexWriterConfig iwConfig = null; 
 	private static IndexWriter inWriter = null; 
 	private static IndexReader inReader = null;
 	private static IndexSearcher inSearcher = null;
 	private static Similarity simUsed = null;
+	private static CodecProfile codecProfile = CodecProfile.DEFAULT;
+	private static StorageMode storageMode = StorageMode.HEAP;
+	private static DeferringMergePolicy mergePolicy = null;
+	private static int bulkLoads = 0;	// begun and not ended yet
+	private static double ramBufferMB = 0;	// of the profile, restored after bulk loads
+	private static final double BULK_RAM_BUFFER_MB = 256;
+	public static final int BULK_LOAD_SEGMENTS = 1;	// segments left by loadIndex
+	private static boolean verbose = true;
+	private static boolean storeContent = true;
+	private static Deduplicator deduplicator = null;
+	private static long searchTimeoutMillis = 0;	// 0 for no limit
+	private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 	
 	private Index() {
 		startIndex();
+		IndexMetrics.get().setIndex(this);
 	}
 	
 	/**
@@ -84,9 +136,20 @@ public class Index{
 	 */
 	private void startIndex() {
 		stdAnalyzer = new StandardAnalyzer();
-		dirIndex = new RAMDirectory();
-		iwConfig = new IndexWriterConfig();
+		try {
+			dirIndex = storageMode.open();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Cannot keep the index " + storageMode + ", keeping it on the heap");
+			storageMode = StorageMode.HEAP;
+			dirIndex = new ByteBuffersDirectory();
+		}
+		iwConfig = codecProfile.apply(new IndexWriterConfig());
 		iwConfig.setSimilarity(simUsed);
+		mergePolicy = new DeferringMergePolicy(iwConfig.getMergePolicy());
+		iwConfig.setMergePolicy(mergePolicy);
+		ramBufferMB = iwConfig.getRAMBufferSizeMB();
+		bulkLoads = 0;
 		
 		try {
 			inWriter = new IndexWriter(dirIndex, iwConfig);
@@ -111,26 +174,103 @@ public class Index{
 	 * @param reload is a boolean to save index in a temporary save and reload it's content after reset
 	 */
 	public void setSimilarity(Similarity sim, boolean reload) {
-		if(simUsed.getClass() != sim.getClass()) {
-			simUsed = sim;
-			if(reload) {
-				saveIndex("tempIndex.ser");
+		lock.writeLock().lock();
+		try {
+			if(simUsed.getClass() != sim.getClass()) {
+				simUsed = sim;
+				if(reload) {
+					saveIndex("tempIndex.ser");
+				}
+				resetIndex();
+				if(reload) {
+					loadIndex("tempIndex.ser");
+				}
 			}
-			resetIndex();
-			if(reload) {
-				loadIndex("tempIndex.ser");
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Changes the codec profile the index is written with. As for the similarity, the index has to be
+	 * re-initialized, and reload keeps its documents, indexing them again with the new profile.
+	 * @param profile is the profile to set
+	 * @param reload is a boolean to save index in a temporary save and reload it's content after reset
+	 */
+	public void setCodecProfile(CodecProfile profile, boolean reload) {
+		lock.writeLock().lock();
+		try {
+			if(codecProfile != profile) {
+				codecProfile = profile;
+				if(reload) {
+					saveIndex("tempIndex.ser");
+				}
+				resetIndex();
+				if(reload) {
+					loadIndex("tempIndex.ser");
+				}
 			}
+		} finally {
+			lock.writeLock().unlock();
 		}
 	}
 	
+	public CodecProfile getCodecProfile() {
+		return codecProfile;
+	}
+	
+	/**
+	 * Changes where the index keeps its bytes (see StorageMode). As for the similarity, the index has to be
+	 * re-initialized, and reload keeps its documents, indexing them again in the new storage.
+	 * @param mode is the storage to use
+	 * @param reload is a boolean to save index in a temporary save and reload it's content after reset
+	 */
+	public void setStorageMode(StorageMode mode, boolean reload) {
+		lock.writeLock().lock();
+		try {
+			if(storageMode != mode) {
+				if(reload) {
+					saveIndex("tempIndex.ser");
+				}
+				storageMode = mode;
+				resetIndex();
+				if(reload) {
+					loadIndex("tempIndex.ser");
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	public StorageMode getStorageMode() {
+		return storageMode;
+	}
+	
+	/**
+	 * Returns the memory taken by the index, on the heap and outside it.
+	 * @return the footprint of the index
+	 */
+	public MemoryFootprint getMemoryFootprint() {
+		// Heap buffers hold the files of the index, the unused end of their last blocks aside
+		long heap = storageMode == StorageMode.HEAP ? getIndexSize() : 0;
+		return new MemoryFootprint(storageMode, getIndexSize(), heap,
+				StorageMode.getBufferPoolBytes("direct"), StorageMode.getBufferPoolBytes("mapped"));
+	}
+	
 	/**
 	 * This method removes the previous index and closes its tools. 
 	 * Then it makes a new Index, reallocating new tools.
 	 * This is the fastest and easiest way to "clear" totally an index from its entries.
 	 */	
 	public void resetIndex() {
-		closeIndex();
-		startIndex();
+		lock.writeLock().lock();
+		try {
+			closeIndex();
+			startIndex();
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 	
 	/**
@@ -140,16 +280,27 @@ public class Index{
 		if(stdAnalyzer != null){
 			stdAnalyzer.close();
 		}
+		if(deduplicator != null) {
+			deduplicator.clear();
+		}
+		// The index is thrown away, so changes not committed are rolled back instead of being written
 		if(inWriter != null) {
 			try {
-				inWriter.deleteAll();
+				inWriter.rollback();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if(inReader != null) {
+			try {
+				inReader.close();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 		if(dirIndex != null) {
 			try {
-				dirIndex.close();
+				StorageMode.close(dirIndex);
 			}catch(IOException e) {
 				e.printStackTrace();
 			}
@@ -175,8 +326,13 @@ public class Index{
 			System.err.println("File " + saveFile + " doesn't exist");
 		}
 		
-		for (int k = 0 ; k < this.getSize() ; k++) {
-			fileWriter.println(getDocument(k).get("path") + getDocument(k).get("name"));
+		lock.readLock().lock();
+		try {
+			for (int k = 0 ; k < this.getSize() ; k++) {
+				fileWriter.println(getDocPath(k));
+			}
+		} finally {
+			lock.readLock().unlock();
 		}
 		
 		fileWriter.close();
@@ -203,6 +359,7 @@ public class Index{
 		}
 		
 		String line = "";
+		beginBulkLoad();
 		try {
 			while ( (line = reader.readLine()) != null) {
 				addDocument(line);
@@ -212,9 +369,14 @@ public class Index{
 		} catch (IOException e) {
 			e.printStackTrace();
 			return ;
+		} finally {
+			endBulkLoad(BULK_LOAD_SEGMENTS);
 		}
 		
 		System.out.println("Loading successful from " + saveFile + "!");
+		if (deduplicator != null) {
+			System.out.println(deduplicator.getReport());
+		}
 	}
 	
 	
@@ -223,11 +385,17 @@ public class Index{
 	 * @param docPath is a concatenation of path and name of a document (for example "doc/Lucene.pdf")
 	 */
 	public void addDocument(String docPath) {
+		long start = System.nanoTime();
 		Document doc = new Document();
+		// Taken before reading, so that a change while reading is seen as staleness
+		File file = new File(docPath);
+		long size = file.length();
+		long modified = file.lastModified();
 		
+		// UTF-8 whatever the platform charset, as previews read from the file decode it
 		BufferedReader buffer = null;
 		try{
-			buffer = new BufferedReader(new FileReader(docPath));
+			buffer = new BufferedReader(new InputStreamReader(new FileInputStream(docPath), StandardCharsets.UTF_8));
 		}catch(IOException e) {
 			e.printStackTrace();
 		}
@@ -245,6 +413,13 @@ public class Index{
 		}catch(Exception e) {
 			System.out.println("End of file");
 		}
+		if (buffer != null) {
+			try {
+				buffer.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 		
 		int separatorIndex = docPath.lastIndexOf("/");
 		
@@ -260,14 +435,42 @@ public class Index{
 		
 		String name = docPath.substring(separatorIndex+1, docPath.length());
 		
+		/*
+		 * Duplicates of documents already indexed are skipped, or indexed by name only, linked to the
+		 * document they duplicate
+		 */
+		Deduplicator.Result duplicate = null;
+		Deduplicator dedup = deduplicator;
+		if (dedup != null) {
+			duplicate = dedup.check(docPath, content);
+			if (duplicate.isDuplicate() && dedup.getPolicy() == Deduplicator.Policy.SKIP) {
+				return ;
+			}
+		}
+		boolean linked = duplicate != null && duplicate.isDuplicate();
+		
 		/*
 		 * Document properties are stored into Document type.
 		 * @warning path field is not intended to be used for queries
+		 * Path and name are also kept as doc values, so that hits are built without decompressing the stored
+		 * content, which is read only for previews. If content is not stored, size and modification time of
+		 * the file are, to read previews from the file and to know if it changed.
 		 */
 		doc.add(new TextField("path", path, Field.Store.YES));
 		doc.add(new TextField("name", name, Field.Store.YES));
-		doc.add(new TextField("content", content, Field.Store.YES));
+		if (linked) {
+			doc.add(new StoredField("duplicateOf", duplicate.canonical));
+		} else {
+			doc.add(new TextField("content", content, storeContent ? Field.Store.YES : Field.Store.NO));
+		}
+		if (!storeContent && !linked) {
+			doc.add(new StoredField("size", size));
+			doc.add(new StoredField("modified", modified));
+		}
+		doc.add(new BinaryDocValuesField("path", new BytesRef(path)));
+		doc.add(new BinaryDocValuesField("name", new BytesRef(name)));
 		
+		lock.writeLock().lock();
 		try {
 			inWriter.addDocument(doc);
 		} catch (IOException e) {
@@ -275,12 +478,150 @@ public class Index{
 		}
 				
 		/*
-		 * This updates indexReader because index has been modified (a new document has been added to it)
+		 * This updates indexReader because index has been modified (a new document has been added to it),
+		 * unless a bulk load is going on: then it is updated once, at its end
 		 */
 		try {
-			inReader = DirectoryReader.openIfChanged((DirectoryReader) inReader);
+			if (bulkLoads == 0) {
+				refreshReader();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		IndexMetrics.get().documentIndexed(size, System.nanoTime() - start);
+	}
+	
+	/*
+	 * Opens the reader again after a change of the index, to make the change searchable
+	 */
+	private void refreshReader() throws IOException {
+		long start = System.nanoTime();
+		DirectoryReader reader = DirectoryReader.openIfChanged((DirectoryReader) inReader);
+		if (reader != null) {
+			// Released, so that its segments are deleted once the results still using it are closed
+			IndexReader old = inReader;
+			inReader = reader;
+			old.decRef();
+		}
+		IndexMetrics.get().readerRefreshed(System.nanoTime() - start);
+	}
+	
+	/**
+	 * Starts a bulk load: until it ends, documents added are buffered in a bigger RAM buffer, segments are not
+	 * merged and the reader is not opened again for each document, so they are indexed much faster, but they
+	 * can't be searched (nor removed) until endBulkLoad. Bulk loads can be nested, the outer one ends them.
+	 */
+	public void beginBulkLoad() {
+		lock.writeLock().lock();
+		try {
+			if (bulkLoads++ == 0) {
+				// A quarter of the heap at most, as the buffer is on the heap whatever the storage
+				double mb = Math.min(BULK_RAM_BUFFER_MB, Runtime.getRuntime().maxMemory() / 4 / 1024 / 1024);
+				inWriter.getConfig().setRAMBufferSizeMB(Math.max(ramBufferMB, mb));
+				mergePolicy.setDeferred(true);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Ends a bulk load: merges the index down to at most maxSegments segments, commits it and makes the
+	 * documents added searchable.
+	 * @param maxSegments segments to leave, 0 to leave them as flushed by the load
+	 */
+	public void endBulkLoad(int maxSegments) {
+		lock.writeLock().lock();
+		try {
+			if (bulkLoads == 0 || --bulkLoads > 0) {
+				return ;
+			}
+			inWriter.getConfig().setRAMBufferSizeMB(ramBufferMB);
+			mergePolicy.setDeferred(false);
+			if (maxSegments > 0) {
+				inWriter.forceMerge(maxSegments);
+			}
+			inWriter.commit();
+			refreshReader();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	public boolean isBulkLoading() {
+		return bulkLoads > 0;
+	}
+	
+	/**
+	 * Returns the segments of the index, with their size and deleted documents.
+	 * @return statistics of the segments
+	 */
+	public SegmentStats getSegmentStats() {
+		SegmentStats stats = new SegmentStats();
+		lock.readLock().lock();
+		try {
+			for (LeafReaderContext leaf : inReader.leaves()) {
+				LeafReader reader = leaf.reader();
+				long size = 0;
+				String name = "" + leaf.ord;
+				if (reader instanceof SegmentReader) {
+					size = ((SegmentReader) reader).getSegmentInfo().sizeInBytes();
+					name = ((SegmentReader) reader).getSegmentName();
+				}
+				stats.add(new SegmentStats.Segment(name, reader.maxDoc(), reader.numDeletedDocs(), size));
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			lock.readLock().unlock();
+		}
+		return stats;
+	}
+	
+	/**
+	 * Merges away deleted documents, that removeDocument only marks as deleted: they take space, and queries
+	 * still visit them, until then. Only segments with deleted documents are merged.
+	 * @return number of deleted documents merged away
+	 */
+	public int compact() {
+		lock.writeLock().lock();
+		try {
+			int deleted = inReader.numDeletedDocs();
+			inWriter.forceMergeDeletes(true);
+			inWriter.commit();
+			refreshReader();
+			return deleted - inReader.numDeletedDocs();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/*
+	 * The merge policy of the profile, but with merges put off while a bulk load is going on (forced merges
+	 * are still done)
+	 */
+	private static class DeferringMergePolicy extends FilterMergePolicy {
+		
+		private volatile boolean deferred = false;
+		
+		DeferringMergePolicy(MergePolicy in) {
+			super(in);
+		}
+		
+		void setDeferred(boolean deferred) {
+			this.deferred = deferred;
+		}
+		
+		@Override
+		public MergeSpecification findMerges(MergeTrigger trigger, SegmentInfos infos, MergeContext context) throws IOException {
+			return deferred ? null : super.findMerges(trigger, infos, context);
 		}
 	}
 	
@@ -291,27 +632,282 @@ public class Index{
 	 */
 	public Document getDocument(int index) {
 		Document doc = null;
+		lock.readLock().lock();
 		try {
 			doc = inReader.document(index);
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			lock.readLock().unlock();
 		}
 		return doc;
 	}
 	
+	/**
+	 * Returns path and name of a document, as given to addDocument, without reading its content.
+	 * @param index of the document
+	 * @return concatenation of path and name of the document, or null if it cannot be read
+	 */
+	public String getDocPath(int index) {
+		lock.readLock().lock();
+		try {
+			Hit hit = readHit(inReader, index, 0);
+			return hit.getDocPath() + hit.getDocName();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/*
+	 * Reads the preview of a document, from its stored content or from its file
+	 */
+	static DocumentPreview readPreview(IndexReader reader, int docId, int maxChars) throws IOException {
+		Document d = reader.document(docId, PREVIEW_FIELDS);
+		String canonical = d.get("duplicateOf");
+		if (canonical != null) {
+			// Duplicates are indexed without content, the one of the document they duplicate is shown
+			int c = findDocument(reader, canonical);
+			return c == -1 ? new DocumentPreview(null, DocumentPreview.Source.MISSING) : readPreview(reader, c, maxChars);
+		}
+		String content = d.get("content");
+		IndexableField size = d.getField("size");
+		IndexableField modified = d.getField("modified");
+		if (content == null && size != null && modified != null) {
+			return DocumentPreview.fromFile(d.get("path") + d.get("name"), size.numericValue().longValue(),
+					modified.numericValue().longValue(), maxChars);
+		}
+		return DocumentPreview.fromStored(content, maxChars);
+	}
+	
+	/*
+	 * Position of the live document with the given path (as given to addDocument), or -1 if not in the reader
+	 */
+	private static int findDocument(IndexReader reader, String docPath) throws IOException {
+		Bits live = MultiFields.getLiveDocs(reader);
+		for (int k = 0; k < reader.maxDoc(); k++) {
+			if (live != null && !live.get(k)) {
+				continue;
+			}
+			Hit doc = readHit(reader, k, 0);
+			if ((doc.getDocPath() + doc.getDocName()).equals(docPath)) {
+				return k;
+			}
+		}
+		return -1;
+	}
+	
+	/*
+	 * Reads path and name of a document from their doc values. Documents indexed without them are read from
+	 * the stored fields, loading only the two.
+	 */
+	static Hit readHit(IndexReader reader, int docId, float score) throws IOException {
+		List<LeafReaderContext> leaves = reader.leaves();
+		LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+		int doc = docId - leaf.docBase;
+		BinaryDocValues path = leaf.reader().getBinaryDocValues("path");
+		BinaryDocValues name = leaf.reader().getBinaryDocValues("name");
+		if (path != null && name != null && path.advanceExact(doc) && name.advanceExact(doc)) {
+			return new Hit(path.binaryValue().utf8ToString(), name.binaryValue().utf8ToString(), score);
+		}
+		Document d = reader.document(docId, PATH_FIELDS);
+		return new Hit(d.get("path"), d.get("name"), score);
+	}
+	
 	/**
 	 * This method removes a document from the index, given its position into the index
 	 * @param index is index of document to remove
 	 */
 	public void removeDocument(int index) {
+		lock.writeLock().lock();
 		try {
+			List<String> orphans = null;
+			if (deduplicator != null) {
+				Hit doc = readHit(inReader, index, 0);
+				orphans = deduplicator.remove(doc.getDocPath() + doc.getDocName());
+			}
 			inWriter.tryDeleteDocument(inReader, index);
-			inReader = DirectoryReader.openIfChanged((DirectoryReader)inReader);
+			refreshReader();
+			if (orphans != null) {
+				relink(orphans);
+			}
+		}catch(IOException e) {
+			e.printStackTrace();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * This method removes a document from the index, given its path (as given to addDocument)
+	 * @param docPath is a concatenation of path and name of the document
+	 * @return true if the document was in the index
+	 */
+	public boolean removeDocument(String docPath) {
+		lock.writeLock().lock();
+		try {
+			Bits live = MultiFields.getLiveDocs(inReader);
+			for (int k = 0; k < inReader.maxDoc(); k++) {
+				if (live != null && !live.get(k)) {
+					continue;
+				}
+				Hit doc = readHit(inReader, k, 0);
+				if ((doc.getDocPath() + doc.getDocName()).equals(docPath)) {
+					inWriter.tryDeleteDocument(inReader, k);
+					refreshReader();
+					if (deduplicator != null) {
+						relink(deduplicator.remove(docPath));
+					}
+					return true;
+				}
+			}
 		}catch(IOException e) {
 			e.printStackTrace();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return false;
+	}
+	
+	/*
+	 * Duplicates linked to a removed document would be left without content: they are removed and indexed again
+	 * from their files, so the first one still there becomes the canonical and the others are linked to it (or
+	 * indexed as unique, if they are not similar enough to it). Called with the write lock held.
+	 */
+	private void relink(List<String> orphans) throws IOException {
+		if (orphans.isEmpty()) {
+			return ;
+		}
+		HashSet<String> paths = new HashSet<String>(orphans);
+		Bits live = MultiFields.getLiveDocs(inReader);
+		for (int k = 0; k < inReader.maxDoc(); k++) {
+			if (live != null && !live.get(k)) {
+				continue;
+			}
+			Hit doc = readHit(inReader, k, 0);
+			if (paths.contains(doc.getDocPath() + doc.getDocName())) {
+				inWriter.tryDeleteDocument(inReader, k);
+			}
+		}
+		refreshReader();
+		for (String orphan : orphans) {
+			if (new File(orphan).isFile()) {
+				addDocument(orphan);
+			}
+		}
+	}
+	
+	/**
+	 * Chooses whether the content of documents added from now on is stored in the index. If not, the index is
+	 * about half as big, and previews are read from the files, as long as they are still there.
+	 * @param storeContent false to not store content
+	 */
+	public void setStoreContent(boolean storeContent) {
+		Index.storeContent = storeContent;
+	}
+	
+	public boolean isStoreContent() {
+		return storeContent;
+	}
+	
+	/**
+	 * Turns on deduplication of the documents added from now on, or turns it off if null. Documents already in
+	 * the index are not checked.
+	 * @param deduplicator finds duplicates and tells what to do with them
+	 */
+	public void setDeduplicator(Deduplicator deduplicator) {
+		Index.deduplicator = deduplicator;
+	}
+	
+	/**
+	 * @return the deduplicator, with the duplicates found and the space saved, or null if deduplication is off
+	 */
+	public Deduplicator getDeduplicator() {
+		return deduplicator;
+	}
+	
+	/**
+	 * Limits the time a paged query can spend collecting its first page: a query taking longer is stopped, and
+	 * submitQuery throws a TimeLimitingCollector.TimeExceededException. Servers use it so that a costly query
+	 * does not hold a worker; the legacy submitQuery, which reads all the hits, is not limited.
+	 * @param millis the limit, 0 for none
+	 */
+	public void setSearchTimeout(long millis) {
+		Index.searchTimeoutMillis = Math.max(0, millis);
+	}
+	
+	public long getSearchTimeout() {
+		return searchTimeoutMillis;
+	}
+	
+	/**
+	 * Toggles the message printed for each query with the number of matching documents. Tools that submit
+	 * many queries (like the load generator) turn it off, to not measure the console.
+	 * @param verbose true to print the message
+	 */
+	public void setVerbose(boolean verbose) {
+		Index.verbose = verbose;
+	}
+	
+	/**
+	 * Returns the reader currently opened on the index, to read statistics (terms, norms, ...) that the Index does
+	 * not expose. The reader is owned by the index and it is released when documents are added or removed, so it
+	 * must not be closed or kept: to use it for longer, acquireReader has to be used instead.
+	 * @return current IndexReader
+	 */
+	public IndexReader getReader() {
+		return inReader;
+	}
+	
+	/**
+	 * Returns the reader currently opened on the index, which stays open, whatever happens to the index, until
+	 * it is given back to releaseReader.
+	 * @return current IndexReader
+	 */
+	public IndexReader acquireReader() {
+		lock.readLock().lock();
+		try {
+			inReader.incRef();
+			return inReader;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Gives back a reader taken with acquireReader.
+	 * @param reader the reader
+	 */
+	public void releaseReader(IndexReader reader) {
+		try {
+			reader.decRef();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * Returns the size of the index, as sum of the size of all its files.
+	 * @return size in bytes
+	 */
+	public long getIndexSize() {
+		long size = 0;
+		try {
+			for (String file : dirIndex.listAll()) {
+				try {
+					size += dirIndex.fileLength(file);
+				} catch (NoSuchFileException e) {
+					// File deleted by a merge meanwhile
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return size;
+	}
+	
 	/**
 	 * Returns the number of documents stored in index.
 	 * @return size of the index
@@ -330,6 +926,182 @@ public class Index{
 	 * @return a list of "Hit", where Hit is a custom class that contains a document and its score for that query	 
 	 */
 	public LinkedList<Hit> submitQuery(String query, LinkedList<String> fields, Model m, boolean print) {
+		return submitQuery(query, fields, m, simUsed, print);
+	}
+	
+	/**
+	 * Same as submitQuery, but the ranking is made with the given similarity instead of the one the index
+	 * has been built with. A new searcher is created on the current reader for each call, so many models can
+	 * query the same index at the same time (as the comparative benchmark does), as long as nobody is
+	 * adding or removing documents.
+	 * @param query is the query String
+	 * @param fields are fields on which search
+	 * @param m is the model to use for parsing query
+	 * @param sim is the similarity used to rank documents
+	 * @param print allows query and results printing
+	 * @return a list of "Hit", where Hit is a custom class that contains a document and its score for that query
+	 */
+	public LinkedList<Hit> submitQuery(String query, LinkedList<String> fields, Model m, Similarity sim, boolean print) {
+		long start = System.nanoTime();
+		LinkedList<Hit> results = null;
+		lock.readLock().lock();
+		try {
+			results = search(query, fields, m, sim, print);
+			return results;
+		} finally {
+			lock.readLock().unlock();
+			IndexMetrics.get().queryExecuted(m.getName(), m.getMaxEdits(), System.nanoTime() - start, results == null);
+		}
+	}
+	
+	/**
+	 * Same as submitQuery, but hits are collected a page at a time and documents are read only when asked for,
+	 * so that a query matching most of the index is as fast as one matching a few documents.
+	 * @param query is the query String
+	 * @param fields are fields on which search
+	 * @param m is the model to use for parsing query
+	 * @param pageSize is the number of hits collected for each page
+	 * @return the results, with the first page collected, or null if the index is empty or the search fails
+	 */
+	public SearchResults submitQuery(String query, LinkedList<String> fields, Model m, int pageSize) {
+		return submitQuery(query, fields, m, simUsed, pageSize);
+	}
+	
+	/**
+	 * Same as submitQuery with pages, but the ranking is made with the given similarity, as the other
+	 * submitQuery with a similarity does.
+	 * @param query is the query String
+	 * @param fields are fields on which search
+	 * @param m is the model to use for parsing query
+	 * @param sim is the similarity used to rank documents
+	 * @param pageSize is the number of hits collected for each page
+	 * @return the results, with the first page collected, or null if the index is empty or the search fails
+	 */
+	public SearchResults submitQuery(String query, LinkedList<String> fields, Model m, Similarity sim, int pageSize) {
+		return submitQuery(query, fields, m, sim, pageSize, (QueryProfile) null);
+	}
+	
+	/**
+	 * Same as submitQuery with pages and a similarity, but the query can be stopped while it collects its first
+	 * page: the condition is checked before searching and every few hits collected. Searches that a newer one
+	 * makes useless (as the ones of the gui) pass their cancel flag, so they do not delay it.
+	 * @param query is the query String
+	 * @param fields are fields on which search
+	 * @param m is the model to use for parsing query
+	 * @param sim is the similarity used to rank documents
+	 * @param pageSize is the number of hits collected for each page
+	 * @param stop tells when the query has to be stopped
+	 * @return the results, with the first page collected, or null if the index is empty or the search fails
+	 * @throws CancellationException if the query has been stopped
+	 */
+	public SearchResults submitQuery(String query, LinkedList<String> fields, Model m, Similarity sim, int pageSize, BooleanSupplier stop) {
+		return submitQuery(query, fields, m, sim, pageSize, null, stop);
+	}
+	
+	/**
+	 * Same as submitQuery with pages and a similarity, but if a profile is given it is filled with the time
+	 * (and memory) spent by each phase of the query, and by each of its clauses alone. Profiling makes the
+	 * query slower, so it has to be asked for.
+	 * @param query is the query String
+	 * @param fields are fields on which search
+	 * @param m is the model to use for parsing query
+	 * @param sim is the similarity used to rank documents
+	 * @param pageSize is the number of hits collected for each page
+	 * @param profile is filled with the breakdown of the query, if not null
+	 * @return the results, with the first page collected, or null if the index is empty or the search fails
+	 * @throws TimeLimitingCollector.TimeExceededException if collecting the first page takes longer than the
+	 * search timeout (profiled queries are not limited)
+	 */
+	public SearchResults submitQuery(String query, LinkedList<String> fields, Model m, Similarity sim, int pageSize, QueryProfile profile) {
+		return submitQuery(query, fields, m, sim, pageSize, profile, null);
+	}
+	
+	private SearchResults submitQuery(String query, LinkedList<String> fields, Model m, Similarity sim, int pageSize, QueryProfile profile, BooleanSupplier stop) {
+		long start = System.nanoTime();
+		SearchResults results = null;
+		lock.readLock().lock();
+		try {
+			results = searchPages(query, fields, m, sim, pageSize, profile, stop);
+			return results;
+		} finally {
+			lock.readLock().unlock();
+			IndexMetrics.get().queryExecuted(m.getName(), m.getMaxEdits(), System.nanoTime() - start, results == null);
+		}
+	}
+	
+	private SearchResults searchPages(String query, LinkedList<String> fields, Model m, Similarity sim, int pageSize, QueryProfile profile, BooleanSupplier stop) {
+		if(getSize() == 0) {
+			System.err.println("No documents in index!");
+			return null;
+		}
+		
+		try {
+			if (profile != null) {
+				return profile.search(query, fields, m, stdAnalyzer, inReader, sim, pageSize);
+			}
+			Query q = m.getQueryParsed(query, fields, stdAnalyzer);
+			IndexSearcher searcher = new IndexSearcher(inReader);
+			searcher.setSimilarity(sim);
+			SearchResults results;
+			if (searchTimeoutMillis > 0 || stop != null) {
+				TopScoreDocCollector top = TopScoreDocCollector.create(Math.max(1, pageSize));
+				Collector collector = top;
+				if (searchTimeoutMillis > 0) {
+					// The global counter ticks every few milliseconds, the collector stops at the first tick over the limit
+					collector = new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(), searchTimeoutMillis);
+				}
+				if (stop != null) {
+					if (stop.getAsBoolean()) {
+						throw new CancellationException("Query stopped");
+					}
+					collector = new StoppableCollector(collector, stop);
+				}
+				searcher.search(q, collector);
+				results = new SearchResults(searcher, q, pageSize, top.topDocs());
+			} else {
+				results = new SearchResults(searcher, q, pageSize);
+			}
+			if (verbose) {
+				System.out.println(results.getTotalHits() + " total matching documents");
+			}
+			return results;
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("\nSomething goes wrong with your query... Quitting...");
+			return null;
+		}
+	}
+	
+	/*
+	 * Ends a search with a CancellationException when asked to stop, checking it every STOP_CHECK hits
+	 */
+	private static class StoppableCollector extends FilterCollector {
+		
+		private static final int STOP_CHECK = 1024;
+		private BooleanSupplier stop;
+		private int collected = 0;
+		
+		StoppableCollector(Collector in, BooleanSupplier stop) {
+			super(in);
+			this.stop = stop;
+		}
+		
+		public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+			if (stop.getAsBoolean()) {
+				throw new CancellationException("Query stopped");
+			}
+			return new FilterLeafCollector(super.getLeafCollector(context)) {
+				public void collect(int doc) throws IOException {
+					if (++collected % STOP_CHECK == 0 && stop.getAsBoolean()) {
+						throw new CancellationException("Query stopped");
+					}
+					super.collect(doc);
+				}
+			};
+		}
+	}
+	
+	private LinkedList<Hit> search(String query, LinkedList<String> fields, Model m, Similarity sim, boolean print) {
 		
 		LinkedList<Hit> queryResults = new LinkedList<Hit>();
 		
@@ -351,15 +1123,16 @@ public class Index{
 		 * create a new searcher on the current reader. This is cheap if we already have a reader
 		 * available (as we have)
 		 */		
+		IndexSearcher searcher = null;
 		try {
-			inSearcher = new IndexSearcher(inReader);
-			inSearcher.setSimilarity(simUsed);
+			searcher = new IndexSearcher(inReader);
+			searcher.setSimilarity(sim);
 		}catch(Exception e) {
 			e.printStackTrace();
 		}
 		
 		try {
-			results = inSearcher.search(q, getSize());
+			results = searcher.search(q, getSize());
 			hits = results.scoreDocs;
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -367,14 +1140,14 @@ public class Index{
 			return null;
 		}
 		
-		System.out.println(results.totalHits + " total matching documents");
+		if (verbose) {
+			System.out.println(results.totalHits + " total matching documents");
+		}
 		
 		
-		Document doc = null;
 		try {
 			for (int k=0 ; k < hits.length ; k++) {
-					doc = inSearcher.doc(hits[k].doc);
-					queryResults.add(new Hit(doc.get("path"), doc.get("name"), hits[k].score));
+					queryResults.add(readHit(inReader, hits[k].doc, hits[k].score));
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -0,0 +1,64 @@
+package index;
+
+/**
+ * @author luca
+ *
+ * Memory taken by the index, as returned by Index.getMemoryFootprint(). Heap bytes are the ones of the index
+ * only (0 if it is not on the heap), while direct and mapped bytes are of the whole JVM, as the JVM does not tell
+ * who allocated them; the index is usually most of them.
+ */
+public class MemoryFootprint {
+
+	private StorageMode mode;
+	private long indexBytes;
+	private long heapBytes;
+	private long directBytes;
+	private long mappedBytes;
+
+	MemoryFootprint(StorageMode mode, long indexBytes, long heapBytes, long directBytes, long mappedBytes) {
+		this.mode = mode;
+		this.indexBytes = indexBytes;
+		this.heapBytes = heapBytes;
+		this.directBytes = directBytes;
+		this.mappedBytes = mappedBytes;
+	}
+
+	public StorageMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return size of the files of the index
+	 */
+	public long getIndexBytes() {
+		return indexBytes;
+	}
+
+	/**
+	 * @return bytes of the index on the heap
+	 */
+	public long getHeapBytes() {
+		return heapBytes;
+	}
+
+	/**
+	 * @return bytes of all direct buffers of the JVM
+	 */
+	public long getDirectBytes() {
+		return directBytes;
+	}
+
+	/**
+	 * @return bytes of all files mapped by the JVM
+	 */
+	public long getMappedBytes() {
+		return mappedBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: index %.1f MB, heap %.1f MB, direct %.1f MB, mapped %.1f MB", mode,
+				indexBytes / 1e6, heapBytes / 1e6, directBytes / 1e6, mappedBytes / 1e6);
+	}
+
+}
@@ -0,0 +1,265 @@
+package index;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import irModels.Model;
+
+/**
+ * @author luca
+ *
+ * A persistent log of the queries submitted, kept in a plain text file where each query is appended as a line:
+ * time (ms), model, fields, edit distance, latency (us) and the query text, separated by tabs.
+ * The log survives restarts: it gives back the chronology of the last queries, and the most frequent recent
+ * queries, which are replayed on a freshly loaded index to warm it up (JIT, Lucene query cache, term
+ * dictionaries and stored fields), so that the first queries of the user are as fast as the following ones.
+ * The same file can be replayed by LoadGenerator. It does not grow without bounds: compact() drops the oldest
+ * queries, keeping the last ones.
+ */
+public class QueryLog {
+
+	/**
+	 * A query of the log.
+	 */
+	public static class Entry {
+		public long time;
+		public String model;
+		public LinkedList<String> fields;
+		public int editDistance;
+		public long latencyNanos;
+		public String query;
+	}
+
+	private String file;
+	private PrintWriter writer = null;
+
+	/**
+	 * @param file is the log file, created at the first query if it does not exist
+	 */
+	public QueryLog(String file) {
+		this.file = file;
+	}
+
+	/**
+	 * Appends a query to the log. It can be called by more threads.
+	 * @param query is the query text
+	 * @param model is the model used
+	 * @param fields are the fields searched
+	 * @param editDistance is the edit distance used by the models (0 if not active)
+	 * @param latencyNanos is the time taken by the query
+	 */
+	public synchronized void record(String query, Model model, LinkedList<String> fields, int editDistance, long latencyNanos) {
+		try {
+			if (writer == null) {
+				writer = new PrintWriter(new FileWriter(file, true));
+			}
+			Entry e = new Entry();
+			e.time = System.currentTimeMillis();
+			e.model = model.getName();
+			e.fields = fields;
+			e.editDistance = editDistance;
+			e.latencyNanos = latencyNanos;
+			e.query = query.replaceAll("[\t\r\n]", " ");
+			writer.println(format(e));
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Cannot write query log " + file);
+		}
+	}
+
+	public synchronized void close() {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+	/**
+	 * Formats a query as a line of the log.
+	 * @param e is the query
+	 * @return the line, without line terminator
+	 */
+	public static String format(Entry e) {
+		return e.time + "\t" + e.model + "\t" + String.join(",", e.fields) + "\t" + e.editDistance + "\t"
+				+ e.latencyNanos / 1000 + "\t" + e.query;
+	}
+
+	/**
+	 * Parses a line of the log.
+	 * @param line is the line
+	 * @return the query, or null if the line is not in the log format
+	 */
+	public static Entry parse(String line) {
+		String[] parts = line.split("\t", 6);
+		if (parts.length < 6) {
+			return null;
+		}
+		try {
+			Entry e = new Entry();
+			e.time = Long.parseLong(parts[0]);
+			e.model = parts[1];
+			e.fields = new LinkedList<String>(Arrays.asList(parts[2].split(",")));
+			e.editDistance = Integer.parseInt(parts[3]);
+			e.latencyNanos = Long.parseLong(parts[4]) * 1000;
+			e.query = parts[5];
+			return e;
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads all the queries of the log, oldest first. Lines not in the log format are skipped.
+	 * @return the queries, none if the log does not exist
+	 */
+	public synchronized ArrayList<Entry> read() {
+		ArrayList<Entry> entries = new ArrayList<Entry>();
+		if (!new File(file).exists()) {
+			return entries;
+		}
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(file));
+			String line;
+			while ((line = br.readLine()) != null) {
+				Entry e = parse(line);
+				if (e != null) {
+					entries.add(e);
+				}
+			}
+			br.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return entries;
+	}
+
+	/**
+	 * Reads the log and, if it holds more than maxEntries queries, writes it again with the last maxEntries only.
+	 * The file is replaced at once, so a crash meanwhile leaves the old log.
+	 * @param maxEntries is the number of queries kept
+	 * @return the queries kept, oldest first
+	 */
+	public synchronized ArrayList<Entry> compact(int maxEntries) {
+		ArrayList<Entry> entries = read();
+		if (entries.size() <= maxEntries) {
+			return entries;
+		}
+		entries = new ArrayList<Entry>(entries.subList(entries.size() - maxEntries, entries.size()));
+		close();
+		Path path = Paths.get(file).toAbsolutePath();
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			PrintWriter pw = new PrintWriter(new FileWriter(temp.toFile()));
+			for (Entry e : entries) {
+				pw.println(format(e));
+			}
+			pw.close();
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Cannot compact query log " + file);
+		}
+		return entries;
+	}
+
+	/**
+	 * Returns the last different query texts, the most recent first.
+	 * @param entries are the queries of the log
+	 * @param n is the maximum number of queries
+	 * @return query texts
+	 */
+	public static LinkedList<String> getRecent(List<Entry> entries, int n) {
+		LinkedList<String> recent = new LinkedList<String>();
+		for (int i = entries.size() - 1; i >= 0 && recent.size() < n; i--) {
+			if (!recent.contains(entries.get(i).query)) {
+				recent.add(entries.get(i).query);
+			}
+		}
+		return recent;
+	}
+
+	/**
+	 * Returns the queries submitted more times in a recent period: the same text with the same model and
+	 * fields is counted as the same query. Ties are broken by the most recent.
+	 * @param entries are the queries of the log
+	 * @param n is the maximum number of queries
+	 * @param maxAgeMillis is the period considered, back from now
+	 * @return the most recent submission of each query, the most frequent first
+	 */
+	public static List<Entry> getFrequent(List<Entry> entries, int n, long maxAgeMillis) {
+		long since = System.currentTimeMillis() - maxAgeMillis;
+		HashMap<String, Integer> counts = new HashMap<String, Integer>();
+		LinkedHashMap<String, Entry> last = new LinkedHashMap<String, Entry>();
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			Entry e = entries.get(i);
+			if (e.time < since) {
+				break;
+			}
+			String key = e.model + "\t" + e.fields + "\t" + e.query;
+			counts.merge(key, 1, Integer::sum);
+			last.putIfAbsent(key, e);
+		}
+		ArrayList<Map.Entry<String, Entry>> sorted = new ArrayList<Map.Entry<String, Entry>>(last.entrySet());
+		sorted.sort((a, b) -> counts.get(b.getKey()) - counts.get(a.getKey()));	// stable: most recent first on ties
+		ArrayList<Entry> frequent = new ArrayList<Entry>();
+		for (int i = 0; i < sorted.size() && i < n; i++) {
+			frequent.add(sorted.get(i).getValue());
+		}
+		return frequent;
+	}
+
+	/**
+	 * Replays queries on the index, reading the documents of their first results as the gui shows them.
+	 * Queries of models no longer registered are skipped.
+	 * @param index is the index to warm up
+	 * @param entries are the queries to replay
+	 * @param rows is the number of results read for each query
+	 * @param stop is checked before and while running each query, to stop early
+	 * @return number of queries replayed
+	 */
+	public static int warm(Index index, List<Entry> entries, int rows, BooleanSupplier stop) {
+		int replayed = 0;
+		for (Entry e : entries) {
+			if (stop.getAsBoolean()) {
+				break;
+			}
+			Model m = Model.getModel(e.model);
+			if (m == null) {
+				continue;
+			}
+			SearchResults results;
+			try {
+				results = index.submitQuery(e.query, e.fields, m, m.getSimilarity(), rows, stop);
+			} catch (CancellationException ex) {
+				break;
+			}
+			if (results != null) {
+				for (int i = 0; i < results.getLoaded(); i++) {
+					results.getHit(i);
+				}
+				results.close();
+			}
+			replayed++;
+		}
+		return replayed;
+	}
+
+}
@@ -0,0 +1,265 @@
+package index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.Bits;
+
+import irModels.Model;
+import metrics.AllocationCounter;
+
+/**
+ * @author luca
+ *
+ * Where the time of a query went, filled by submitQuery when one is passed to it (profiling is opt-in, since
+ * it slows the query down). Phases are: parse (the model building its Query), rewrite (fuzzy, wildcard and
+ * prefix queries expanded into the terms of the index), weight (statistics of the terms), match (iterating the
+ * documents matching), score, collect (keeping the best ones) and fetch (reading the stored fields of the first
+ * page). Allocated bytes are measured too, when the JVM allows it (-1 otherwise).
+ * Clauses of the rewritten query are measured alone, to see which one is expensive.
+ */
+public class QueryProfile {
+
+	/**
+	 * Cost of a clause of the rewritten query.
+	 */
+	public static class Clause {
+		public String query;
+		public String occur;
+		public int terms;			// terms of the index the clause reads
+		public long cost;			// documents the clause may match, as estimated by its iterators
+		public long matches;		// documents it actually matches, alone
+		public long countNanos;		// time to count them
+	}
+
+	public String query;
+	public String parsedQuery;
+	public String rewrittenQuery;
+	public int multiTermQueries;	// fuzzy, wildcard, prefix, ... queries expanded by the rewrite
+	public int termsAfterRewrite;
+	public int segments;
+
+	public long parseNanos, parseBytes;
+	public long rewriteNanos, rewriteBytes;
+	public long weightNanos;
+	public long matchNanos;
+	public long scoreNanos;
+	public long collectNanos;
+	public long searchBytes;		// allocated by weight, match, score and collect
+	public long documentsScored;
+	public long fetchNanos, fetchBytes;
+	public int documentsFetched;
+	public long totalNanos, totalBytes;
+
+	public ArrayList<Clause> clauses = new ArrayList<Clause>();
+
+	/*
+	 * Runs the query as IndexSearcher.search would, but a phase at a time and with a clock around each one,
+	 * then measures the clauses alone. Called by Index with the read lock held.
+	 */
+	SearchResults search(String text, LinkedList<String> fields, Model m, StandardAnalyzer analyzer,
+			IndexReader reader, Similarity sim, int pageSize) throws IOException {
+		pageSize = Math.max(1, pageSize);
+		query = text;
+		long start = System.nanoTime();
+		long startBytes = AllocationCounter.getCurrentThreadAllocatedBytes();
+
+		long t = System.nanoTime();
+		long b = AllocationCounter.getCurrentThreadAllocatedBytes();
+		Query parsed = m.getQueryParsed(text, fields, analyzer);
+		parseNanos = System.nanoTime() - t;
+		parseBytes = allocatedSince(b);
+		parsedQuery = parsed.toString();
+		multiTermQueries = countMultiTermQueries(parsed);
+
+		IndexSearcher searcher = new IndexSearcher(reader);
+		searcher.setSimilarity(sim);
+		searcher.setQueryCache(null);	// a cached clause would hide its cost
+		t = System.nanoTime();
+		b = AllocationCounter.getCurrentThreadAllocatedBytes();
+		Query rewritten = searcher.rewrite(parsed);
+		rewriteNanos = System.nanoTime() - t;
+		rewriteBytes = allocatedSince(b);
+		rewrittenQuery = rewritten.toString();
+
+		b = AllocationCounter.getCurrentThreadAllocatedBytes();
+		t = System.nanoTime();
+		Weight weight = searcher.createWeight(rewritten, true, 1f);
+		weightNanos = System.nanoTime() - t;
+		Set<Term> terms = new HashSet<Term>();
+		weight.extractTerms(terms);
+		termsAfterRewrite = terms.size();
+
+		TopScoreDocCollector collector = TopScoreDocCollector.create(pageSize);
+		for (LeafReaderContext leaf : reader.leaves()) {
+			segments++;
+			t = System.nanoTime();
+			Scorer scorer = weight.scorer(leaf);
+			LeafCollector lc = collector.getLeafCollector(leaf);
+			weightNanos += System.nanoTime() - t;
+			if (scorer == null)
+				continue;
+			TimedScorer timed = new TimedScorer(weight, scorer);
+			lc.setScorer(timed);
+			DocIdSetIterator it = scorer.iterator();
+			Bits live = leaf.reader().getLiveDocs();
+			while (true) {
+				t = System.nanoTime();
+				int doc = it.nextDoc();
+				matchNanos += System.nanoTime() - t;
+				if (doc == DocIdSetIterator.NO_MORE_DOCS)
+					break;
+				if (live != null && !live.get(doc))
+					continue;
+				documentsScored++;
+				t = System.nanoTime();
+				lc.collect(doc);
+				collectNanos += System.nanoTime() - t;
+			}
+			scoreNanos += timed.nanos;
+		}
+		// score() is called by the collector, so its time is also in collect
+		collectNanos -= scoreNanos;
+		TopDocs first = collector.topDocs();
+		searchBytes = allocatedSince(b);
+		SearchResults results = new SearchResults(searcher, rewritten, pageSize, first);
+
+		t = System.nanoTime();
+		b = AllocationCounter.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < results.getLoaded(); i++) {
+			if (results.getHit(i) != null)
+				documentsFetched++;
+		}
+		fetchNanos = System.nanoTime() - t;
+		fetchBytes = allocatedSince(b);
+		totalNanos = System.nanoTime() - start;
+		totalBytes = allocatedSince(startBytes);
+
+		// Not part of the query: each clause is run alone to see what it costs
+		if (rewritten instanceof BooleanQuery) {
+			for (BooleanClause c : ((BooleanQuery) rewritten).clauses())
+				clauses.add(measure(searcher, reader, c.getQuery(), c.getOccur().name()));
+		} else {
+			clauses.add(measure(searcher, reader, rewritten, BooleanClause.Occur.MUST.name()));
+		}
+		return results;
+	}
+
+	private static Clause measure(IndexSearcher searcher, IndexReader reader, Query q, String occur) throws IOException {
+		Clause c = new Clause();
+		c.query = q.toString();
+		c.occur = occur;
+		Weight w = searcher.createWeight(searcher.rewrite(q), false, 1f);
+		Set<Term> terms = new HashSet<Term>();
+		w.extractTerms(terms);
+		c.terms = terms.size();
+		for (LeafReaderContext leaf : reader.leaves()) {
+			Scorer s = w.scorer(leaf);
+			if (s != null)
+				c.cost += s.iterator().cost();
+		}
+		long t = System.nanoTime();
+		c.matches = searcher.count(q);
+		c.countNanos = System.nanoTime() - t;
+		return c;
+	}
+
+	private static int countMultiTermQueries(Query q) {
+		if (q instanceof MultiTermQuery)
+			return 1;
+		if (q instanceof BoostQuery)
+			return countMultiTermQueries(((BoostQuery) q).getQuery());
+		int count = 0;
+		if (q instanceof BooleanQuery) {
+			for (BooleanClause c : ((BooleanQuery) q).clauses())
+				count += countMultiTermQueries(c.getQuery());
+		}
+		return count;
+	}
+
+	private static long allocatedSince(long bytes) {
+		return bytes < 0 ? -1 : AllocationCounter.getCurrentThreadAllocatedBytes() - bytes;
+	}
+
+	/*
+	 * A scorer timing the calls to score() of another one
+	 */
+	private static class TimedScorer extends Scorer {
+
+		private Scorer in;
+		long nanos = 0;
+
+		TimedScorer(Weight weight, Scorer in) {
+			super(weight);
+			this.in = in;
+		}
+
+		public int docID() {
+			return in.docID();
+		}
+
+		public float score() throws IOException {
+			long t = System.nanoTime();
+			float score = in.score();
+			nanos += System.nanoTime() - t;
+			return score;
+		}
+
+		public DocIdSetIterator iterator() {
+			return in.iterator();
+		}
+
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Profile of: " + query + "\n");
+		sb.append("Parsed:    " + parsedQuery + "\n");
+		sb.append("Rewritten: " + rewrittenQuery + "\n");
+		sb.append(String.format("%d multi-term queries expanded, %d terms after rewrite, %d segments, %d documents scored, %d fetched\n",
+				multiTermQueries, termsAfterRewrite, segments, documentsScored, documentsFetched));
+		sb.append(String.format("%-10s %10s %12s\n", "Phase", "ms", "allocated"));
+		row(sb, "parse", parseNanos, parseBytes);
+		row(sb, "rewrite", rewriteNanos, rewriteBytes);
+		row(sb, "weight", weightNanos, -2);
+		row(sb, "match", matchNanos, -2);
+		row(sb, "score", scoreNanos, -2);
+		row(sb, "collect", collectNanos, -2);
+		row(sb, " (search)", weightNanos + matchNanos + scoreNanos + collectNanos, searchBytes);
+		row(sb, "fetch", fetchNanos, fetchBytes);
+		row(sb, "total", totalNanos, totalBytes);
+		if (!clauses.isEmpty()) {
+			sb.append(String.format("%-8s %6s %10s %10s %10s  %s\n", "Occur", "terms", "cost", "matches", "count ms", "Clause"));
+			for (Clause c : clauses) {
+				sb.append(String.format("%-8s %6d %10d %10d %10.3f  %s\n", c.occur, c.terms, c.cost, c.matches, c.countNanos / 1e6, c.query));
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void row(StringBuilder sb, String phase, long nanos, long bytes) {
+		sb.append(String.format("%-10s %10.3f %12s\n", phase, nanos / 1e6, bytes == -2 ? "" : bytes < 0 ? "n/a" : bytes + " B"));
+	}
+
+}
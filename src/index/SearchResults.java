@@ -0,0 +1,181 @@
+package index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+import metrics.IndexMetrics;
+
+/**
+ * @author luca
+ *
+ * The results of a query, fetched a page at a time. Only ids and scores of the best hits are collected, one
+ * page after the other (searchAfter), and the stored fields of a hit are read only when it is asked for, so a
+ * query matching the whole index costs as much as its first page. Path and name of the last hits read are kept
+ * in a small cache. They are read from doc values, so building a hit costs the same for any document size, and
+ * the content of a document is read only when its preview is asked for.
+ * Results refer to the index as it was when the query was submitted: documents added later are not seen. They
+ * hold a reference to the reader of that time, so that its segments are kept until they are closed: results
+ * have to be closed once they are not shown anymore.
+ */
+public class SearchResults implements Closeable {
+
+	private static final int CACHED_HITS = 512;
+
+	private IndexSearcher searcher;
+	private boolean closed = false;
+	private final Object paging = new Object();		// one page collected at a time
+	private Query query;
+	private int pageSize;
+	private volatile long totalHits;
+	private ArrayList<ScoreDoc> hits = new ArrayList<ScoreDoc>();
+	private LinkedHashMap<Integer, Hit> cache = new LinkedHashMap<Integer, Hit>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Integer, Hit> eldest) {
+			return size() > CACHED_HITS;
+		}
+	};
+
+	/**
+	 * Runs the query and collects its first page.
+	 * @param searcher searcher on the reader to use for all pages
+	 * @param query the parsed query
+	 * @param pageSize hits collected for each page
+	 */
+	SearchResults(IndexSearcher searcher, Query query, int pageSize) throws IOException {
+		this(searcher, query, pageSize, searcher.search(query, Math.max(1, pageSize)));
+	}
+
+	/**
+	 * Same as the other constructor, but the first page has already been collected.
+	 * @param searcher searcher on the reader to use for all pages
+	 * @param query the parsed query
+	 * @param pageSize hits collected for each page
+	 * @param first the first page of hits
+	 */
+	SearchResults(IndexSearcher searcher, Query query, int pageSize, TopDocs first) {
+		searcher.getIndexReader().incRef();
+		this.searcher = searcher;
+		this.query = query;
+		this.pageSize = Math.max(1, pageSize);
+		totalHits = first.totalHits;
+		hits.addAll(Arrays.asList(first.scoreDocs));
+	}
+
+	/**
+	 * @return number of documents matching the query
+	 */
+	public long getTotalHits() {
+		return totalHits;
+	}
+
+	/**
+	 * @return number of hits collected so far (the ones that can be read with getHit)
+	 */
+	public synchronized int getLoaded() {
+		return hits.size();
+	}
+
+	/**
+	 * @return true if some hits have not been collected yet
+	 */
+	public synchronized boolean hasMore() {
+		return hits.size() < totalHits;
+	}
+
+	/**
+	 * Collects the next page of hits, after the ones already collected. Hits already collected can be read
+	 * meanwhile: the search runs without holding them, the page is only appended under their lock.
+	 * @return number of hits collected so far
+	 */
+	public int loadNextPage() throws IOException {
+		synchronized (paging) {
+			ScoreDoc last;
+			synchronized (this) {
+				if (!hasMore()) {
+					return hits.size();
+				}
+				last = hits.isEmpty() ? null : hits.get(hits.size() - 1);
+			}
+			TopDocs page = searcher.searchAfter(last, query, pageSize);
+			synchronized (this) {
+				hits.addAll(Arrays.asList(page.scoreDocs));
+				if (page.scoreDocs.length == 0) {
+					totalHits = hits.size();	// documents removed meanwhile
+				}
+				return hits.size();
+			}
+		}
+	}
+
+	/**
+	 * @param rank position of the hit, from 0 to getLoaded()-1
+	 * @return score of the hit
+	 */
+	public synchronized float getScore(int rank) {
+		return hits.get(rank).score;
+	}
+
+	/**
+	 * Returns a hit, reading path and name of its document.
+	 * @param rank position of the hit, from 0 to getLoaded()-1
+	 * @return the hit, or null if its document cannot be read anymore (the index has been reset)
+	 */
+	public synchronized Hit getHit(int rank) {
+		Hit hit = cache.get(rank);
+		IndexMetrics.get().storedFieldsLookup(hit != null);
+		if (hit == null) {
+			ScoreDoc sd = hits.get(rank);
+			try {
+				hit = Index.readHit(searcher.getIndexReader(), sd.doc, sd.score);
+				cache.put(rank, hit);
+			} catch (IOException | RuntimeException e) {
+				// Index closed after the query
+				return null;
+			}
+		}
+		return hit;
+	}
+
+	/**
+	 * Returns the beginning of the content of a hit. Content is read only now, from the stored fields or, if
+	 * the index does not store it, from the file of the document.
+	 * @param rank position of the hit, from 0 to getLoaded()-1
+	 * @param maxChars maximum length of the preview
+	 * @return the preview, or null if the document cannot be read anymore from the index
+	 */
+	public DocumentPreview getPreview(int rank, int maxChars) {
+		ScoreDoc sd;
+		synchronized (this) {
+			sd = hits.get(rank);
+		}
+		try {
+			return Index.readPreview(searcher.getIndexReader(), sd.doc, maxChars);
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Releases the reader of the results; hits not read yet cannot be read anymore. Closing twice does nothing.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return ;
+		}
+		closed = true;
+		try {
+			searcher.getIndexReader().decRef();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
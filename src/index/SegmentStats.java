@@ -0,0 +1,109 @@
+package index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author luca
+ *
+ * Segments of the index as the current reader sees them, returned by Index.getSegmentStats(). Many segments
+ * make queries slower (each one is searched on its own), and deleted documents keep taking space and are still
+ * visited by queries until their segment is merged: Index.compact() merges them away.
+ */
+public class SegmentStats {
+
+	/**
+	 * A segment of the index.
+	 */
+	public static class Segment {
+		private String name;
+		private int documents;
+		private int deleted;
+		private long sizeBytes;
+
+		Segment(String name, int documents, int deleted, long sizeBytes) {
+			this.name = name;
+			this.documents = documents;
+			this.deleted = deleted;
+			this.sizeBytes = sizeBytes;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return documents in the segment, deleted ones included
+		 */
+		public int getDocuments() {
+			return documents;
+		}
+
+		public int getDeleted() {
+			return deleted;
+		}
+
+		/**
+		 * @return size of the files of the segment
+		 */
+		public long getSizeBytes() {
+			return sizeBytes;
+		}
+	}
+
+	private ArrayList<Segment> segments = new ArrayList<Segment>();
+
+	void add(Segment segment) {
+		segments.add(segment);
+	}
+
+	public List<Segment> getSegments() {
+		return segments;
+	}
+
+	public int getSegmentCount() {
+		return segments.size();
+	}
+
+	public long getSizeBytes() {
+		long size = 0;
+		for (Segment s : segments)
+			size += s.sizeBytes;
+		return size;
+	}
+
+	public int getDocuments() {
+		int documents = 0;
+		for (Segment s : segments)
+			documents += s.documents;
+		return documents;
+	}
+
+	public int getDeleted() {
+		int deleted = 0;
+		for (Segment s : segments)
+			deleted += s.deleted;
+		return deleted;
+	}
+
+	/**
+	 * @return fraction of the documents in the segments that are deleted, from 0 to 1
+	 */
+	public double getDeletedRatio() {
+		int documents = getDocuments();
+		return documents == 0 ? 0.0 : (double) getDeleted() / documents;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%d segments, %.2f MB, %d documents, %.1f%% deleted\n", getSegmentCount(),
+				getSizeBytes() / 1e6, getDocuments(), getDeletedRatio() * 100));
+		sb.append(String.format("%-10s %10s %10s %10s\n", "Segment", "documents", "deleted", "KB"));
+		for (Segment s : segments) {
+			sb.append(String.format("%-10s %10d %10d %10.1f\n", s.name, s.documents, s.deleted, s.sizeBytes / 1e3));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,106 @@
+package index;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.SingleInstanceLockFactory;
+
+/**
+ * @author luca
+ *
+ * Where the in-memory index keeps its bytes:
+ * - HEAP (the default): a ByteBuffersDirectory of heap buffers, growing up to 64MB each, which replaces the
+ *   deprecated RAMDirectory and its many small byte arrays
+ * - OFF_HEAP: direct buffers, growing up to 64MB each, outside the heap, so the garbage collector does not have
+ *   to visit (nor copy) the index; buffers of deleted files are freed when collected
+ * - TMPFS: files in a temporary folder of /dev/shm (or of the temporary folder of the system, if there is no
+ *   /dev/shm), memory mapped; the folder is deleted when the index is reset or the program ends
+ * Direct and mapped memory are not limited by -Xmx (direct memory is limited by -XX:MaxDirectMemorySize).
+ */
+public enum StorageMode {
+
+	HEAP, OFF_HEAP, TMPFS;
+
+	private static final String SHM = "/dev/shm";
+	private static final Set<File> folders = ConcurrentHashMap.newKeySet();	// of TMPFS directories not deleted yet
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			for (File folder : folders) {
+				deleteFolder(folder);
+			}
+		}, "index-cleanup"));
+	}
+
+	/*
+	 * Opens a new, empty directory
+	 */
+	Directory open() throws IOException {
+		switch (this) {
+		case OFF_HEAP:
+			return new ByteBuffersDirectory(new SingleInstanceLockFactory(),
+					() -> new ByteBuffersDataOutput(ByteBuffersDataOutput.DEFAULT_MIN_BITS_PER_BLOCK,
+							ByteBuffersDataOutput.DEFAULT_MAX_BITS_PER_BLOCK,
+							ByteBuffer::allocateDirect, ByteBuffersDataOutput.NO_REUSE),
+					ByteBuffersDirectory.OUTPUT_AS_MANY_BUFFERS);
+		case TMPFS:
+			File shm = new File(SHM);
+			Path parent = shm.isDirectory() && shm.canWrite() ? shm.toPath() : Paths.get(System.getProperty("java.io.tmpdir"));
+			Path folder = Files.createTempDirectory(parent, "goodsearch-index");
+			folders.add(folder.toFile());
+			return new MMapDirectory(folder);
+		default:
+			return new ByteBuffersDirectory();
+		}
+	}
+
+	/*
+	 * Closes a directory, deleting its files if it has any on disk
+	 */
+	static void close(Directory dir) throws IOException {
+		File folder = dir instanceof FSDirectory ? ((FSDirectory) dir).getDirectory().toFile() : null;
+		dir.close();
+		if (folder != null) {
+			deleteFolder(folder);
+			folders.remove(folder);
+		}
+	}
+
+	private static void deleteFolder(File folder) {
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		folder.delete();
+	}
+
+	/**
+	 * Bytes of all direct buffers of the JVM, or of all mapped files, as a BufferPoolMXBean reports them.
+	 * @param pool "direct" or "mapped"
+	 * @return bytes used, or 0 if the pool is unknown
+	 */
+	static long getBufferPoolBytes(String pool) {
+		for (BufferPoolMXBean b : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (b.getName().equals(pool)) {
+				return b.getMemoryUsed();
+			}
+		}
+		return 0;
+	}
+
+}
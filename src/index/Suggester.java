@@ -0,0 +1,248 @@
+package index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup.LookupResult;
+import org.apache.lucene.search.suggest.fst.WFSTCompletionLookup;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * @author luca
+ *
+ * Suggestions for the query being typed, from two weighted FSTs (WFSTCompletionLookup): one with the terms of
+ * the fields name and content of the index, weighted by the number of documents containing them, the other
+ * with the queries submitted, weighted by how many times they have been submitted.
+ * A lookup only walks the FSTs, so it takes microseconds. The FST of terms is built again in background after
+ * the index changes (only if its reader changed) and replaced when ready, so it can be used meanwhile; the FST
+ * of the queries is built again at each new query, but it only holds the last MAX_HISTORY different queries,
+ * so it stays small.
+ */
+public class Suggester {
+
+	private static final String[] FIELDS = { "name", "content" };
+	public static final int MAX_HISTORY = 1000;		// different queries suggested, the least recent are forgotten
+
+	private volatile WFSTCompletionLookup terms = null;
+	private volatile WFSTCompletionLookup history = null;
+	private long version = -1;						// version of the reader the terms are taken from
+	// Times each query has been submitted, the least recently submitted first; guarded by this
+	private LinkedHashMap<String, Long> queries = new LinkedHashMap<String, Long>() {
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > MAX_HISTORY;
+		}
+	};
+
+	/**
+	 * Builds again the suggestions of terms, if the index changed after the last build. It can take a while on a
+	 * large index, so it should not be called by the gui thread.
+	 * @param index index to take terms from
+	 * @return true if suggestions have been built again
+	 */
+	public boolean update(Index index) {
+		IndexReader reader = index.acquireReader();
+		long current = reader instanceof DirectoryReader ? ((DirectoryReader) reader).getVersion() : -1;
+		synchronized (this) {
+			if (current == version && current != -1) {
+				index.releaseReader(reader);
+				return false;
+			}
+			version = current;
+		}
+		try {
+			WFSTCompletionLookup lookup = new WFSTCompletionLookup(new ByteBuffersDirectory(), "terms");
+			lookup.build(new TermsIterator(reader));
+			terms = lookup;
+			return true;
+		} catch (IOException | RuntimeException e) {
+			// Index reset meanwhile, the next update reads the new one
+			e.printStackTrace();
+			synchronized (this) {
+				version = -1;
+			}
+			return false;
+		} finally {
+			index.releaseReader(reader);
+		}
+	}
+
+	/**
+	 * Records a query submitted by the user, to suggest it again. The suggestions of queries are built again,
+	 * so it should not be called by the gui thread.
+	 * @param query the query text
+	 */
+	public void addQuery(String query) {
+		addQueries(Collections.singletonList(query));
+	}
+
+	/**
+	 * Records many queries at once (the ones of a query log).
+	 * @param submitted the query texts, a query submitted more times is repeated
+	 */
+	public synchronized void addQueries(Collection<String> submitted) {
+		for (String query : submitted) {
+			String key = query.trim();
+			if (!key.isEmpty()) {
+				// Inserted again, so that it becomes the most recent one
+				Long count = queries.remove(key);
+				queries.put(key, count == null ? 1L : count + 1);
+			}
+		}
+		if (queries.isEmpty())
+			return ;
+		try {
+			WFSTCompletionLookup lookup = new WFSTCompletionLookup(new ByteBuffersDirectory(), "history");
+			lookup.build(new MapIterator(queries));
+			history = lookup;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Suggests how to complete a query: first queries submitted starting with the text, then the text with its
+	 * last word completed by terms of the index (the most frequent first).
+	 * @param text text typed so far
+	 * @param num maximum number of suggestions
+	 * @return the suggestions, possibly none
+	 */
+	public List<String> suggest(String text, int num) {
+		LinkedHashSet<String> suggestions = new LinkedHashSet<String>();
+		try {
+			WFSTCompletionLookup h = history;
+			if (h != null && !text.trim().isEmpty()) {
+				for (LookupResult r : h.lookup(text, false, num))
+					if (!r.key.toString().equals(text))
+						suggestions.add(r.key.toString());
+			}
+
+			// The last word, after its field name if any ("content:luc")
+			int start = Math.max(text.lastIndexOf(' '), text.lastIndexOf(':')) + 1;
+			String prefix = text.substring(start).toLowerCase(Locale.ROOT);
+			WFSTCompletionLookup t = terms;
+			if (t != null && !prefix.isEmpty() && Character.isLetterOrDigit(prefix.charAt(0))) {
+				for (LookupResult r : t.lookup(prefix, false, num)) {
+					if (suggestions.size() >= num)
+						break;
+					if (!r.key.toString().equals(prefix))
+						suggestions.add(text.substring(0, start) + r.key);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		ArrayList<String> list = new ArrayList<String>(suggestions);
+		return list.size() > num ? list.subList(0, num) : list;
+	}
+
+	/**
+	 * @return memory taken by the suggestions, in bytes
+	 */
+	public long ramBytesUsed() {
+		WFSTCompletionLookup t = terms, h = history;
+		return (t != null ? t.ramBytesUsed() : 0) + (h != null ? h.ramBytesUsed() : 0);
+	}
+
+	/*
+	 * Terms of all fields, one field after the other, weighted by document frequency. A term in more fields is
+	 * given more times, and the FST keeps its best weight.
+	 */
+	private static class TermsIterator implements InputIterator {
+
+		private IndexReader reader;
+		private int field = -1;
+		private TermsEnum termsEnum = null;
+
+		TermsIterator(IndexReader reader) {
+			this.reader = reader;
+		}
+
+		public BytesRef next() throws IOException {
+			while (true) {
+				if (termsEnum != null) {
+					BytesRef term = termsEnum.next();
+					if (term != null)
+						return term;
+				}
+				if (++field >= FIELDS.length)
+					return null;
+				Terms t = MultiFields.getTerms(reader, FIELDS[field]);
+				termsEnum = t == null ? null : t.iterator();
+			}
+		}
+
+		public long weight() {
+			try {
+				return termsEnum.docFreq();
+			} catch (IOException e) {
+				return 1;
+			}
+		}
+
+		public BytesRef payload() {
+			return null;
+		}
+
+		public boolean hasPayloads() {
+			return false;
+		}
+
+		public Set<BytesRef> contexts() {
+			return null;
+		}
+
+		public boolean hasContexts() {
+			return false;
+		}
+	}
+
+	private static class MapIterator implements InputIterator {
+
+		private List<Map.Entry<String, Long>> entries;
+		private int next = 0;
+
+		MapIterator(Map<String, Long> map) {
+			entries = new ArrayList<Map.Entry<String, Long>>(map.entrySet());
+		}
+
+		public BytesRef next() {
+			return next < entries.size() ? new BytesRef(entries.get(next++).getKey()) : null;
+		}
+
+		public long weight() {
+			return entries.get(next - 1).getValue();
+		}
+
+		public BytesRef payload() {
+			return null;
+		}
+
+		public boolean hasPayloads() {
+			return false;
+		}
+
+		public Set<BytesRef> contexts() {
+			return null;
+		}
+
+		public boolean hasContexts() {
+			return false;
+		}
+	}
+
+}
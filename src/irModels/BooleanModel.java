@@ -13,6 +13,12 @@ import org.apache.lucene.search.similarities.Similarity;
 
 public class BooleanModel extends Model{
 	
+	@Override
+	public int getMaxEdits() {
+		// Terms are matched exactly
+		return 0;
+	}
+	
 	@Override
 	/*
 	 * (non-Javadoc)
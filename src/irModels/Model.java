@@ -5,6 +5,7 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.similarities.Similarity;
 
+import gui.Main_Window;
 import index.Index;
 
 /**
@@ -14,6 +15,51 @@ import index.Index;
  */
 public abstract class Model{
 	
+	/**
+	 * Returns a new instance of each implemented model, in the same order they are proposed by the GUI.
+	 * Comparative benchmark runs all of these models on the same index.
+	 * @return list of all the available models
+	 */
+	public static LinkedList<Model> getRegisteredModels() {
+		LinkedList<Model> models = new LinkedList<Model>();
+		models.add(new VectorSpaceModel());
+		models.add(new BooleanModel());
+		models.add(new BM25());
+		models.add(new FuzzyModel());
+		return models;
+	}
+	
+	/**
+	 * Looks for a registered model by its name (case is ignored).
+	 * @param name is the name of the model, as returned by getName()
+	 * @return a new instance of the model, or null if no model has that name
+	 */
+	public static Model getModel(String name) {
+		for (Model m : getRegisteredModels()) {
+			if (m.getName().equalsIgnoreCase(name)) {
+				return m;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * A short name of the model, used in reports.
+	 * @return name of the model
+	 */
+	public String getName() {
+		return getClass().getSimpleName();
+	}
+	
+	/**
+	 * The edit distance the model allows between query terms and index terms (0 for exact matching).
+	 * By default it is the one chosen in the gui.
+	 * @return maximum number of edits
+	 */
+	public int getMaxEdits() {
+		return Main_Window.getEditdistance();
+	}
+	
 	/**
 	 * This method is a short call to method submitQuery of Index class. It allows a slim call, passing
 	 * model to use (itself), fields on which apply the query, query string and verbose, that toggle if index
@@ -0,0 +1,51 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * @author luca
+ *
+ * Reads the number of bytes allocated on the heap by the current thread, when the JVM supports it (HotSpot and
+ * OpenJDK do). Measuring it before and after an operation gives the memory that operation allocated.
+ */
+public class AllocationCounter {
+
+	private static com.sun.management.ThreadMXBean threadBean = null;
+
+	static {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				threadBean = (com.sun.management.ThreadMXBean) bean;
+				if (threadBean.isThreadAllocatedMemorySupported()) {
+					threadBean.setThreadAllocatedMemoryEnabled(true);
+				} else {
+					threadBean = null;
+				}
+			}
+		} catch (Throwable e) {
+			threadBean = null;
+		}
+	}
+
+	private AllocationCounter() {}
+
+	/**
+	 * @return true if allocation can be measured on this JVM
+	 */
+	public static boolean isSupported() {
+		return threadBean != null;
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread since it started.
+	 * @return allocated bytes, or -1 if not supported
+	 */
+	public static long getCurrentThreadAllocatedBytes() {
+		if (threadBean == null) {
+			return -1;
+		}
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+}
@@ -0,0 +1,262 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.QueryCache;
+
+import index.Deduplicator;
+import index.Index;
+
+/**
+ * @author luca
+ *
+ * Metrics of indexing and search, published as an MBean named "GoodSearch:type=IndexMetrics" on the platform
+ * MBean server, so they can be watched with any JMX client while the gui, the server or a benchmark run.
+ * Index records each document added, each reopen of its reader and each query; the size of the index and
+ * cache statistics are read when asked. Recording only updates lock-free counters and histograms, so it costs
+ * nothing compared to the operations it measures.
+ */
+public class IndexMetrics implements IndexMetricsMBean {
+
+	public static final String NAME = "GoodSearch:type=IndexMetrics";
+
+	private static final IndexMetrics instance = new IndexMetrics();
+
+	private volatile Index index = null;
+	private LongAdder documents = new LongAdder();
+	private LongAdder bytes = new LongAdder();
+	private LatencyHistogram indexing = new LatencyHistogram();
+	private LatencyHistogram refresh = new LatencyHistogram();
+	private LongAdder queryErrors = new LongAdder();
+	private LatencyHistogram queries = new LatencyHistogram();
+	private ConcurrentHashMap<String, LatencyHistogram> queriesByModel = new ConcurrentHashMap<String, LatencyHistogram>();
+	private LongAdder storedFieldsHits = new LongAdder();
+	private LongAdder storedFieldsMisses = new LongAdder();
+
+	private IndexMetrics() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(NAME));
+		} catch (Exception e) {
+			// Already registered by another class loader, or no JMX: metrics are still recorded
+			System.err.println("IndexMetrics not published: " + e);
+		}
+	}
+
+	/**
+	 * @return the metrics, published at the first call
+	 */
+	public static IndexMetrics get() {
+		return instance;
+	}
+
+	/**
+	 * @param index is the index whose size and segments are reported
+	 */
+	public void setIndex(Index index) {
+		this.index = index;
+	}
+
+	/**
+	 * Records a document added to the index.
+	 * @param size is the size of the document in bytes
+	 * @param nanos is the time taken, from reading the document to having it searchable
+	 */
+	public void documentIndexed(long size, long nanos) {
+		documents.increment();
+		bytes.add(size);
+		indexing.recordValue(nanos);
+	}
+
+	/**
+	 * Records a reopen of the reader of the index.
+	 * @param nanos is the time taken
+	 */
+	public void readerRefreshed(long nanos) {
+		refresh.recordValue(nanos);
+	}
+
+	/**
+	 * Records a query.
+	 * @param model is the model name
+	 * @param editDistance is the edit distance used by the model
+	 * @param nanos is the time taken
+	 * @param failed is true if the query failed
+	 */
+	public void queryExecuted(String model, int editDistance, long nanos, boolean failed) {
+		if (failed) {
+			queryErrors.increment();
+		}
+		queries.recordValue(nanos);
+		queriesByModel.computeIfAbsent(model + " ~" + editDistance, k -> new LatencyHistogram()).recordValue(nanos);
+	}
+
+	/**
+	 * Records a lookup of a hit in the cache of stored fields of SearchResults.
+	 * @param hit is true if the fields were cached
+	 */
+	public void storedFieldsLookup(boolean hit) {
+		(hit ? storedFieldsHits : storedFieldsMisses).increment();
+	}
+
+	public long getDocumentsIndexed() {
+		return documents.sum();
+	}
+
+	public long getBytesIngested() {
+		return bytes.sum();
+	}
+
+	public String getIndexingLatency() {
+		return indexing.getSummary();
+	}
+
+	public double getIndexingLatencyP99() {
+		return indexing.getValueAtPercentile(99) / 1e6;
+	}
+
+	public long getReaderRefreshes() {
+		return refresh.getCount();
+	}
+
+	public double getReaderRefreshTotalMillis() {
+		return refresh.getMean() * refresh.getCount() / 1e6;
+	}
+
+	public String getReaderRefreshLatency() {
+		return refresh.getSummary();
+	}
+
+	public long getQueryCount() {
+		return queries.getCount();
+	}
+
+	public long getQueryErrors() {
+		return queryErrors.sum();
+	}
+
+	public String[] getQueryLatencyByModel() {
+		ArrayList<String> lines = new ArrayList<String>();
+		lines.add("all: " + queries.getSummary());
+		for (Map.Entry<String, LatencyHistogram> e : new TreeMap<String, LatencyHistogram>(queriesByModel).entrySet()) {
+			lines.add(e.getKey() + ": " + e.getValue().getSummary());
+		}
+		return lines.toArray(new String[0]);
+	}
+
+	public double getQueryLatencyPercentile(String model, int editDistance, double percentile) {
+		LatencyHistogram h = new LatencyHistogram();
+		for (Map.Entry<String, LatencyHistogram> e : queriesByModel.entrySet()) {
+			String key = e.getKey();
+			int sep = key.lastIndexOf(" ~");
+			if ((model.equals("all") || key.substring(0, sep).equalsIgnoreCase(model))
+					&& (editDistance < 0 || key.substring(sep + 2).equals("" + editDistance))) {
+				h.add(e.getValue());
+			}
+		}
+		return h.getValueAtPercentile(percentile) / 1e6;
+	}
+
+	/*
+	 * Queries share the default cache of Lucene, as each search makes a new IndexSearcher
+	 */
+	private static LRUQueryCache getQueryCache() {
+		QueryCache cache = IndexSearcher.getDefaultQueryCache();
+		return cache instanceof LRUQueryCache ? (LRUQueryCache) cache : null;
+	}
+
+	public double getQueryCacheHitRatio() {
+		LRUQueryCache cache = getQueryCache();
+		return cache == null || cache.getTotalCount() == 0 ? 0.0 : (double) cache.getHitCount() / cache.getTotalCount();
+	}
+
+	public long getQueryCacheSize() {
+		LRUQueryCache cache = getQueryCache();
+		return cache == null ? 0 : cache.getCacheSize();
+	}
+
+	public double getStoredFieldsCacheHitRatio() {
+		long hits = storedFieldsHits.sum(), total = hits + storedFieldsMisses.sum();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	public int getDocuments() {
+		return index == null ? 0 : index.getSize();
+	}
+
+	public int getDeletedDocuments() {
+		if (index == null) {
+			return 0;
+		}
+		IndexReader reader = index.acquireReader();
+		try {
+			return reader.numDeletedDocs();
+		} finally {
+			index.releaseReader(reader);
+		}
+	}
+
+	public long getIndexSizeBytes() {
+		return index == null ? 0 : index.getIndexSize();
+	}
+
+	public int getSegmentCount() {
+		if (index == null) {
+			return 0;
+		}
+		IndexReader reader = index.acquireReader();
+		try {
+			return reader.leaves().size();
+		} finally {
+			index.releaseReader(reader);
+		}
+	}
+
+	public String getStorageMode() {
+		return index == null ? "" : index.getStorageMode().name();
+	}
+
+	public long getIndexHeapBytes() {
+		return index == null ? 0 : index.getMemoryFootprint().getHeapBytes();
+	}
+
+	public long getDirectMemoryBytes() {
+		return index == null ? 0 : index.getMemoryFootprint().getDirectBytes();
+	}
+
+	public long getMappedMemoryBytes() {
+		return index == null ? 0 : index.getMemoryFootprint().getMappedBytes();
+	}
+
+	public long getDuplicatesFound() {
+		Deduplicator d = index == null ? null : index.getDeduplicator();
+		return d == null ? 0 : d.getExactDuplicates() + d.getNearDuplicates();
+	}
+
+	public long getDuplicateBytesSaved() {
+		Deduplicator d = index == null ? null : index.getDeduplicator();
+		return d == null ? 0 : d.getBytesSaved();
+	}
+
+	public void reset() {
+		documents.reset();
+		bytes.reset();
+		indexing.reset();
+		refresh.reset();
+		queryErrors.reset();
+		queries.reset();
+		queriesByModel.clear();
+		storedFieldsHits.reset();
+		storedFieldsMisses.reset();
+	}
+
+}
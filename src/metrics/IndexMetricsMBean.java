@@ -0,0 +1,88 @@
+package metrics;
+
+/**
+ * @author luca
+ *
+ * Management interface of IndexMetrics, as seen by JMX clients (jconsole, VisualVM, ...). Latencies are in
+ * milliseconds, percentiles of queries are given for each model and edit distance.
+ */
+public interface IndexMetricsMBean {
+
+	long getDocumentsIndexed();
+
+	long getBytesIngested();
+
+	String getIndexingLatency();
+
+	double getIndexingLatencyP99();
+
+	long getReaderRefreshes();
+
+	double getReaderRefreshTotalMillis();
+
+	String getReaderRefreshLatency();
+
+	long getQueryCount();
+
+	long getQueryErrors();
+
+	/**
+	 * @return a line for each model and edit distance ("BM25 ~1: count=... p50=..."), the total first
+	 */
+	String[] getQueryLatencyByModel();
+
+	/**
+	 * @param model is the model name, or "all"
+	 * @param editDistance is the edit distance, or -1 for all
+	 * @param percentile is the percentile (as 99.9)
+	 * @return the latency in milliseconds, 0 if no such query has been run
+	 */
+	double getQueryLatencyPercentile(String model, int editDistance, double percentile);
+
+	double getQueryCacheHitRatio();
+
+	long getQueryCacheSize();
+
+	double getStoredFieldsCacheHitRatio();
+
+	int getDocuments();
+
+	int getDeletedDocuments();
+
+	long getIndexSizeBytes();
+
+	int getSegmentCount();
+
+	/**
+	 * @return where the index keeps its bytes: HEAP, OFF_HEAP or TMPFS
+	 */
+	String getStorageMode();
+
+	long getIndexHeapBytes();
+
+	/**
+	 * @return bytes of all direct buffers of the JVM (the index, when OFF_HEAP)
+	 */
+	long getDirectMemoryBytes();
+
+	/**
+	 * @return bytes of all files mapped by the JVM (the index, when TMPFS)
+	 */
+	long getMappedMemoryBytes();
+
+	/**
+	 * @return exact and near duplicates found at ingest, 0 if deduplication is off
+	 */
+	long getDuplicatesFound();
+
+	/**
+	 * @return bytes of content of duplicates not indexed
+	 */
+	long getDuplicateBytesSaved();
+
+	/**
+	 * Clears all counters and histograms.
+	 */
+	void reset();
+
+}
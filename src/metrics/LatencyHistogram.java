@@ -0,0 +1,165 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author luca
+ *
+ * A log-linear histogram of latencies (in nanoseconds), in the same spirit of HdrHistogram. Values smaller than
+ * 256 are counted exactly, then each power of two is split into 128 linear buckets, so every recorded value is
+ * approximated with a relative error smaller than 1%, whatever its magnitude, using a fixed amount of memory.
+ * Recording is lock-free, so many threads can record on the same histogram.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;	// 128 linear buckets for each power of two
+	private static final int EXACT = SUB_BUCKETS * 2;				// values under 256 are counted exactly
+	private static final int SIZE = EXACT + (64 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+	private AtomicLongArray counts = new AtomicLongArray(SIZE);
+	private LongAdder totalCount = new LongAdder();
+	private LongAdder totalSum = new LongAdder();
+	private LongAccumulator max = new LongAccumulator(Math::max, 0);
+	private LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+	/**
+	 * Records a value in the histogram. Negative values are recorded as 0.
+	 * @param value is the latency, in nanoseconds
+	 */
+	public void recordValue(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(indexOf(value));
+		totalCount.increment();
+		totalSum.add(value);
+		max.accumulate(value);
+		min.accumulate(value);
+	}
+
+	/**
+	 * Records a value correcting coordinated omission: if the value is greater than the interval expected
+	 * between two requests, the requests that would have been sent meanwhile (and that have been delayed by
+	 * this one) are recorded too, with linearly decreasing latencies.
+	 * @param value is the latency, in nanoseconds
+	 * @param expectedInterval is the expected interval between two requests, in nanoseconds (0 disables correction)
+	 */
+	public void recordValueWithExpectedInterval(long value, long expectedInterval) {
+		recordValue(value);
+		if (expectedInterval <= 0) {
+			return ;
+		}
+		for (long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval) {
+			recordValue(missing);
+		}
+	}
+
+	/**
+	 * Adds all values of another histogram to this one.
+	 * @param other is the histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < SIZE; i++) {
+			long c = other.counts.get(i);
+			if (c != 0) {
+				counts.addAndGet(i, c);
+			}
+		}
+		totalCount.add(other.getCount());
+		totalSum.add(other.totalSum.sum());
+		if (other.getCount() > 0) {
+			max.accumulate(other.getMax());
+			min.accumulate(other.getMin());
+		}
+	}
+
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < SIZE; i++) {
+			counts.set(i, 0);
+		}
+		totalCount.reset();
+		totalSum.reset();
+		max.reset();
+		min.reset();
+	}
+
+	public long getCount() {
+		return totalCount.sum();
+	}
+
+	public long getMax() {
+		return getCount() == 0 ? 0 : max.get();
+	}
+
+	public long getMin() {
+		return getCount() == 0 ? 0 : min.get();
+	}
+
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0.0 : (double) totalSum.sum() / count;
+	}
+
+	/**
+	 * Returns the value under which the given percentage of recorded values falls.
+	 * @param percentile is a value between 0 and 100
+	 * @return the value at that percentile, in nanoseconds
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count);
+		if (target < 1) {
+			target = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < SIZE; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(valueOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * A short summary of the histogram, with values converted to milliseconds.
+	 * @return count, mean and main percentiles
+	 */
+	public String getSummary() {
+		return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+				getCount(), getMean() / 1e6,
+				getValueAtPercentile(50) / 1e6, getValueAtPercentile(90) / 1e6,
+				getValueAtPercentile(99) / 1e6, getValueAtPercentile(99.9) / 1e6,
+				getMax() / 1e6);
+	}
+
+	private static int indexOf(long value) {
+		if (value < EXACT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return EXACT + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	/*
+	 * Middle value of the range of values counted by bucket i
+	 */
+	private static long valueOf(int i) {
+		if (i < EXACT) {
+			return i;
+		}
+		int shift = (i - EXACT) / SUB_BUCKETS + 1;
+		long sub = (i - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+		return (sub << shift) + ((1L << shift) >>> 1);
+	}
+
+}
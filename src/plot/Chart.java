@@ -0,0 +1,21 @@
+package plot;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Something that can be drawn as a single image: a plot, or a grid of plots.
+ */
+public interface Chart {
+
+	/**
+	 * Draws the chart into a new image, without saving it.
+	 */
+	BufferedImage render();
+
+	/**
+	 * Saves the chart to fileName.type: "svg" for vector graphics, otherwise an image type known to ImageIO.
+	 */
+	void save(String fileName, String type) throws IOException;
+
+}
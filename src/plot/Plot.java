@@ -3,21 +3,27 @@ package plot;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import javax.imageio.ImageIO;
@@ -28,12 +34,13 @@ import javax.imageio.ImageIO;
  * 
  * @author Yuriy Guskov
  */
-public class Plot {
+public class Plot implements Chart {
 
 	public enum Line { NONE, SOLID, DASHED };
 	public enum Marker { NONE, CIRCLE, SQUARE, DIAMOND, COLUMN, BAR };
 	public enum AxisFormat { NUMBER, NUMBER_KGM, NUMBER_INT, TIME_HM, TIME_HMS, DATE, DATETIME_HM, DATETIME_HMS }
 	public enum LegendFormat { NONE, TOP, RIGHT, BOTTOM }
+	public enum Downsample { NONE, MIN_MAX, LTTB }
 	
 	private enum HorizAlign { LEFT, CENTER, RIGHT }
 	private enum VertAlign { TOP, CENTER, BOTTOM }
@@ -198,7 +205,7 @@ public class Plot {
 		return this;
 	}
 
-	private void calc(Graphics2D g) {
+	private void calc(Canvas g) {
 		plotArea.calc(g);
 	}
 	
@@ -210,29 +217,504 @@ public class Plot {
 	
 	private BufferedImage draw() {
 		BufferedImage image = new BufferedImage(opts.width, opts.height, BufferedImage.TYPE_INT_RGB);
-		Graphics2D g = image.createGraphics();
+		Canvas g = new ImageCanvas(image.createGraphics());
 		try {
-			calc(g);
-			drawBackground(g);
-			plotArea.draw(g);
-			for (DataSeries series : dataSeriesMap.values())
-				series.draw(g);
-			return image;
+			draw(g);
 		} finally {
 			g.dispose();
 		}
+		return image;
+	}
+	
+	private void draw(Canvas g) {
+		calc(g);
+		drawBackground(g);
+		plotArea.draw(g);
+		for (DataSeries series : dataSeriesMap.values())
+			series.draw(g);
 	}
 
-	private void drawBackground(Graphics2D g) {
+	private void drawBackground(Canvas g) {
 		g.setColor(opts.backgroundColor); 
 		g.fillRect(0, 0, opts.width, opts.height);
 	}
 
+	/**
+	 * Saves the plot to fileName.type. Type "svg" writes vector graphics straight to the file, any other type is
+	 * rendered to an image and encoded by ImageIO.
+	 */
 	public void save(String fileName, String type) throws IOException {
+		if ("svg".equalsIgnoreCase(type)) {
+			saveSvg(fileName + "." + type);
+			return ;
+		}
+		write(render(), fileName, type);
+	}
+	
+	private void saveSvg(String fileName) throws IOException {
+		SvgCanvas canvas = new SvgCanvas(fileName, opts.width, opts.height);
+		try {
+			clear();
+			draw(canvas);
+		} finally {
+			canvas.dispose();
+		}
+		if (canvas.error != null)
+			throw canvas.error;
+	}
+	
+	/*
+	 * Range of the first axis, for sharing it with other plots: the fixed range if set, otherwise the range of data
+	 */
+	private Range getRange(boolean isX) {
+		Range range = null;
+		for (Axis axis : (isX ? xAxes : yAxes).values())
+			if (!axis.opts.dynamicRange)
+				range = union(range, axis.opts.range);
+		if (range == null)
+			for (DataSeries series : dataSeriesMap.values())
+				range = union(range, isX ? series.xRange() : series.yRange());
+		return range;
+	}
+	
+	private void setRange(boolean isX, Range range) {
+		Map<String, Axis> axes = isX ? xAxes : yAxes;
+		if (axes.isEmpty())
+			axes.put(isX ? "x" : "y", new Axis("", null));
+		for (Axis axis : axes.values())
+			axis.opts.range(range.min, range.max);
+	}
+	
+	private static Range union(Range a, Range b) {
+		if (a == null)
+			return b == null ? null : new Range(b);
+		if (b != null) {
+			if (b.min < a.min)
+				a.setMin(b.min);
+			if (b.max > a.max)
+				a.setMax(b.max);
+		}
+		return a;
+	}
+	
+	public static Grid grid(GridOptions opts) {
+		return new Grid(opts);
+	}
+	
+	public static GridOptions gridOpts() {
+		return new GridOptions();
+	}
+	
+	public static class GridOptions {
+		
+		private String title = "";
+		private int columns = 4;
+		private int panelWidth = 300;
+		private int panelHeight = 220;
+		private boolean sharedX = true;
+		private boolean sharedY = true;
+		private Color backgroundColor = Color.WHITE;
+		private Color foregroundColor = Color.BLACK;
+		private Font titleFont = new Font("Arial", Font.BOLD, 16);
+		private int padding = 10;
+		
+		private GridOptions() {}
+		
+		public GridOptions title(String title) {
+			this.title = title;
+			return this;
+		}
+		
+		public GridOptions columns(int columns) {
+			this.columns = Math.max(1, columns);
+			return this;
+		}
+		
+		public GridOptions panelSize(int width, int height) {
+			this.panelWidth = width;
+			this.panelHeight = height;
+			return this;
+		}
+		
+		/**
+		 * With shared axes all panels get the same range (the union of their ranges), so they can be compared
+		 * at a glance. Both are shared by default.
+		 */
+		public GridOptions sharedAxes(boolean x, boolean y) {
+			this.sharedX = x;
+			this.sharedY = y;
+			return this;
+		}
+		
+		public GridOptions bgColor(Color color) {
+			this.backgroundColor = color;
+			return this;
+		}
+		
+		public GridOptions fgColor(Color color) {
+			this.foregroundColor = color;
+			return this;
+		}
+		
+		public GridOptions titleFont(Font font) {
+			this.titleFont = font;
+			return this;
+		}
+		
+		public GridOptions padding(int padding) {
+			this.padding = padding;
+			return this;
+		}
+		
+	}
+	
+	/**
+	 * Small multiples: plots drawn as panels of a single image, row by row, under a common title. Size of
+	 * panels is set by the grid, overriding width and height of each plot.
+	 */
+	public static class Grid implements Chart {
+		
+		private GridOptions opts = new GridOptions();
+		private List<Plot> panels = new ArrayList<Plot>();
+		
+		private Grid(GridOptions opts) {
+			if (opts != null)
+				this.opts = opts;
+		}
+		
+		public GridOptions opts() {
+			return opts;
+		}
+		
+		public Grid panel(Plot plot) {
+			plot.opts.width = opts.panelWidth;
+			plot.opts.height = opts.panelHeight;
+			plot.boundRect.setSize(opts.panelWidth, opts.panelHeight);
+			panels.add(plot);
+			return this;
+		}
+		
+		public int getWidth() {
+			return opts.padding * 2 + opts.panelWidth * Math.min(opts.columns, Math.max(1, panels.size()));
+		}
+		
+		public int getHeight() {
+			int rows = Math.max(1, (panels.size() + opts.columns - 1) / opts.columns);
+			return getTitleHeight() + opts.panelHeight * rows + opts.padding;
+		}
+		
+		private int getTitleHeight() {
+			return opts.title.isEmpty() ? opts.padding : opts.padding * 3 + opts.titleFont.getSize();
+		}
+		
+		public BufferedImage render() {
+			BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+			Canvas g = new ImageCanvas(image.createGraphics());
+			try {
+				draw(g);
+			} finally {
+				g.dispose();
+			}
+			return image;
+		}
+		
+		public void save(String fileName, String type) throws IOException {
+			if (!"svg".equalsIgnoreCase(type)) {
+				write(render(), fileName, type);
+				return ;
+			}
+			SvgCanvas canvas = new SvgCanvas(fileName + "." + type, getWidth(), getHeight());
+			try {
+				draw(canvas);
+			} finally {
+				canvas.dispose();
+			}
+			if (canvas.error != null)
+				throw canvas.error;
+		}
+		
+		private void draw(Canvas g) {
+			shareAxes();
+			g.setColor(opts.backgroundColor);
+			g.fillRect(0, 0, getWidth(), getHeight());
+			g.setColor(opts.foregroundColor);
+			g.setFont(opts.titleFont);
+			drawLabel(g, opts.title, getWidth() / 2, opts.padding, HorizAlign.CENTER, VertAlign.TOP);
+			
+			for (int i = 0; i < panels.size(); i++) {
+				g.setOrigin(opts.padding + (i % opts.columns) * opts.panelWidth, getTitleHeight() + (i / opts.columns) * opts.panelHeight);
+				Plot panel = panels.get(i);
+				// labels are measured with the current font, and borders drawn with the current stroke, as for a
+				// plot drawn alone
+				g.setFont(panel.opts.labelFont);
+				g.setStroke(new BasicStroke(1));
+				panel.clear();
+				panel.draw(g);
+			}
+		}
+		
+		private void shareAxes() {
+			Range x = null, y = null;
+			for (Plot panel : panels) {
+				x = union(x, panel.getRange(true));
+				y = union(y, panel.getRange(false));
+			}
+			for (Plot panel : panels) {
+				if (opts.sharedX && x != null)
+					panel.setRange(true, x);
+				if (opts.sharedY && y != null)
+					panel.setRange(false, y);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Draws the plot into a new image, without saving it. Different plots can be rendered by different threads
+	 * at the same time.
+	 */
+	public BufferedImage render() {
 		clear();
-		BufferedImage bi = draw();
+		return draw();
+	}
+	
+	/**
+	 * Encodes an image rendered by a plot and writes it to fileName.type
+	 */
+	public static void write(BufferedImage image, String fileName, String type) throws IOException {
 		File outputFile = new File(fileName + "." + type);
-		ImageIO.write(bi, type, outputFile);
+		ImageIO.write(image, type, outputFile);
+	}
+	
+	/*
+	 * Drawing primitives used by the plot, so the same drawing code produces both images and vector graphics.
+	 */
+	private static abstract class Canvas {
+		
+		abstract void setColor(Color color);
+		abstract void setFont(Font font);
+		abstract void setStroke(Stroke stroke);
+		abstract Stroke getStroke();
+		abstract void setClip(Rectangle clip);
+		abstract void setOrigin(int x, int y); // moves the origin to x, y of the whole drawing, and removes clip
+		abstract Rectangle2D getStringBounds(String s);
+		abstract void drawString(String s, int x, int y);
+		abstract void drawLine(int x1, int y1, int x2, int y2);
+		abstract void drawRect(int x, int y, int width, int height);
+		abstract void fillRect(int x, int y, int width, int height);
+		abstract void drawOval(int x, int y, int width, int height);
+		abstract void fillOval(int x, int y, int width, int height);
+		abstract void drawPolygon(int[] xs, int[] ys, int n);
+		abstract void fillPolygon(int[] xs, int[] ys, int n);
+		abstract void drawPolyline(int[] xs, int[] ys, int n);
+		abstract void dispose();
+		
+	}
+	
+	private static class ImageCanvas extends Canvas {
+		
+		private Graphics2D g;
+		
+		ImageCanvas(Graphics2D g) {
+			this.g = g;
+		}
+		
+		void setColor(Color color) { g.setColor(color); }
+		void setFont(Font font) { g.setFont(font); }
+		void setStroke(Stroke stroke) { g.setStroke(stroke); }
+		Stroke getStroke() { return g.getStroke(); }
+		void setClip(Rectangle clip) { g.setClip(clip); }
+		
+		void setOrigin(int x, int y) {
+			g.setClip(null);
+			g.setTransform(AffineTransform.getTranslateInstance(x, y));
+		}
+		
+		Rectangle2D getStringBounds(String s) { return g.getFontMetrics().getStringBounds(s, g); }
+		void drawString(String s, int x, int y) { g.drawString(s, x, y); }
+		void drawLine(int x1, int y1, int x2, int y2) { g.drawLine(x1, y1, x2, y2); }
+		void drawRect(int x, int y, int width, int height) { g.drawRect(x, y, width, height); }
+		void fillRect(int x, int y, int width, int height) { g.fillRect(x, y, width, height); }
+		void drawOval(int x, int y, int width, int height) { g.drawOval(x, y, width, height); }
+		void fillOval(int x, int y, int width, int height) { g.fillOval(x, y, width, height); }
+		void drawPolygon(int[] xs, int[] ys, int n) { g.drawPolygon(xs, ys, n); }
+		void fillPolygon(int[] xs, int[] ys, int n) { g.fillPolygon(xs, ys, n); }
+		void drawPolyline(int[] xs, int[] ys, int n) { g.drawPolyline(xs, ys, n); }
+		void dispose() { g.dispose(); }
+		
+	}
+	
+	/*
+	 * Writes SVG elements as they are drawn, without keeping them in memory. Text is measured with the
+	 * metrics of a small scratch image, so labels are laid out as in the raster output.
+	 */
+	private static class SvgCanvas extends Canvas {
+		
+		private Writer out;
+		private IOException error;
+		private Graphics2D metrics;
+		private Color color = Color.BLACK;
+		private Font font;
+		private Stroke stroke = new BasicStroke(1);
+		private int clips = 0;
+		private boolean clipOpen = false;
+		private boolean originOpen = false;
+		
+		SvgCanvas(String fileName, int width, int height) throws IOException {
+			this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8"));
+			this.metrics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+			this.font = metrics.getFont();
+			write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height +
+					"\" viewBox=\"0 0 " + width + " " + height + "\" shape-rendering=\"crispEdges\">\n");
+		}
+		
+		void setColor(Color color) { this.color = color; }
+		
+		void setFont(Font font) {
+			this.font = font;
+			metrics.setFont(font);
+		}
+		
+		void setStroke(Stroke stroke) { this.stroke = stroke; }
+		Stroke getStroke() { return stroke; }
+		
+		void setClip(Rectangle clip) {
+			clips++;
+			write(String.format("<clipPath id=\"c%d\"><rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\"/></clipPath>\n",
+					clips, clip.x, clip.y, clip.width, clip.height));
+			if (clipOpen)
+				write("</g>\n");
+			write("<g clip-path=\"url(#c" + clips + ")\">\n");
+			clipOpen = true;
+		}
+		
+		void setOrigin(int x, int y) {
+			if (clipOpen)
+				write("</g>\n");
+			if (originOpen)
+				write("</g>\n");
+			clipOpen = false;
+			write("<g transform=\"translate(" + x + "," + y + ")\">\n");
+			originOpen = true;
+		}
+		
+		Rectangle2D getStringBounds(String s) { return metrics.getFontMetrics().getStringBounds(s, metrics); }
+		
+		void drawString(String s, int x, int y) {
+			write("<text x=\"" + x + "\" y=\"" + y + "\" fill=\"" + rgb(color) + "\"" + opacity("fill-opacity") +
+					" font-family=\"" + escape(font.getName()) + ", sans-serif\" font-size=\"" + font.getSize() + "\"" +
+					(font.isBold() ? " font-weight=\"bold\"" : "") + (font.isItalic() ? " font-style=\"italic\"" : "") +
+					">" + escape(s) + "</text>\n");
+		}
+		
+		void drawLine(int x1, int y1, int x2, int y2) {
+			write("<line x1=\"" + x1 + "\" y1=\"" + y1 + "\" x2=\"" + x2 + "\" y2=\"" + y2 + "\"" + stroke() + "/>\n");
+		}
+		
+		void drawRect(int x, int y, int width, int height) {
+			write("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + width + "\" height=\"" + height + "\" fill=\"none\"" + stroke() + "/>\n");
+		}
+		
+		void fillRect(int x, int y, int width, int height) {
+			write("<rect x=\"" + x + "\" y=\"" + y + "\" width=\"" + width + "\" height=\"" + height + "\"" + fill() + "/>\n");
+		}
+		
+		void drawOval(int x, int y, int width, int height) {
+			write(ellipse(x, y, width, height) + " fill=\"none\"" + stroke() + "/>\n");
+		}
+		
+		void fillOval(int x, int y, int width, int height) {
+			write(ellipse(x, y, width, height) + fill() + "/>\n");
+		}
+		
+		void drawPolygon(int[] xs, int[] ys, int n) {
+			write("<polygon points=\"" + points(xs, ys, n) + "\" fill=\"none\"" + stroke() + "/>\n");
+		}
+		
+		void fillPolygon(int[] xs, int[] ys, int n) {
+			write("<polygon points=\"" + points(xs, ys, n) + "\"" + fill() + "/>\n");
+		}
+		
+		void drawPolyline(int[] xs, int[] ys, int n) {
+			write("<polyline points=\"" + points(xs, ys, n) + "\" fill=\"none\"" + stroke() + "/>\n");
+		}
+		
+		void dispose() {
+			if (clipOpen)
+				write("</g>\n");
+			if (originOpen)
+				write("</g>\n");
+			write("</svg>\n");
+			metrics.dispose();
+			try {
+				out.close();
+			} catch (IOException e) {
+				if (error == null)
+					error = e;
+			}
+		}
+		
+		private String ellipse(int x, int y, int width, int height) {
+			return String.format(Locale.ROOT, "<ellipse cx=\"%.1f\" cy=\"%.1f\" rx=\"%.1f\" ry=\"%.1f\"",
+					x + width / 2.0, y + height / 2.0, width / 2.0, height / 2.0);
+		}
+		
+		private String fill() {
+			return " fill=\"" + rgb(color) + "\"" + opacity("fill-opacity");
+		}
+		
+		private String stroke() {
+			StringBuilder sb = new StringBuilder(" stroke=\"").append(rgb(color)).append('"').append(opacity("stroke-opacity"));
+			if (stroke instanceof BasicStroke) {
+				BasicStroke bs = (BasicStroke) stroke;
+				sb.append(" stroke-width=\"").append(bs.getLineWidth()).append('"');
+				if (bs.getEndCap() == BasicStroke.CAP_ROUND)
+					sb.append(" stroke-linecap=\"round\"");
+				if (bs.getLineJoin() == BasicStroke.JOIN_ROUND)
+					sb.append(" stroke-linejoin=\"round\"");
+				float[] dash = bs.getDashArray();
+				if (dash != null) {
+					sb.append(" stroke-dasharray=\"");
+					for (int i = 0; i < dash.length; i++)
+						sb.append(i > 0 ? "," : "").append(dash[i]);
+					sb.append('"');
+				}
+			}
+			return sb.toString();
+		}
+		
+		private String opacity(String attribute) {
+			if (color.getAlpha() == 255)
+				return "";
+			return String.format(Locale.ROOT, " %s=\"%.3f\"", attribute, color.getAlpha() / 255.0);
+		}
+		
+		private static String rgb(Color c) {
+			return String.format("#%02x%02x%02x", c.getRed(), c.getGreen(), c.getBlue());
+		}
+		
+		private static String points(int[] xs, int[] ys, int n) {
+			StringBuilder sb = new StringBuilder(n * 8);
+			for (int i = 0; i < n; i++)
+				sb.append(i > 0 ? " " : "").append(xs[i]).append(',').append(ys[i]);
+			return sb.toString();
+		}
+		
+		private static String escape(String s) {
+			return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+		}
+		
+		private void write(String s) {
+			if (error != null)
+				return ;
+			try {
+				out.write(s);
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		
 	}
 	
 	private class Legend {
@@ -281,17 +763,15 @@ public class Plot {
 			plotClipRect.setBounds(plotBorderRect.x + 1, plotBorderRect.y + 1, plotBorderRect.width - 1, plotBorderRect.height - 1);
 		}
 
-		private void calc(Graphics2D g) {
+		private void calc(Canvas g) {
 			calcAxes(g);
 			calcRange(true);
 			calcRange(false);
 			calcAxisLabels(g, true);
 			calcAxisLabels(g, false);
 			g.setFont(opts.titleFont);
-			FontMetrics fm = g.getFontMetrics();
-			Rectangle2D titleRect = fm.getStringBounds(opts.title, g);
+			Rectangle2D titleRect = g.getStringBounds(opts.title);
 			g.setFont(opts.labelFont);
-			fm = g.getFontMetrics();
 			int xAxesHeight = 0, xAxesHalfWidth = 0;
 			for (Map.Entry<String, Axis> entry : xAxes.entrySet()) {
 				Axis xAxis = entry.getValue();
@@ -322,7 +802,7 @@ public class Plot {
 			offset(dx, dy, dw, dh);
 		}
 		
-		private void draw(Graphics2D g) {
+		private void draw(Canvas g) {
 			drawPlotArea(g);
 			drawGrid(g);
 			drawAxes(g);
@@ -332,14 +812,14 @@ public class Plot {
 			//g.drawRect(boundRect.x + opts.padding, boundRect.y + opts.padding, boundRect.width - opts.padding * 2, boundRect.height - opts.padding * 2);
 		}
 
-		private void drawPlotArea(Graphics2D g) {
+		private void drawPlotArea(Canvas g) {
 			g.setColor(opts.foregroundColor);
 			g.drawRect(plotBorderRect.x, plotBorderRect.y, plotBorderRect.width, plotBorderRect.height);
 			g.setFont(opts.titleFont);
 			drawLabel(g, opts.title, plotBorderRect.x + toInt(plotBorderRect.getWidth() / 2), opts.padding, HorizAlign.CENTER, VertAlign.TOP);
 		}
 
-		private void drawGrid(Graphics2D g) {
+		private void drawGrid(Canvas g) {
 			Stroke stroke = g.getStroke();
 			g.setStroke(opts.gridStroke);
 			g.setColor(opts.gridColor);
@@ -362,7 +842,7 @@ public class Plot {
 			g.setStroke(stroke);
 		}
 
-		private void calcAxes(Graphics2D g) {
+		private void calcAxes(Canvas g) {
 			Axis xAxis = xAxes.isEmpty() ? new Axis("", null) : xAxes.values().iterator().next();
 			Axis yAxis = yAxes.isEmpty() ? new Axis("", null) : yAxes.values().iterator().next();
 			int xCount = 0, yCount = 0;
@@ -383,8 +863,7 @@ public class Plot {
 				yAxes.put("y", yAxis);
 		}
 
-		private void calcAxisLabels(Graphics2D g, boolean isX) {
-			FontMetrics fm = g.getFontMetrics();
+		private void calcAxisLabels(Canvas g, boolean isX) {
 			Rectangle2D rect = null;
 			double w = 0, h = 0;
 			Map<String, Axis> axes = isX ? xAxes : yAxes;
@@ -392,11 +871,11 @@ public class Plot {
 			for (Map.Entry<String, Axis> entry : axes.entrySet()) {
 				Axis axis = entry.getValue();
 				axis.labels = new String[grids + 1];
-				axis.labelRect = fm.getStringBounds("", g);
+				axis.labelRect = g.getStringBounds("");
 				double xStep = axis.opts.range.diff / grids;
 				for (int j = 0; j < grids + 1; j++) {
 					axis.labels[j] = formatDouble(axis.opts.range.min + xStep * j, axis.opts.format);
-					rect = fm.getStringBounds(axis.labels[j], g);
+					rect = g.getStringBounds(axis.labels[j]);
 					if (rect.getWidth() > w)
 						w = rect.getWidth();
 					if (rect.getHeight() > h)
@@ -429,7 +908,7 @@ public class Plot {
 			}
 		}
 
-		private void drawAxes(Graphics2D g) {
+		private void drawAxes(Canvas g) {
 			g.setFont(opts.labelFont);
 			g.setColor(opts.foregroundColor);
 			
@@ -464,14 +943,14 @@ public class Plot {
 
 				for (int j = 0; j < opts.grids.y + 1; j++) {
 					int y = toInt(plotRect.y + (plotRect.getHeight() / opts.grids.y) * j);
-					drawLabel(g, formatDouble(axis.opts.range.max - yStep * j, axis.opts.format), leftXPadded - axisOffset, y, HorizAlign.RIGHT, VertAlign.CENTER);
+					drawLabel(g, formatDouble(axis.opts.range.min + yStep * (opts.grids.y - j), axis.opts.format), leftXPadded - axisOffset, y, HorizAlign.RIGHT, VertAlign.CENTER);
 					g.drawLine(plotBorderRect.x - axisOffset, y,  plotBorderRect.x - opts.tickSize - axisOffset, y);
 				}
 				axisOffset += toInt(axis.labelRect.getWidth() + opts.labelPadding * 2);
 			}
 		}
 		
-		private void calcLegend(Graphics2D g) {
+		private void calcLegend(Canvas g) {
 			legend.rect = new Rectangle(0, 0);
 			if (opts.legend == LegendFormat.NONE)
 				return;
@@ -479,13 +958,12 @@ public class Plot {
 			if (size == 0)
 				return;
 
-			FontMetrics fm = g.getFontMetrics();
 			Iterator<DataSeries> it = dataSeriesMap.values().iterator();
-			legend.labelRect = fm.getStringBounds(it.next().nameWithAxes, g);
+			legend.labelRect = g.getStringBounds(it.next().nameWithAxes);
 			int legendSignSize = opts.defaultLegendSignSize;
 			while (it.hasNext()) {
 				DataSeries series = it.next();
-				Rectangle2D rect = fm.getStringBounds(series.nameWithAxes, g);
+				Rectangle2D rect = g.getStringBounds(series.nameWithAxes);
 				if (rect.getWidth() > legend.labelRect.getWidth())
 					legend.labelRect.setRect(0, 0, rect.getWidth(), legend.labelRect.getHeight());
 				if (rect.getHeight() > legend.labelRect.getHeight())
@@ -530,7 +1008,7 @@ public class Plot {
 			}
 		}
 
-		private void drawLegend(Graphics2D g) {
+		private void drawLegend(Canvas g) {
 			if (opts.legend == LegendFormat.NONE)
 				return;
 			
@@ -562,7 +1040,7 @@ public class Plot {
 			}
 		}
 		
-		private void drawLegendEntry(Graphics2D g, DataSeries series, int x, int y) {
+		private void drawLegendEntry(Canvas g, DataSeries series, int x, int y) {
 			series.fillArea(g, x, y, x + opts.legendSignSize, y, y + opts.legendSignSize / 2);
 			series.drawLine(g, x, y, x + opts.legendSignSize, y);
 			series.drawMarker(g, x + opts.legendSignSize / 2, y, x, y + opts.legendSignSize / 2);
@@ -664,6 +1142,8 @@ public class Plot {
 		private int markerSize = 10;
 		private Color markerColor = Color.WHITE;
 		private Color areaColor = null;
+		private Downsample downsample = Downsample.MIN_MAX;
+		private int maxPoints = 0; // 0 means one bucket for each pixel of the plot width
 		private String xAxisName;
 		private String yAxisName;
 		private Axis xAxis;
@@ -709,6 +1189,21 @@ public class Plot {
 			return this;
 		}
 		
+		/**
+		 * Reduces series longer than maxPoints before drawing. MIN_MAX keeps first, last, minimum and maximum
+		 * of each bucket, so peaks are never lost; LTTB (largest triangle three buckets) keeps the points that
+		 * best preserve the visual shape. Both expect x values in ascending order.
+		 */
+		public DataSeriesOptions downsample(Downsample downsample) {
+			this.downsample = downsample;
+			return this;
+		}
+		
+		public DataSeriesOptions maxPoints(int maxPoints) {
+			this.maxPoints = maxPoints;
+			return this;
+		}
+		
 		public DataSeriesOptions xAxis(String name) {
 			this.xAxisName = name;
 			return this;
@@ -732,42 +1227,94 @@ public class Plot {
 		return new Data();
 	}
 	
+	/**
+	 * Points of a series. Primitive arrays and DoubleBuffers (also direct or memory mapped ones) are used as they
+	 * are, without copying nor boxing. Ranges are computed once and kept until points are changed through this
+	 * class: if the arrays are changed from outside, xy() has to be called again.
+	 */
 	public static class Data {
 		
 		private double[] x1;
 		private double[] y1;
+		private int size1;
 		private List<Double> x2;
 		private List<Double> y2;
+		private DoubleBuffer x3;
+		private DoubleBuffer y3;
+		private Range xRange;
+		private Range yRange;
 		
 		private Data() {}
 		
 		public Data xy(double[] x, double[] y) {
 			this.x1 = x;
 			this.y1 = y;
-			return this;
+			this.size1 = x.length;
+			this.x2 = this.y2 = null;
+			this.x3 = this.y3 = null;
+			return changed();
 		}
 		
 		public Data xy(double x, double y) {
-			if (this.x2 == null || this.y2 == null) {
-				this.x2 = new ArrayList<Double>(10);
-				this.y2 = new ArrayList<Double>(10);
+			if (this.x1 == null || this.y1 == null) {
+				this.x1 = new double[10];
+				this.y1 = new double[10];
+				this.size1 = 0;
+				this.x2 = this.y2 = null;
+				this.x3 = this.y3 = null;
+				// ranges of the points of lists or buffers are dropped with them
+				changed();
+			} else if (size1 == x1.length) {
+				x1 = Arrays.copyOf(x1, size1 * 2);
+				y1 = Arrays.copyOf(y1, size1 * 2);
+			}
+			x1[size1] = x;
+			y1[size1] = y;
+			size1++;
+			// ranges are extended instead of being computed again
+			if (xRange != null) {
+				if (x > xRange.max) xRange.setMax(x);
+				if (x < xRange.min) xRange.setMin(x);
+			}
+			if (yRange != null) {
+				if (y > yRange.max) yRange.setMax(y);
+				if (y < yRange.min) yRange.setMin(y);
 			}
-			x2.add(x);
-			y2.add(y);
 			return this;
 		}
 		
 		public Data xy(List<Double> x, List<Double> y) {
 			this.x2 = x;
 			this.y2 = y;
+			this.x1 = this.y1 = null;
+			this.x3 = this.y3 = null;
+			return changed();
+		}
+		
+		/**
+		 * Uses the remaining elements of two buffers, from their current positions.
+		 */
+		public Data xy(DoubleBuffer x, DoubleBuffer y) {
+			this.x3 = x.slice();
+			this.y3 = y.slice();
+			this.x1 = this.y1 = null;
+			this.x2 = this.y2 = null;
+			return changed();
+		}
+		
+		private Data changed() {
+			xRange = null;
+			yRange = null;
 			return this;
 		}
 		
 		public int size() {
 			if (x1 != null)
-				return x1.length;
+				return size1;
 			if (x2 != null)
 				return x2.size();
+			if (x3 != null)
+				return x3.limit();
 			return 0;
 		}
 
@@ -776,6 +1323,8 @@ public class Plot {
 				return x1[i];
 			if (x2 != null)
 				return x2.get(i);
+			if (x3 != null)
+				return x3.get(i);
 			return 0;
 		}
 
@@ -784,8 +1333,132 @@ public class Plot {
 				return y1[i];
 			if (y2 != null)
 				return y2.get(i);
+			if (y3 != null)
+				return y3.get(i);
 			return 0;
 		}
+		
+		private Range xRange() {
+			if (xRange == null)
+				xRange = range(true);
+			return new Range(xRange);
+		}
+		
+		private Range yRange() {
+			if (yRange == null)
+				yRange = range(false);
+			return new Range(yRange);
+		}
+		
+		private Range range(boolean isX) {
+			int size = size();
+			if (size == 0)
+				return new Range(0, 0);
+			double min = isX ? x(0) : y(0), max = min;
+			for (int i = 1; i < size; i++) {
+				double v = isX ? x(i) : y(i);
+				if (v > max)
+					max = v;
+				if (v < min)
+					min = v;
+			}
+			return new Range(min, max);
+		}
+		
+		/**
+		 * Returns at most about maxPoints points of this data, chosen by the given method. Data that is already
+		 * small enough is returned as it is.
+		 */
+		public Data downsample(Downsample method, int maxPoints) {
+			int size = size();
+			if (method == Downsample.NONE || maxPoints < 3 || size <= maxPoints)
+				return this;
+			return method == Downsample.LTTB ? lttb(maxPoints) : minMax(Math.max(1, maxPoints / 4));
+		}
+		
+		/*
+		 * Each bucket contributes its first, minimum, maximum and last point, in their original order
+		 */
+		private Data minMax(int buckets) {
+			int size = size();
+			double[] x = new double[buckets * 4];
+			double[] y = new double[buckets * 4];
+			int n = 0;
+			double bucketSize = (double) size / buckets;
+			for (int b = 0; b < buckets; b++) {
+				int from = (int) (b * bucketSize);
+				int to = Math.min(size, (int) ((b + 1) * bucketSize));
+				if (from >= to)
+					continue;
+				int minI = from, maxI = from;
+				for (int i = from + 1; i < to; i++) {
+					double v = y(i);
+					if (v < y(minI))
+						minI = i;
+					if (v > y(maxI))
+						maxI = i;
+				}
+				int[] picked = { from, Math.min(minI, maxI), Math.max(minI, maxI), to - 1 };
+				int last = -1;
+				for (int i : picked) {
+					if (i != last) {
+						x[n] = x(i);
+						y[n] = y(i);
+						n++;
+						last = i;
+					}
+				}
+			}
+			return data().xy(Arrays.copyOf(x, n), Arrays.copyOf(y, n));
+		}
+		
+		/*
+		 * Largest triangle three buckets (Steinarsson, 2013): first and last points are kept, and from each
+		 * bucket in between the point forming the largest triangle with the previously chosen point and the
+		 * average of the next bucket.
+		 */
+		private Data lttb(int threshold) {
+			int size = size();
+			double[] x = new double[threshold];
+			double[] y = new double[threshold];
+			double every = (double) (size - 2) / (threshold - 2);
+			int a = 0, n = 0;
+			x[n] = x(0);
+			y[n] = y(0);
+			n++;
+			for (int i = 0; i < threshold - 2; i++) {
+				int avgFrom = (int) Math.floor((i + 1) * every) + 1;
+				int avgTo = Math.min(size, (int) Math.floor((i + 2) * every) + 1);
+				double avgX = 0, avgY = 0;
+				for (int j = avgFrom; j < avgTo; j++) {
+					avgX += x(j);
+					avgY += y(j);
+				}
+				int avgLength = Math.max(1, avgTo - avgFrom);
+				avgX /= avgLength;
+				avgY /= avgLength;
+				
+				int from = (int) Math.floor(i * every) + 1;
+				int to = (int) Math.floor((i + 1) * every) + 1;
+				double ax = x(a), ay = y(a), maxArea = -1;
+				int next = from;
+				for (int j = from; j < to; j++) {
+					double area = Math.abs((ax - avgX) * (y(j) - ay) - (ax - x(j)) * (avgY - ay));
+					if (area > maxArea) {
+						maxArea = area;
+						next = j;
+					}
+				}
+				x[n] = x(next);
+				y[n] = y(next);
+				n++;
+				a = next;
+			}
+			x[n] = x(size - 1);
+			y[n] = y(size - 1);
+			n++;
+			return data().xy(x, y);
+		}
 
 	}
 	
@@ -813,39 +1486,30 @@ public class Plot {
 		}
 		
 		private Range xRange() {
-			Range range = new Range(0, 0);
-			if (data != null && data.size() > 0) {
-				range = new Range(data.x(0), data.x(0));
-				for (int i = 1; i < data.size(); i++) {
-					if (data.x(i) > range.max)
-						range.setMax(data.x(i));
-					if (data.x(i) < range.min)
-						range.setMin(data.x(i));
-				}
-			}
-			return range;
+			return data != null ? data.xRange() : new Range(0, 0);
 		}
 		
 		private Range yRange() {
-			Range range = new Range(0, 0);
-			if (data != null && data.size() > 0) {
-				range = new Range(data.y(0), data.y(0));
-				for (int i = 1; i < data.size(); i++) {
-					if (data.y(i) > range.max)
-						range.setMax(data.y(i));
-					if (data.y(i) < range.min)
-						range.setMin(data.y(i));
-				}
-			}
-			return range;
+			return data != null ? data.yRange() : new Range(0, 0);
 		}
 		
-		private void draw(Graphics2D g) {
+		private void draw(Canvas g) {
 			g.setClip(plotArea.plotClipRect);
 			if (data != null) {
+				Data data = this.data.downsample(opts.downsample, getMaxPoints());
 				double x1 = 0, y1 = 0;
 				int size = data.size();
-				if (opts.line != Line.NONE)
+				if (opts.line != Line.NONE && opts.areaColor == null && size > 1) {
+					// without area, the whole line is a single polyline: one stroke, one call
+					int[] xs = new int[size], ys = new int[size];
+					for (int j = 0; j < size; j++) {
+						xs[j] = toInt(x2x(data.x(j), opts.xAxis.opts.range, plotArea.xPlotRange));
+						ys[j] = toInt(y2y(data.y(j), opts.yAxis.opts.range, plotArea.yPlotRange));
+					}
+					g.setColor(opts.seriesColor);
+					setStroke(g);
+					g.drawPolyline(xs, ys, size);
+				} else if (opts.line != Line.NONE)
 					for (int j = 0; j < size; j++) {
 						double x2 = x2x(data.x(j), opts.xAxis.opts.range, plotArea.xPlotRange);
 						double y2 = y2y(data.y(j), opts.yAxis.opts.range, plotArea.yPlotRange);
@@ -877,22 +1541,32 @@ public class Plot {
 			}
 		}
 
+		/*
+		 * Points budget for downsampling: by default one bucket for each pixel of the plot width, that is up to
+		 * four points for MIN_MAX and one for LTTB
+		 */
+		private int getMaxPoints() {
+			if (opts.maxPoints > 0)
+				return opts.maxPoints;
+			return opts.downsample == Downsample.MIN_MAX ? plotArea.plotRect.width * 4 : plotArea.plotRect.width;
+		}
+
 		private int getDiagMarkerSize() {
 			return (int) Math.round(Math.sqrt(2 * opts.markerSize * opts.markerSize));
 		}
 		
-		private void fillArea(Graphics2D g, int ix1, int iy1, int ix2, int iy2, int iy3) {
+		private void fillArea(Canvas g, int ix1, int iy1, int ix2, int iy2, int iy3) {
 			if (opts.areaColor != null) {
 				g.setColor(opts.areaColor);
-				g.fill(new Polygon(
+				g.fillPolygon(
 						new int[] { ix1, ix2, ix2, ix1 },
 						new int[] { iy1, iy2, iy3, iy3 },
-						4));
+						4);
 				g.setColor(opts.seriesColor);
 			}			
 		}
 		
-		private void drawLine(Graphics2D g, int ix1, int iy1, int ix2, int iy2) {
+		private void drawLine(Canvas g, int ix1, int iy1, int ix2, int iy2) {
 			if (opts.line != Line.NONE) {
 				g.setColor(opts.seriesColor);
 				setStroke(g);
@@ -900,7 +1574,7 @@ public class Plot {
 			}
 		}
 
-		private void setStroke(Graphics2D g) {
+		private void setStroke(Canvas g) {
 			switch (opts.line) {
 			case SOLID: 
 				g.setStroke(new BasicStroke(opts.lineWidth)); 
@@ -913,14 +1587,14 @@ public class Plot {
 			}
 		}
 			
-		private void drawMarker(Graphics2D g, int x2, int y2, int x3, int y3) {
+		private void drawMarker(Canvas g, int x2, int y2, int x3, int y3) {
 			int halfMarkerSize = opts.markerSize / 2;
 			int halfDiagMarkerSize =  getDiagMarkerSize() / 2;
 			g.setStroke(new BasicStroke(2));
 			drawMarker(g, halfMarkerSize, halfDiagMarkerSize, x2, y2, x3, y3);
 		}
 		
-		private void drawMarker(Graphics2D g, int halfMarkerSize, int halfDiagMarkerSize, double x2, double y2, double x3, double y3) {
+		private void drawMarker(Canvas g, int halfMarkerSize, int halfDiagMarkerSize, double x2, double y2, double x3, double y3) {
 			switch (opts.marker) {
 			case CIRCLE:
 				g.setColor(opts.markerColor);
@@ -960,9 +1634,8 @@ public class Plot {
 
 	}
 	
-	private static void drawLabel(Graphics2D g, String s, int x, int y, HorizAlign hAlign, VertAlign vAlign) {
-		FontMetrics fm = g.getFontMetrics();
-		Rectangle2D rect = fm.getStringBounds(s, g);
+	private static void drawLabel(Canvas g, String s, int x, int y, HorizAlign hAlign, VertAlign vAlign) {
+		Rectangle2D rect = g.getStringBounds(s);
 		
 		// by default align by left
 		if (hAlign == HorizAlign.RIGHT)
@@ -0,0 +1,630 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.lucene.search.TimeLimitingCollector;
+
+import benchmark.JsonWriter;
+import benchmark.LoadGenerator;
+import index.Deduplicator;
+import index.DocumentPreview;
+import index.Hit;
+import index.Index;
+import index.MemoryFootprint;
+import index.QueryProfile;
+import index.SearchResults;
+import index.SegmentStats;
+import index.StorageMode;
+import irModels.Model;
+import metrics.IndexMetrics;
+import metrics.LatencyHistogram;
+
+/**
+ * @author luca
+ *
+ * A headless HTTP server answering in JSON, to use the Index as a backend service. Endpoints:
+ * - GET /search?q=query[&amp;model=VectorSpaceModel][&amp;fields=name,content][&amp;start=0][&amp;rows=10]
+ *   [&amp;preview=200][&amp;profile=true], the model also gives the similarity ranking results, whatever the similarity the index has been built with;
+ *   with preview the beginning of each document is returned (flagged stale if its file changed since it was
+ *   indexed), with profile the time spent by each phase of the query and the cost of its clauses
+ * - POST /documents?path=file adds a document, DELETE /documents?path=file removes it; only files under the
+ *   document roots can be added (none, unless roots are given), as their content can then be read back
+ * - GET /stats returns size of the index and statistics of the requests served
+ * - GET /segments returns the segments of the index, POST /segments merges away deleted documents
+ * - POST /benchmark[?duration=10][&amp;clients=4] starts a closed loop load test of the served index, in process
+ *   and on its own thread (one at a time); queries are the lines of a text/plain body, or the ones of the query
+ *   file of the server. GET /benchmark returns whether it is running and the report of the last one
+ * Requests are run by a bounded pool of workers with a bounded queue. A request that finds the queue full, or
+ * that waited in it longer than the request timeout, is answered at once with 503, so that an overloaded
+ * server sheds load instead of piling it up. A search is also stopped, and answered with 503, when it runs longer
+ * than the execution timeout. Responses always have a length, so connections are kept alive.
+ * The server has no authentication, so it listens only on the loopback interface unless told otherwise.
+ */
+public class SearchServer {
+
+	private Index index;
+	private HttpServer server;
+	private ThreadPoolExecutor workers;
+	private long timeoutNanos;
+	private long executionTimeoutNanos = 0;	// 0 for no limit
+
+	private static final ThreadLocal<Long> queuedAt = new ThreadLocal<Long>();	// when the request was accepted
+	private static final ThreadLocal<Boolean> rejected = new ThreadLocal<Boolean>();	// queue was full
+
+	private LatencyHistogram searchLatency = new LatencyHistogram();
+	private LongAdder requests = new LongAdder();
+	private LongAdder overloaded = new LongAdder();
+	private LongAdder timedOut = new LongAdder();
+	private LongAdder errors = new LongAdder();
+	private AtomicInteger active = new AtomicInteger();
+	private AtomicBoolean benchmarking = new AtomicBoolean(false);
+	private volatile String lastModel = null;		// of the last benchmark ended
+	private volatile String lastReport = null;
+	private ArrayList<Path> roots = new ArrayList<Path>();	// canonical
+	private String benchmarkQueries = "benchmark/lisa/LISA.QUE";
+
+	/**
+	 * Creates a server listening on the loopback interface only.
+	 * @param index is the index to serve
+	 * @param port is the port to listen on (0 for any free port)
+	 * @param threads is the number of workers
+	 * @param queueSize is the number of requests that can wait for a worker
+	 * @param timeoutMillis is the longest time a request can wait for a worker
+	 */
+	public SearchServer(Index index, int port, int threads, int queueSize, long timeoutMillis) throws IOException {
+		this(index, InetAddress.getLoopbackAddress(), port, threads, queueSize, timeoutMillis);
+	}
+
+	/**
+	 * @param index is the index to serve
+	 * @param bind is the address to listen on
+	 * @param port is the port to listen on (0 for any free port)
+	 * @param threads is the number of workers
+	 * @param queueSize is the number of requests that can wait for a worker
+	 * @param timeoutMillis is the longest time a request can wait for a worker
+	 */
+	public SearchServer(Index index, InetAddress bind, int port, int threads, int queueSize, long timeoutMillis) throws IOException {
+		this.index = index;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), r -> {
+			Thread t = new Thread(r, "search-server-worker");
+			t.setDaemon(true);
+			return t;
+		});
+
+		server = HttpServer.create(new InetSocketAddress(bind, port), 128);
+		server.createContext("/search", handler("GET", this::search));
+		server.createContext("/documents", handler(null, this::documents));
+		server.createContext("/stats", handler("GET", this::stats));
+		server.createContext("/segments", handler(null, this::segments));
+		server.createContext("/benchmark", handler(null, this::benchmark));
+		server.setExecutor(new Executor() {
+			public void execute(Runnable exchange) {
+				long accepted = System.nanoTime();
+				try {
+					workers.execute(() -> run(exchange, accepted, false));
+				} catch (RejectedExecutionException e) {
+					// Answered by the thread accepting connections: the handler only writes a 503
+					run(exchange, accepted, true);
+				}
+			}
+		});
+	}
+
+	private static void run(Runnable exchange, long accepted, boolean full) {
+		queuedAt.set(accepted);
+		rejected.set(full);
+		try {
+			exchange.run();
+		} finally {
+			queuedAt.remove();
+			rejected.remove();
+		}
+	}
+
+	/**
+	 * Sets the folders whose files can be added with POST /documents.
+	 * @param roots folders of the documents
+	 * @return this
+	 */
+	public SearchServer documentRoots(List<File> roots) throws IOException {
+		this.roots.clear();
+		for (File root : roots) {
+			this.roots.add(root.getCanonicalFile().toPath());
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the query file used by POST /benchmark when the request has no queries.
+	 * @param queryFile file of queries, in the formats of LoadGenerator.readQueryLog
+	 * @return this
+	 */
+	public SearchServer benchmarkQueries(String queryFile) {
+		this.benchmarkQueries = queryFile;
+		return this;
+	}
+
+	/**
+	 * Limits the time a search can run: the index stops collecting hits after it, and reading the hits stops at
+	 * it too. Searches over the limit are answered with 503.
+	 * @param millis the limit, 0 for none
+	 * @return this
+	 */
+	public SearchServer executionTimeout(long millis) {
+		this.executionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+		index.setSearchTimeout(millis);
+		return this;
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests, waiting at most delay seconds for the ones running.
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		workers.shutdownNow();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/*
+	 * An endpoint: it gets the parameters of the query string (and of a form body) and returns the JSON to send
+	 */
+	private interface Endpoint {
+		String handle(HttpExchange exchange, HashMap<String, String> params) throws Exception;
+	}
+
+	/*
+	 * An exception turned into an error response
+	 */
+	private static class HttpError extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		int status;
+
+		HttpError(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	private HttpHandler handler(String method, Endpoint endpoint) {
+		return new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.increment();
+				try {
+					if (Boolean.TRUE.equals(rejected.get())) {
+						overloaded.increment();
+						throw new HttpError(503, "Server overloaded, retry later");
+					}
+					if (System.nanoTime() - queuedAt.get() > timeoutNanos) {
+						overloaded.increment();
+						throw new HttpError(503, "Request timed out waiting for a worker");
+					}
+					if (method != null && !method.equals(exchange.getRequestMethod())) {
+						throw new HttpError(405, "Use " + method);
+					}
+					active.incrementAndGet();
+					try {
+						send(exchange, 200, endpoint.handle(exchange, getParameters(exchange)));
+					} finally {
+						active.decrementAndGet();
+					}
+				} catch (HttpError e) {
+					send(exchange, e.status, new JsonWriter().beginObject().field("error", e.getMessage()).endObject().toString());
+				} catch (Exception e) {
+					errors.increment();
+					e.printStackTrace();
+					send(exchange, 500, new JsonWriter().beginObject().field("error", e.toString()).endObject().toString());
+				}
+			}
+		};
+	}
+
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(body);
+		os.close();
+	}
+
+	private static HashMap<String, String> getParameters(HttpExchange exchange) throws IOException {
+		HashMap<String, String> params = new HashMap<String, String>();
+		parse(exchange.getRequestURI().getRawQuery(), params);
+		String type = exchange.getRequestHeaders().getFirst("Content-Type");
+		if (type != null && type.startsWith("application/x-www-form-urlencoded")) {
+			parse(readBody(exchange), params);
+		}
+		return params;
+	}
+
+	private static String readBody(HttpExchange exchange) throws IOException {
+		InputStream is = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = is.read(buffer)) > 0) {
+			body.write(buffer, 0, n);
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void parse(String query, HashMap<String, String> params) throws UnsupportedEncodingException {
+		if (query == null || query.isEmpty()) {
+			return ;
+		}
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+			String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+			params.put(name, value);
+		}
+	}
+
+	private static String require(HashMap<String, String> params, String name) throws HttpError {
+		String value = params.get(name);
+		if (value == null || value.isEmpty()) {
+			throw new HttpError(400, "Missing parameter " + name);
+		}
+		return value;
+	}
+
+	private static int getInt(HashMap<String, String> params, String name, int defaultValue, int min, int max) throws HttpError {
+		try {
+			int value = params.containsKey(name) ? Integer.parseInt(params.get(name)) : defaultValue;
+			return Math.max(min, Math.min(max, value));
+		} catch (NumberFormatException e) {
+			throw new HttpError(400, "Parameter " + name + " is not a number");
+		}
+	}
+
+	private String search(HttpExchange exchange, HashMap<String, String> params) throws HttpError {
+		String query = require(params, "q");
+		Model model = Model.getModel(params.containsKey("model") ? params.get("model") : "VectorSpaceModel");
+		if (model == null) {
+			throw new HttpError(400, "Unknown model " + params.get("model"));
+		}
+		LinkedList<String> fields = new LinkedList<String>(Arrays.asList(
+				(params.containsKey("fields") ? params.get("fields") : "name,content").split(",")));
+		int start = getInt(params, "start", 0, 0, 100000);
+		int rows = getInt(params, "rows", 10, 0, 1000);
+		int preview = getInt(params, "preview", 0, 0, 10000);
+		QueryProfile profile = "true".equals(params.get("profile")) ? new QueryProfile() : null;
+
+		long begin = System.nanoTime();
+		// Only the hits asked for are collected, with the similarity of the model
+		SearchResults results;
+		try {
+			results = index.submitQuery(query, fields, model, model.getSimilarity(), start + rows, profile);
+		} catch (TimeLimitingCollector.TimeExceededException e) {
+			timedOut.increment();
+			throw new HttpError(503, "Search stopped after " + e.getTimeAllowed() + " ms");
+		}
+		JsonWriter json = new JsonWriter().beginObject().
+				field("query", query).
+				field("model", model.getName()).
+				field("totalHits", results == null ? 0 : results.getTotalHits()).
+				field("start", start);
+		json.name("hits").beginArray();
+		if (results != null) {
+			try {
+				for (int i = start; i < results.getLoaded(); i++) {
+					if (executionTimeoutNanos > 0 && System.nanoTime() - begin > executionTimeoutNanos) {
+						timedOut.increment();
+						throw new HttpError(503, "Search stopped after " + TimeUnit.NANOSECONDS.toMillis(executionTimeoutNanos) + " ms reading hits");
+					}
+					Hit hit = results.getHit(i);
+					if (hit == null) {
+						continue;
+					}
+					json.beginObject().
+						field("rank", i + 1).
+						field("path", hit.getDocPath()).
+						field("name", hit.getDocName()).
+						field("score", hit.getScore());
+					DocumentPreview p = preview > 0 ? results.getPreview(i, preview) : null;
+					if (p != null && p.getText() != null) {
+						json.field("preview", p.getText()).field("stale", p.isStale());
+					}
+					json.endObject();
+				}
+			} finally {
+				results.close();
+			}
+		}
+		json.endArray();
+		if (profile != null) {
+			writeProfile(json, profile);
+		}
+		long took = System.nanoTime() - begin;
+		searchLatency.recordValue(took);
+		return json.field("tookMs", took / 1e6).endObject().toString();
+	}
+
+	private static void writeProfile(JsonWriter json, QueryProfile p) {
+		json.name("profile").beginObject().
+			field("parsed", p.parsedQuery).
+			field("rewritten", p.rewrittenQuery).
+			field("multiTermQueries", p.multiTermQueries).
+			field("termsAfterRewrite", p.termsAfterRewrite).
+			field("segments", p.segments).
+			field("documentsScored", p.documentsScored).
+			field("documentsFetched", p.documentsFetched).
+			field("parseMs", p.parseNanos / 1e6).
+			field("rewriteMs", p.rewriteNanos / 1e6).
+			field("weightMs", p.weightNanos / 1e6).
+			field("matchMs", p.matchNanos / 1e6).
+			field("scoreMs", p.scoreNanos / 1e6).
+			field("collectMs", p.collectNanos / 1e6).
+			field("fetchMs", p.fetchNanos / 1e6).
+			field("totalMs", p.totalNanos / 1e6).
+			field("parseBytes", p.parseBytes).
+			field("rewriteBytes", p.rewriteBytes).
+			field("searchBytes", p.searchBytes).
+			field("fetchBytes", p.fetchBytes).
+			field("totalBytes", p.totalBytes);
+		json.name("clauses").beginArray();
+		for (QueryProfile.Clause c : p.clauses) {
+			json.beginObject().
+				field("query", c.query).
+				field("occur", c.occur).
+				field("terms", c.terms).
+				field("cost", c.cost).
+				field("matches", c.matches).
+				field("countMs", c.countNanos / 1e6).
+				endObject();
+		}
+		json.endArray().endObject();
+	}
+
+	private String documents(HttpExchange exchange, HashMap<String, String> params) throws HttpError {
+		String path = require(params, "path");
+		String method = exchange.getRequestMethod();
+		if (method.equals("POST")) {
+			File f;
+			try {
+				f = new File(path).getCanonicalFile();
+			} catch (IOException e) {
+				throw new HttpError(400, "Invalid path " + path);
+			}
+			if (!isUnderRoots(f.toPath())) {
+				throw new HttpError(403, "Not under a document root " + path);
+			}
+			if (!f.isFile()) {
+				throw new HttpError(404, "No such file " + path);
+			}
+			index.addDocument(f.getPath());
+			return new JsonWriter().beginObject().field("added", f.getPath()).field("documents", index.getSize()).endObject().toString();
+		} else if (method.equals("DELETE")) {
+			if (!index.removeDocument(path)) {
+				throw new HttpError(404, "Document not in index " + path);
+			}
+			return new JsonWriter().beginObject().field("removed", path).field("documents", index.getSize()).endObject().toString();
+		}
+		throw new HttpError(405, "Use POST or DELETE");
+	}
+
+	/*
+	 * Links are already resolved in canonical paths, so a link out of a root is not under it
+	 */
+	private boolean isUnderRoots(Path canonical) {
+		for (Path root : roots) {
+			if (canonical.startsWith(root)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String segments(HttpExchange exchange, HashMap<String, String> params) throws HttpError {
+		String method = exchange.getRequestMethod();
+		int compacted = 0;
+		if (method.equals("POST")) {
+			compacted = index.compact();
+		} else if (!method.equals("GET")) {
+			throw new HttpError(405, "Use GET or POST");
+		}
+		SegmentStats stats = index.getSegmentStats();
+		JsonWriter json = new JsonWriter().beginObject().
+				field("segments", stats.getSegmentCount()).
+				field("bytes", stats.getSizeBytes()).
+				field("documents", stats.getDocuments()).
+				field("deleted", stats.getDeleted()).
+				field("deletedRatio", stats.getDeletedRatio());
+		if (method.equals("POST")) {
+			json.field("compacted", compacted);
+		}
+		json.name("list").beginArray();
+		for (SegmentStats.Segment s : stats.getSegments()) {
+			json.beginObject().
+				field("name", s.getName()).
+				field("documents", s.getDocuments()).
+				field("deleted", s.getDeleted()).
+				field("bytes", s.getSizeBytes()).
+				endObject();
+		}
+		return json.endArray().endObject().toString();
+	}
+
+	private String stats(HttpExchange exchange, HashMap<String, String> params) {
+		MemoryFootprint footprint = index.getMemoryFootprint();
+		return new JsonWriter().beginObject().
+				field("documents", index.getSize()).
+				field("indexBytes", index.getIndexSize()).
+				field("storage", footprint.getMode().name()).
+				field("indexHeapBytes", footprint.getHeapBytes()).
+				field("directBytes", footprint.getDirectBytes()).
+				field("mappedBytes", footprint.getMappedBytes()).
+				field("duplicatesFound", IndexMetrics.get().getDuplicatesFound()).
+				field("duplicateBytesSaved", IndexMetrics.get().getDuplicateBytesSaved()).
+				field("requests", requests.sum()).
+				field("overloaded", overloaded.sum()).
+				field("timedOut", timedOut.sum()).
+				field("errors", errors.sum()).
+				field("active", active.get()).
+				field("queued", workers.getQueue().size()).
+				field("workers", workers.getMaximumPoolSize()).
+				field("searches", searchLatency.getCount()).
+				field("searchLatency", searchLatency.getSummary()).
+				endObject().toString();
+	}
+
+	private String benchmark(HttpExchange exchange, HashMap<String, String> params) throws HttpError {
+		String method = exchange.getRequestMethod();
+		if (method.equals("GET")) {
+			return new JsonWriter().beginObject().
+					field("running", benchmarking.get()).
+					field("model", lastModel).
+					field("report", lastReport).
+					endObject().toString();
+		} else if (!method.equals("POST")) {
+			throw new HttpError(405, "Use GET or POST");
+		}
+		Model model = Model.getModel(params.containsKey("model") ? params.get("model") : "VectorSpaceModel");
+		if (model == null) {
+			throw new HttpError(400, "Unknown model " + params.get("model"));
+		}
+		int duration = getInt(params, "duration", 10, 1, 120);
+		int clients = getInt(params, "clients", 4, 1, 64);
+		// Queries of the request, never a file of the server named by the client
+		ArrayList<String> queries = new ArrayList<String>();
+		String type = exchange.getRequestHeaders().getFirst("Content-Type");
+		if (type != null && type.startsWith("text/plain")) {
+			try {
+				for (String line : readBody(exchange).split("\r?\n")) {
+					if (line.trim().length() > 0) {
+						queries.add(line.trim());
+					}
+				}
+			} catch (IOException e) {
+				throw new HttpError(400, "Cannot read the queries");
+			}
+		}
+		if (queries.isEmpty()) {
+			queries = LoadGenerator.readQueryLog(benchmarkQueries);
+		}
+		if (!benchmarking.compareAndSet(false, true)) {
+			throw new HttpError(409, "A benchmark is already running");
+		}
+		// Run out of the workers, so that a benchmark does not hold one for its whole duration
+		LoadGenerator generator = new LoadGenerator(index, model, queries).
+				clients(clients).
+				duration(duration).
+				warmup(Math.min(5, duration));
+		Thread t = new Thread(() -> {
+			try {
+				lastReport = generator.run();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				lastReport = "Benchmark failed: " + e;
+			} finally {
+				lastModel = model.getName();
+				benchmarking.set(false);
+			}
+		}, "search-server-benchmark");
+		t.setDaemon(true);
+		t.start();
+		return new JsonWriter().beginObject().
+				field("started", true).
+				field("model", model.getName()).
+				field("duration", duration).
+				field("clients", clients).
+				field("queries", queries.size()).
+				endObject().toString();
+	}
+
+	/**
+	 * Starts a server. Options (all optional):
+	 * --port port to listen on (default 8080)
+	 * --bind address to listen on, 0.0.0.0 for all interfaces (default loopback only: there is no authentication)
+	 * --roots comma separated folders whose files can be added by clients (default none)
+	 * --queries query file of POST /benchmark without queries (default benchmark/lisa/LISA.QUE)
+	 * --docs file with a document path for each line, loaded at start (default none)
+	 * --storage where the index keeps its bytes: HEAP, OFF_HEAP or TMPFS (default HEAP)
+	 * --dedup SKIP or LINK to deduplicate documents added, exact and near duplicates (default off)
+	 * --dedup-threshold similarity from which documents are near duplicates (default 0.9)
+	 * --store-content false to not store content in the index, previews are then read from the files (default true)
+	 * --threads workers (default 2 * cores)
+	 * --queue requests waiting for a worker (default 256)
+	 * --timeout milliseconds a request can wait for a worker (default 2000)
+	 * --execution-timeout milliseconds a search can run, 0 for no limit (default 5000)
+	 * @param args options
+	 */
+	public static void main(String[] args) throws IOException {
+		HashMap<String, String> opts = new HashMap<String, String>();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			opts.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+		}
+		// Clients too slow sending a request or reading a response are disconnected (seconds)
+		if (System.getProperty("sun.net.httpserver.maxReqTime") == null) {
+			System.setProperty("sun.net.httpserver.maxReqTime", "30");
+			System.setProperty("sun.net.httpserver.maxRspTime", "30");
+		}
+
+		Index index = Index.getIndex();
+		index.setVerbose(false);
+		index.setStorageMode(StorageMode.valueOf(opts.getOrDefault("storage", "HEAP").toUpperCase()), false);
+		if (opts.containsKey("dedup")) {
+			index.setDeduplicator(new Deduplicator(Deduplicator.Policy.valueOf(opts.get("dedup").toUpperCase()),
+					Double.parseDouble(opts.getOrDefault("dedup-threshold", "0.9"))));
+		}
+		index.setStoreContent(Boolean.parseBoolean(opts.getOrDefault("store-content", "true")));
+		if (opts.containsKey("docs")) {
+			index.loadIndex(opts.get("docs"));
+		}
+
+		InetAddress bind = opts.containsKey("bind") ? InetAddress.getByName(opts.get("bind")) : InetAddress.getLoopbackAddress();
+		ArrayList<File> roots = new ArrayList<File>();
+		if (opts.containsKey("roots")) {
+			for (String root : opts.get("roots").split(",")) {
+				roots.add(new File(root.trim()));
+			}
+		}
+		SearchServer server = new SearchServer(index, bind,
+				Integer.parseInt(opts.getOrDefault("port", "8080")),
+				Integer.parseInt(opts.getOrDefault("threads", "" + Runtime.getRuntime().availableProcessors() * 2)),
+				Integer.parseInt(opts.getOrDefault("queue", "256")),
+				Long.parseLong(opts.getOrDefault("timeout", "2000")));
+		server.documentRoots(roots).
+				benchmarkQueries(opts.getOrDefault("queries", "benchmark/lisa/LISA.QUE")).
+				executionTimeout(Long.parseLong(opts.getOrDefault("execution-timeout", "5000")));
+		server.start();
+		System.out.println("Serving " + index.getSize() + " documents on http://" + bind.getHostAddress() + ":" + server.getPort() + "/search?q=...");
+	}
+
+}